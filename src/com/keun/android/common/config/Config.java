@@ -29,6 +29,12 @@ public class Config {
     /** Native AndroidHttpClien는 Froyo 이상에서만 사용이 가능하다. */
     public static final int API_LEVEL_FROYO = 8;
 
+    /** BitmapFactory.Options.inBitmap은 Honeycomb 이상에서만 사용이 가능하다. */
+    public static final int API_LEVEL_HONEYCOMB = 11;
+
+    /** KitKat 이상에서는 inSampleSize로 축소한 Decode에도 inBitmap을 사용할 수 있다. */
+    public static final int API_LEVEL_KITKAT = 19;
+
     /** 최소의 외부/내부 메모리 공간 (10 MByte) */
     public static final long MIN_STORAGE_SIZE = 10 * 1024 * 1024;
 
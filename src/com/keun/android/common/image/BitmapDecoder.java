@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.keun.android.common.utils.BufferPool;
+import com.keun.android.common.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 표시할 크기에 맞춰 Bitmap을 축소하여 Decode한다. <br />
+ * 먼저 크기만 읽고(inJustDecodeBounds), 요청한 크기보다 작아지지 않는 가장 큰 2의 제곱수로 inSampleSize를 정한 후
+ * Decode한다. exact가 true이면 요청한 크기 안에 들어가도록 비율을 유지하여 한번 더 축소한다. <br />
+ * 파일은 File Descriptor에서, 네트워크 Stream은 mark/reset으로 직접 Decode하므로 이미지 전체를 Heap에 복사하지
+ * 않는다. Decoder의 읽기 Buffer(inTempStorage)는 {@link BufferPool}에서 가져온다. <br />
+ * 파일과 byte 배열은 {@link BitmapPool}을 지정하면 같은 크기의 Bitmap을 재사용하며, 재사용할 Bitmap의 크기가
+ * 맞지 않아 실패하면 새로 할당하여 다시 Decode한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 22.
+ * @version 1.0
+ */
+public final class BitmapDecoder {
+
+    /** 크기를 읽는 동안 Stream에서 되돌릴 수 있는 최대 Byte 수. (EXIF Thumbnail 포함) */
+    private static final int MARK_LIMIT = 128 * 1024;
+
+    /** Decoder가 사용하는 읽기 Buffer 크기. */
+    private static final int TEMP_STORAGE_SIZE = 16 * 1024;
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * 요청한 크기에 맞는 inSampleSize를 계산한다.
+     *
+     * @param width 원본 가로 크기.
+     * @param height 원본 세로 크기.
+     * @param reqWidth 요청 가로 크기. (0 이하이면 제한하지 않는다)
+     * @param reqHeight 요청 세로 크기. (0 이하이면 제한하지 않는다)
+     * @return 1 이상인 2의 제곱수.
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while ((reqWidth <= 0 || width / (sampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (sampleSize * 2) >= reqHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * byte 배열의 이미지를 요청한 크기에 맞춰 Decode한다.
+     *
+     * @param data 이미지 데이터.
+     * @param offset 시작 위치.
+     * @param length 길이.
+     * @param reqWidth 요청 가로 크기. (0 이하이면 제한하지 않는다)
+     * @param reqHeight 요청 세로 크기. (0 이하이면 제한하지 않는다)
+     * @param exact 요청한 크기 안에 들어가도록 정확하게 축소할지 여부.
+     * @return Bitmap. (Decode하지 못하면 null)
+     */
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length, int reqWidth,
+            int reqHeight, boolean exact) {
+        return decodeByteArray(data, offset, length, reqWidth, reqHeight, exact, null);
+    }
+
+    /**
+     * byte 배열의 이미지를 요청한 크기에 맞춰 Decode한다.
+     *
+     * @param pool 재사용할 Bitmap을 가져올 Pool. (null이면 재사용하지 않는다)
+     * @see #decodeByteArray(byte[], int, int, int, int, boolean)
+     */
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length, int reqWidth,
+            int reqHeight, boolean exact, BitmapPool pool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (reqWidth > 0 || reqHeight > 0 || pool != null) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, offset, length, options);
+            if (!prepare(options, reqWidth, reqHeight)) {
+                return null;
+            }
+        }
+        Bitmap reuse = pool != null ? pool.prepare(options) : null;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, offset, length, options);
+        } catch (IllegalArgumentException e) {
+            if (reuse == null) {
+                throw e;
+            }
+            release(options, reuse, pool);
+            bitmap = BitmapFactory.decodeByteArray(data, offset, length, options);
+        }
+        return exact ? scale(bitmap, reqWidth, reqHeight, pool) : bitmap;
+    }
+
+    /**
+     * 파일의 이미지를 File Descriptor에서 요청한 크기에 맞춰 Decode한다.
+     *
+     * @param file 이미지 파일.
+     * @param reqWidth 요청 가로 크기. (0 이하이면 제한하지 않는다)
+     * @param reqHeight 요청 세로 크기. (0 이하이면 제한하지 않는다)
+     * @param exact 요청한 크기 안에 들어가도록 정확하게 축소할지 여부.
+     * @return Bitmap. (Decode하지 못하면 null)
+     * @throws IOException 파일을 읽지 못한 경우.
+     */
+    public static Bitmap decodeFile(File file, int reqWidth, int reqHeight, boolean exact)
+            throws IOException {
+        return decodeFile(file, reqWidth, reqHeight, exact, null);
+    }
+
+    /**
+     * 파일의 이미지를 File Descriptor에서 요청한 크기에 맞춰 Decode한다.
+     *
+     * @param pool 재사용할 Bitmap을 가져올 Pool. (null이면 재사용하지 않는다)
+     * @see #decodeFile(File, int, int, boolean)
+     */
+    public static Bitmap decodeFile(File file, int reqWidth, int reqHeight, boolean exact,
+            BitmapPool pool) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        byte[] storage = BufferPool.acquire(TEMP_STORAGE_SIZE);
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inTempStorage = storage;
+            if (reqWidth > 0 || reqHeight > 0 || pool != null) {
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFileDescriptor(in.getFD(), null, options);
+                if (!prepare(options, reqWidth, reqHeight)) {
+                    return null;
+                }
+                in.getChannel().position(0);
+            }
+            Bitmap reuse = pool != null ? pool.prepare(options) : null;
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeFileDescriptor(in.getFD(), null, options);
+            } catch (IllegalArgumentException e) {
+                if (reuse == null) {
+                    throw e;
+                }
+                release(options, reuse, pool);
+                in.getChannel().position(0);
+                bitmap = BitmapFactory.decodeFileDescriptor(in.getFD(), null, options);
+            }
+            return exact ? scale(bitmap, reqWidth, reqHeight, pool) : bitmap;
+        } finally {
+            BufferPool.release(storage);
+            in.close();
+        }
+    }
+
+    /**
+     * Stream의 이미지를 요청한 크기에 맞춰 Decode한다. 크기를 읽은 후 mark/reset으로 처음부터 다시 읽으므로
+     * mark를 지원하지 않는 Stream은 BufferedInputStream으로 감싼다. Stream은 닫지 않는다.
+     *
+     * @param in 이미지 Stream.
+     * @param reqWidth 요청 가로 크기. (0 이하이면 제한하지 않는다)
+     * @param reqHeight 요청 세로 크기. (0 이하이면 제한하지 않는다)
+     * @param exact 요청한 크기 안에 들어가도록 정확하게 축소할지 여부.
+     * @return Bitmap. (Decode하지 못하면 null)
+     * @throws IOException Stream을 읽지 못했거나, 크기를 읽은 후 되돌리지 못한 경우.
+     */
+    public static Bitmap decodeStream(InputStream in, int reqWidth, int reqHeight, boolean exact)
+            throws IOException {
+        InputStream stream = new FlushedInputStream(in.markSupported() ? in
+                : new BufferedInputStream(in, TEMP_STORAGE_SIZE));
+        byte[] storage = BufferPool.acquire(TEMP_STORAGE_SIZE);
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inTempStorage = storage;
+            if (reqWidth > 0 || reqHeight > 0) {
+                stream.mark(MARK_LIMIT);
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(stream, null, options);
+                stream.reset();
+                if (!prepare(options, reqWidth, reqHeight)) {
+                    return null;
+                }
+            }
+            Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+            return exact ? scale(bitmap, reqWidth, reqHeight, null) : bitmap;
+        } finally {
+            BufferPool.release(storage);
+        }
+    }
+
+    /**
+     * 크기를 읽은 Options로 inSampleSize를 정하고 실제 Decode를 준비한다.
+     *
+     * @return 크기를 읽지 못했으면 false.
+     */
+    private static boolean prepare(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        if (Logger.isVerboseEnabled()) {
+            Logger.v(BitmapDecoder.class, options.outWidth + "x" + options.outHeight + " -> "
+                    + reqWidth + "x" + reqHeight + ", inSampleSize=" + options.inSampleSize);
+        }
+        return true;
+    }
+
+    /**
+     * 크기가 맞지 않아 사용하지 못한 재사용 Bitmap을 Pool에 되돌리고 새로 할당하도록 설정한다.
+     */
+    private static void release(BitmapFactory.Options options, Bitmap reuse, BitmapPool pool) {
+        if (Logger.isDebugEnabled()) {
+            Logger.d(BitmapDecoder.class, "inBitmap " + reuse.getWidth() + "x" + reuse.getHeight()
+                    + " does not match " + options.outWidth + "x" + options.outHeight);
+        }
+        BitmapPool.reset(options);
+        pool.put(reuse);
+    }
+
+    /**
+     * 비율을 유지하여 요청한 크기 안에 들어가도록 축소한다. 이미 작으면 그대로 반환한다. 축소 전 Bitmap은 Pool이
+     * 있으면 Pool에 넣고, 없으면 recycle한다.
+     */
+    static Bitmap scale(Bitmap bitmap, int reqWidth, int reqHeight, BitmapPool pool) {
+        if (bitmap == null || (reqWidth <= 0 && reqHeight <= 0)) {
+            return bitmap;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float ratio = 1f;
+        if (reqWidth > 0 && width > reqWidth) {
+            ratio = (float) reqWidth / width;
+        }
+        if (reqHeight > 0 && height * ratio > reqHeight) {
+            ratio = (float) reqHeight / height;
+        }
+        if (ratio >= 1f) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * ratio)),
+                Math.max(1, Math.round(height * ratio)), true);
+        if (scaled != bitmap) {
+            if (pool != null) {
+                pool.put(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * skip()이 요청한 만큼 건너뛰지 못하는 경우 read()로 건너뛴다. BitmapFactory.decodeStream()은 느린 네트워크
+     * Stream에서 skip()이 0을 반환하면 Decode에 실패한다.
+     */
+    private static final class FlushedInputStream extends FilterInputStream {
+        FlushedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long total = 0;
+            while (total < n) {
+                long skipped = in.skip(n - total);
+                if (skipped == 0) {
+                    if (read() < 0) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                total += skipped;
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.keun.android.common.utils.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bitmap의 전체 Byte 크기로 제한하는 LRU Memory Cache. <br />
+ * Key를 Hash로 나눈 Segment마다 Lock과 LRU 순서를 따로 가지므로 서로 다른 Segment의 조회는 경쟁하지 않는다. 조회할
+ * 때마다 모든 Segment가 공유하는 순번을 기록하며, 전체 크기가 최대 크기를 넘으면 각 Segment의 가장 오래된 Bitmap 중
+ * 순번이 가장 작은 것부터 제거하므로 Segment와 관계없이 전체에서 오래 사용하지 않은 Bitmap이 제거된다. 방금 추가한
+ * Bitmap은 제거하지 않는다. <br />
+ * 제거한 Bitmap은 화면에서 사용 중일 수 있으므로 recycle하지 않는다. {@link #setBitmapPool(BitmapPool)}을 설정하면
+ * {@link #acquire(Bitmap)}로 표시한 후 {@link #release(Bitmap)}로 모두 해제한 Bitmap만 Pool에 넣어 재사용하며,
+ * 표시 중에 제거된 Bitmap은 마지막으로 해제할 때 Pool에 넣는다. 사용 여부를 알 수 없는 Bitmap과
+ * {@link #clear()}로 제거한 Bitmap은 Pool에 넣지 않고 참조만 버린다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 21.
+ * @version 1.0
+ */
+public class BitmapMemoryCache {
+
+    /** Segment 개수. (2의 제곱수) */
+    private static final int SEGMENT_COUNT = 4;
+
+    /** 기본 크기는 Application Memory Class의 1/8로 한다. */
+    private static final int MEMORY_CLASS_DIVISOR = 8;
+
+    private static volatile BitmapMemoryCache sDefault;
+
+    private final Segment[] mSegments;
+    private final long mMaxSize;
+    private final AtomicLong mSize = new AtomicLong();
+    /** 모든 Segment가 공유하는 사용 순번. */
+    private final AtomicLong mClock = new AtomicLong();
+    private volatile BitmapPool mBitmapPool;
+    /** 표시 중이거나 표시했던 Bitmap의 사용 상태. (Bitmap이 GC되면 함께 제거된다) */
+    private final WeakHashMap<Bitmap, Usage> mUsages = new WeakHashMap<Bitmap, Usage>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mPutCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    /**
+     * @param maxSize 저장할 Bitmap의 최대 Byte 크기.
+     */
+    public BitmapMemoryCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.mMaxSize = maxSize;
+        this.mSegments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            mSegments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Application의 Memory Class를 기준으로 크기를 정한 공용 Cache를 가져온다.
+     *
+     * @param ctx Context
+     */
+    public static BitmapMemoryCache getDefault(Context ctx) {
+        if (sDefault == null) {
+            synchronized (BitmapMemoryCache.class) {
+                if (sDefault == null) {
+                    sDefault = new BitmapMemoryCache(getDefaultSize(ctx));
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Application Memory Class(MByte)의 1/8을 Byte로 가져온다.
+     */
+    public static long getDefaultSize(Context ctx) {
+        ActivityManager am = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClass = am != null ? am.getMemoryClass() : 16;
+        return memoryClass * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+    }
+
+    /**
+     * Cache에서 제거한 Bitmap을 넣을 Pool을 설정한다. {@link #acquire(Bitmap)}와 {@link #release(Bitmap)}로
+     * 화면에서 해제한 것이 확인된 Bitmap만 Pool에 넣는다.
+     *
+     * @param pool BitmapPool (null이면 제거한 Bitmap을 재사용하지 않는다)
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        this.mBitmapPool = pool;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Bitmap이 차지하는 Byte 크기를 가져온다.
+     */
+    public static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * @return Cache된 Bitmap. (없으면 null)
+     */
+    public Bitmap get(String key) {
+        Segment segment = segmentFor(key);
+        Bitmap bitmap = null;
+        synchronized (segment) {
+            Entry entry = segment.mMap.get(key);
+            if (entry != null) {
+                entry.mStamp = mClock.incrementAndGet();
+                bitmap = entry.mBitmap;
+            }
+        }
+        if (bitmap != null) {
+            mHitCount.incrementAndGet();
+        } else {
+            mMissCount.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Bitmap을 추가한다. 최대 크기보다 큰 Bitmap은 저장하지 않는다.
+     */
+    public void put(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            return;
+        }
+        int size = sizeOf(bitmap);
+        if (size > mMaxSize) {
+            if (Logger.isDebugEnabled()) {
+                Logger.d(getClass(), "Bitmap is larger than cache (" + size + "/" + mMaxSize
+                        + ") : " + key);
+            }
+            remove(key);
+            return;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry previous = segment.mMap.put(key, new Entry(bitmap, mClock.incrementAndGet()));
+            if (previous != null) {
+                mSize.addAndGet(-sizeOf(previous.mBitmap));
+            }
+        }
+        mPutCount.incrementAndGet();
+        mSize.addAndGet(size);
+        trimToSize(mMaxSize, key);
+    }
+
+    /**
+     * @return 제거한 Bitmap. (없으면 null)
+     */
+    public Bitmap remove(String key) {
+        Segment segment = segmentFor(key);
+        Entry previous;
+        synchronized (segment) {
+            previous = segment.mMap.remove(key);
+        }
+        if (previous == null) {
+            return null;
+        }
+        mSize.addAndGet(-sizeOf(previous.mBitmap));
+        return previous.mBitmap;
+    }
+
+    /**
+     * 모든 Bitmap을 제거한다. 화면에서 사용 중일 수 있으므로 Pool에 넣거나 recycle하지 않고 참조만 버린다.
+     */
+    public void clear() {
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                Iterator<Entry> it = segment.mMap.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    it.remove();
+                    mSize.addAndGet(-sizeOf(entry.mBitmap));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bitmap을 화면에 표시한다고 알린다. Cache에서 가져온 Bitmap을 View에 설정할 때 호출하며, 더 이상 표시하지 않으면
+     * {@link #release(Bitmap)}를 호출한다.
+     */
+    public void acquire(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mUsages) {
+            Usage usage = mUsages.get(bitmap);
+            if (usage == null) {
+                usage = new Usage();
+                mUsages.put(bitmap, usage);
+            }
+            usage.mCount++;
+        }
+    }
+
+    /**
+     * Bitmap을 더 이상 화면에 표시하지 않는다고 알린다. 표시 중에 Cache에서 제거된 Bitmap을 마지막으로 해제하면 Pool에
+     * 넣는다.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mUsages) {
+            Usage usage = mUsages.get(bitmap);
+            if (usage == null || usage.mCount == 0) {
+                return;
+            }
+            if (--usage.mCount > 0 || !usage.mEvicted) {
+                return;
+            }
+            mUsages.remove(bitmap);
+        }
+        recycle(bitmap);
+    }
+
+    /**
+     * 전체 크기가 maxSize 이하가 되도록 모든 Segment에서 가장 오래 사용하지 않은 Bitmap부터 제거한다.
+     *
+     * @param keep 제거하지 않을 Key. (방금 추가한 Bitmap)
+     */
+    private void trimToSize(long maxSize, String keep) {
+        while (mSize.get() > maxSize) {
+            // Segment는 Access 순서로 정렬되어 있으므로 각 Segment의 첫 Entry 중 순번이 가장 작은 것이 전체에서 가장 오래됐다.
+            Segment eldestSegment = null;
+            String eldestKey = null;
+            long eldestStamp = Long.MAX_VALUE;
+            for (Segment segment : mSegments) {
+                synchronized (segment) {
+                    for (Map.Entry<String, Entry> e : segment.mMap.entrySet()) {
+                        if (e.getKey().equals(keep)) {
+                            continue;
+                        }
+                        if (e.getValue().mStamp < eldestStamp) {
+                            eldestSegment = segment;
+                            eldestKey = e.getKey();
+                            eldestStamp = e.getValue().mStamp;
+                        }
+                        break;
+                    }
+                }
+            }
+            if (eldestSegment == null) {
+                return;
+            }
+            synchronized (eldestSegment) {
+                Entry entry = eldestSegment.mMap.remove(eldestKey);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.mStamp != eldestStamp) {
+                    // 찾은 후에 다시 사용되었으므로 되돌리고 다시 찾는다.
+                    eldestSegment.mMap.put(eldestKey, entry);
+                    continue;
+                }
+                evicted(entry.mBitmap);
+            }
+        }
+    }
+
+    /**
+     * Cache에서 제거한 Bitmap의 크기를 뺀다. 모두 해제된 Bitmap이면 Pool에 넣고, 표시 중이면 마지막으로 해제할 때 넣는다.
+     */
+    private void evicted(Bitmap bitmap) {
+        mSize.addAndGet(-sizeOf(bitmap));
+        mEvictionCount.incrementAndGet();
+        synchronized (mUsages) {
+            Usage usage = mUsages.get(bitmap);
+            if (usage == null) {
+                // 표시한 적이 없거나 사용 여부를 알 수 없다.
+                return;
+            }
+            if (usage.mCount > 0) {
+                usage.mEvicted = true;
+                return;
+            }
+            mUsages.remove(bitmap);
+        }
+        recycle(bitmap);
+    }
+
+    /**
+     * Pool이 설정되어 있으면 Bitmap을 넣는다.
+     */
+    private void recycle(Bitmap bitmap) {
+        BitmapPool pool = mBitmapPool;
+        if (pool != null) {
+            pool.put(bitmap);
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return mSegments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    /** 저장된 Bitmap의 전체 Byte 크기. */
+    public long size() {
+        return mSize.get();
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    /**
+     * 사용 통계를 가져온다.
+     *
+     * @return 조회 성공/실패, 추가, 제거 횟수와 크기.
+     */
+    public String getStats() {
+        long hits = mHitCount.get();
+        long accesses = hits + mMissCount.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("BitmapMemoryCache [hit=").append(hits);
+        sb.append(", miss=").append(mMissCount.get());
+        sb.append(", put=").append(mPutCount.get());
+        sb.append(", eviction=").append(mEvictionCount.get());
+        sb.append(", bytes=").append(mSize.get()).append("/").append(mMaxSize);
+        sb.append(", hitRate=").append(accesses > 0 ? (hits * 100 / accesses) : 0).append("%]");
+        return sb.toString();
+    }
+
+    /** Access 순서로 정렬된 LRU Map과 Lock. */
+    private static final class Segment {
+        final LinkedHashMap<String, Entry> mMap = new LinkedHashMap<String, Entry>(16, 0.75f,
+                true);
+    }
+
+    /** Bitmap을 표시 중인 수와 Cache에서 제거되었는지 여부. (mUsages Lock 안에서만 변경한다) */
+    private static final class Usage {
+        int mCount;
+        boolean mEvicted;
+    }
+
+    /** Bitmap과 마지막으로 사용한 순번. (Segment Lock 안에서만 변경한다) */
+    private static final class Entry {
+        final Bitmap mBitmap;
+        long mStamp;
+
+        Entry(Bitmap bitmap, long stamp) {
+            this.mBitmap = bitmap;
+            this.mStamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.utils.Logger;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 더 이상 화면에 표시하지 않는 Bitmap을 모아두고, 같은 크기와 Config의 이미지를 Decode할 때
+ * BitmapFactory.Options.inBitmap으로 재사용한다. <br />
+ * inBitmap은 Honeycomb 이상에서만 지원하므로 Reflection으로 설정하며, KitKat 미만에서는 inSampleSize가 1인
+ * 경우에만 재사용한다. 전체 크기가 최대 크기를 넘으면 가장 오래 전에 추가한 Bitmap부터 recycle한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 23.
+ * @version 1.0
+ */
+public class BitmapPool {
+
+    private static final Field IN_BITMAP;
+    private static final Field IN_MUTABLE;
+
+    static {
+        Field inBitmap = null;
+        Field inMutable = null;
+        if (Build.VERSION.SDK_INT >= Config.API_LEVEL_HONEYCOMB) {
+            try {
+                inBitmap = BitmapFactory.Options.class.getField("inBitmap");
+                inMutable = BitmapFactory.Options.class.getField("inMutable");
+            } catch (NoSuchFieldException e) {
+                inBitmap = null;
+                inMutable = null;
+            }
+        }
+        IN_BITMAP = inBitmap;
+        IN_MUTABLE = inMutable;
+    }
+
+    private final long mMaxSize;
+    private long mSize;
+
+    /** Key("가로x세로:Config")별로 재사용할 Bitmap. */
+    private final HashMap<String, ArrayList<Bitmap>> mPool =
+            new HashMap<String, ArrayList<Bitmap>>();
+    /** 추가한 순서. (오래된 Bitmap부터 제거한다) */
+    private final LinkedHashMap<Bitmap, String> mOrder = new LinkedHashMap<Bitmap, String>();
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mPutCount;
+    private long mEvictionCount;
+
+    /**
+     * @param maxSize 모아둘 Bitmap의 최대 Byte 크기.
+     */
+    public BitmapPool(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * 현재 Platform에서 inBitmap을 사용할 수 있는지 확인한다.
+     */
+    public static boolean isSupported() {
+        return IN_BITMAP != null && IN_MUTABLE != null;
+    }
+
+    /**
+     * 재사용할 Bitmap을 추가한다. 변경할 수 없거나(immutable) 이미 recycle된 Bitmap은 추가하지 않는다.
+     * 추가한 Bitmap은 더 이상 화면에 표시하거나 사용하면 안 된다.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!isSupported() || !bitmap.isMutable() || bitmap.getConfig() == null
+                || BitmapMemoryCache.sizeOf(bitmap) > mMaxSize) {
+            return;
+        }
+        String key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        synchronized (this) {
+            if (mOrder.containsKey(bitmap)) {
+                return;
+            }
+            ArrayList<Bitmap> bitmaps = mPool.get(key);
+            if (bitmaps == null) {
+                bitmaps = new ArrayList<Bitmap>(2);
+                mPool.put(key, bitmaps);
+            }
+            bitmaps.add(bitmap);
+            mOrder.put(bitmap, key);
+            mSize += BitmapMemoryCache.sizeOf(bitmap);
+            mPutCount++;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    /**
+     * 크기와 Config가 같은 Bitmap을 꺼낸다.
+     *
+     * @return 재사용할 Bitmap. (없으면 null)
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayList<Bitmap> bitmaps = mPool.get(getKey(width, height, config));
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            mMissCount++;
+            return null;
+        }
+        Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+        mOrder.remove(bitmap);
+        mSize -= BitmapMemoryCache.sizeOf(bitmap);
+        mHitCount++;
+        return bitmap;
+    }
+
+    /**
+     * 모아둔 Bitmap을 모두 recycle한다.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Decode할 Options에 재사용할 Bitmap을 설정한다. Options에는 크기(outWidth, outHeight)와 inSampleSize가
+     * 설정되어 있어야 한다. 재사용할 Bitmap이 없어도 결과 Bitmap을 다시 Pool에 넣을 수 있도록 inMutable을
+     * 설정한다.
+     *
+     * @return 설정한 Bitmap. (없으면 null)
+     */
+    Bitmap prepare(BitmapFactory.Options options) {
+        if (!isSupported()) {
+            return null;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (sampleSize > 1 && Build.VERSION.SDK_INT < Config.API_LEVEL_KITKAT) {
+            return null;
+        }
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig
+                : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = get((options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize, config);
+        try {
+            IN_MUTABLE.setBoolean(options, true);
+            IN_BITMAP.set(options, bitmap);
+        } catch (IllegalAccessException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), e.toString());
+            }
+            if (bitmap != null) {
+                put(bitmap);
+            }
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Options에 설정한 재사용 Bitmap을 해제한다. (크기가 맞지 않아 Decode에 실패한 경우)
+     */
+    static void reset(BitmapFactory.Options options) {
+        if (IN_BITMAP != null) {
+            try {
+                IN_BITMAP.set(options, null);
+            } catch (IllegalAccessException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(BitmapPool.class, e.toString());
+                }
+            }
+        }
+    }
+
+    private void trimToSize(long maxSize) {
+        Iterator<Bitmap> it = mOrder.keySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            Bitmap bitmap = it.next();
+            ArrayList<Bitmap> bitmaps = mPool.get(mOrder.get(bitmap));
+            bitmaps.remove(bitmap);
+            if (bitmaps.isEmpty()) {
+                mPool.remove(mOrder.get(bitmap));
+            }
+            it.remove();
+            mSize -= BitmapMemoryCache.sizeOf(bitmap);
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    private static String getKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    /** 모아둔 Bitmap의 전체 Byte 크기. */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 사용 통계를 가져온다.
+     *
+     * @return 재사용 성공/실패, 추가, 제거 횟수와 크기.
+     */
+    public synchronized String getStats() {
+        long accesses = mHitCount + mMissCount;
+        StringBuilder sb = new StringBuilder();
+        sb.append("BitmapPool [hit=").append(mHitCount);
+        sb.append(", miss=").append(mMissCount);
+        sb.append(", put=").append(mPutCount);
+        sb.append(", eviction=").append(mEvictionCount);
+        sb.append(", bytes=").append(mSize).append("/").append(mMaxSize);
+        sb.append(", hitRate=").append(accesses > 0 ? (mHitCount * 100 / accesses) : 0)
+                .append("%]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import com.keun.android.common.net.PrefetchLane;
+import com.keun.android.common.utils.BufferPool;
+import com.keun.android.common.utils.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 읽은 Byte를 Cache 파일에도 기록하는 InputStream. <br />
+ * 네트워크 Stream을 Decoder에 전달하면서 같은 Byte를 같은 폴더의 임시 파일에 기록하므로, 저장한 파일을 다시 읽어서
+ * Decode하지 않는다. {@link #commit(ImageLoaderExecutor.Job)}이 남은 Byte를 모두 기록한 후 대상 파일로 이름을
+ * 바꾸며, Commit하지 않고 닫으면 임시 파일을 삭제하므로 일부만 기록된 파일이 Cache에 남지 않는다. 연결이 중간에
+ * 끊겨도 오류 없이 Stream이 끝날 수 있으므로, 응답 길이를 알면 기록한 Byte 수가 다를 때 Commit하지 않는다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 26.
+ * @version 1.0
+ */
+final class CacheTeeInputStream extends FilterInputStream {
+
+    /** 남은 Byte를 기록할 때 한번에 읽는 크기. */
+    private static final int DRAIN_SIZE = 16 * 1024;
+
+    private final File mFile;
+    private final File mTemp;
+    private final long mExpectedLength;
+    private long mWritten;
+    private FileOutputStream mOut;
+    private boolean mCommitted;
+
+    /**
+     * @param in 원본 Stream.
+     * @param file 저장할 파일.
+     * @param expectedLength 응답 Body의 Byte 길이. (모르면 음수)
+     * @throws IOException 폴더나 임시 파일을 만들지 못한 경우.
+     */
+    CacheTeeInputStream(InputStream in, File file, long expectedLength) throws IOException {
+        super(in);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + dir);
+        }
+        this.mFile = file;
+        this.mExpectedLength = expectedLength;
+        this.mTemp = File.createTempFile(file.getName() + "-", ImageDiskCache.TEMP_SUFFIX,
+                dir);
+        this.mOut = new FileOutputStream(mTemp);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            mOut.write(b);
+            mWritten++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = in.read(buffer, offset, count);
+        if (read > 0) {
+            mOut.write(buffer, offset, read);
+            mWritten += read;
+        }
+        return read;
+    }
+
+    /**
+     * 건너뛴 Byte도 파일에 기록해야 하므로 읽어서 버린다.
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        byte[] buffer = BufferPool.acquire(DRAIN_SIZE);
+        try {
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * 아직 읽지 않은 Byte를 모두 기록한 후 임시 파일을 대상 파일로 이름을 바꾼다. Prefetch Thread에서는 사용자가 기다리는
+     * 요청이 진행 중이면 기록을 멈추고 기다린다. ({@link PrefetchLane#yieldToForeground()})
+     *
+     * @param job 취소 여부를 확인할 작업. (null이면 확인하지 않는다)
+     * @return 저장 성공(true) / 취소 또는 이름 변경 실패(false)
+     * @throws IOException 원본 Stream을 읽지 못했거나 파일에 쓰지 못한 경우, 받은 길이가 응답 길이와 다른 경우.
+     */
+    boolean commit(ImageLoaderExecutor.Job job) throws IOException {
+        byte[] buffer = BufferPool.acquire(DRAIN_SIZE);
+        try {
+            while (read(buffer, 0, buffer.length) != -1) {
+                PrefetchLane.yieldToForeground();
+                if (job != null && job.isCancelled()) {
+                    if (Logger.isDebugEnabled()) {
+                        Logger.d(getClass(), "[" + mFile + "] 이미지파일 저장 취소");
+                    }
+                    return false;
+                }
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+        mOut.close();
+        mOut = null;
+        if (mExpectedLength >= 0 && mWritten != mExpectedLength) {
+            // 연결이 중간에 끊긴 경우. 일부만 받은 파일은 Decode되더라도 깨져 있다.
+            mTemp.delete();
+            throw new IOException("Incomplete image " + mFile + " (" + mWritten + "/"
+                    + mExpectedLength + " bytes)");
+        }
+        if (!mTemp.renameTo(mFile)) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Unable to rename " + mTemp + " to " + mFile);
+            }
+            return false;
+        }
+        mCommitted = true;
+        return true;
+    }
+
+    /**
+     * 원본 Stream을 닫는다. Commit하지 않았으면 임시 파일을 삭제한다.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mOut != null) {
+                mOut.close();
+                mOut = null;
+            }
+        } finally {
+            if (!mCommitted) {
+                mTemp.delete();
+            }
+            in.close();
+        }
+    }
+}
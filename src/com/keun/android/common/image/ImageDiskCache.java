@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Journal로 파일 크기와 사용 순서를 기록하는 LRU 디스크 Cache. <br />
+ * 이미지 파일은 Key의 앞 두 글자 이름의 하위 폴더(Shard)에 Key 이름으로 저장하여 한 폴더의 파일 수가 많아져도
+ * 파일 조회와 생성이 느려지지 않도록 하며, 추가(C), 사용(R), 삭제(D)를 Append-Only Journal에 한 줄씩 기록한다.
+ * Memory에 Key, 크기, 사용 순서를 유지하므로 전체 크기를 계산하거나 오래 사용하지 않은 파일을 찾을 때 폴더를 검사하지
+ * 않는다. 사용(R) 기록은 모아서 Flush하므로 Process가 종료되면 최근 사용 순서 일부만 잃는다. 기록 중에 Process가
+ * 종료되어 마지막 줄이 깨진 경우 그 줄만 무시하며, Journal에 없는 파일은 열 때 가장 오래된 파일로 추가한다. 이전
+ * 버전이 Cache 폴더에 바로 저장한 파일은 열 때 Shard 폴더로 옮긴다.
+ *
+ * <pre>
+ * cache/journal
+ * cache/3f/3f2a9c1e00b7d4a1
+ *
+ * ImageDiskCache 1
+ * C 3f2a9c1e00b7d4a1 20480
+ * R 3f2a9c1e00b7d4a1
+ * D 3f2a9c1e00b7d4a1
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 25.
+ * @version 1.0
+ */
+public final class ImageDiskCache {
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String MAGIC = "ImageDiskCache";
+    private static final String VERSION = "1";
+    private static final char CLEAN = 'C';
+    private static final char READ = 'R';
+    private static final char REMOVE = 'D';
+
+    /** Shard 폴더 이름으로 사용하는 Key 앞부분의 길이. */
+    private static final int SHARD_LENGTH = 2;
+
+    /** Flush하지 않고 모아두는 최대 사용(R) 기록 수. */
+    private static final int READ_FLUSH_THRESHOLD = 64;
+
+    /** Journal을 다시 쓰는 기준이 되는 불필요한 기록 수. */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    /** 열 때 삭제하는 임시 파일의 최소 경과 시간. (다운로드 중인 파일은 삭제하지 않는다) */
+    private static final long STALE_TEMP_FILE_AGE = 60 * 60 * 1000;
+
+    /** 폴더별로 연 Cache. */
+    private static final HashMap<String, ImageDiskCache> sCaches =
+            new HashMap<String, ImageDiskCache>();
+
+    private final File mDirectory;
+    private final File mJournalFile;
+    private long mMaxSize;
+    private long mSize;
+    private Writer mJournalWriter;
+    private int mRedundantOpCount;
+    private int mPendingReadCount;
+    private boolean mLoaded;
+
+    /** Key와 파일 크기. (사용 순서) */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f,
+            true);
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private ImageDiskCache(File directory, long maxSize) {
+        this.mDirectory = directory;
+        this.mJournalFile = new File(directory, JOURNAL_FILE);
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * 폴더의 Cache를 연다. 같은 폴더는 하나의 Cache를 공유한다. 처음 열 때 폴더를 검사하는 동안 다른 폴더의 Cache를
+     * 여는 Thread는 기다리지 않는다.
+     *
+     * @param directory Cache 폴더.
+     * @param maxSize 최대 Byte 크기.
+     * @return ImageDiskCache
+     * @throws IOException 폴더를 만들지 못했거나 Journal을 쓰지 못한 경우.
+     */
+    public static ImageDiskCache open(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        String path = directory.getAbsolutePath();
+        ImageDiskCache cache;
+        synchronized (sCaches) {
+            cache = sCaches.get(path);
+            if (cache == null) {
+                cache = new ImageDiskCache(directory, maxSize);
+                sCaches.put(path, cache);
+            }
+        }
+        try {
+            cache.ensureLoaded();
+        } catch (IOException e) {
+            synchronized (sCaches) {
+                if (sCaches.get(path) == cache) {
+                    sCaches.remove(path);
+                }
+            }
+            throw e;
+        }
+        cache.setMaxSize(maxSize);
+        return cache;
+    }
+
+    /**
+     * 처음 호출될 때 폴더를 만들고 Journal과 폴더를 읽는다. 같은 Cache를 여는 Thread는 끝날 때까지 기다린다.
+     */
+    private synchronized void ensureLoaded() throws IOException {
+        if (mLoaded) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + mDirectory);
+        }
+        load();
+        mLoaded = true;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Key의 파일 경로를 가져온다. 파일은 이 경로에 저장한 후 {@link #put(String)}으로 등록한다.
+     */
+    public File getFile(String key) {
+        return getFile(mDirectory, key);
+    }
+
+    /**
+     * Cache 폴더에서 Key의 파일 경로를 가져온다. (Key 앞부분 이름의 Shard 폴더)
+     *
+     * @param directory Cache 폴더.
+     * @param key 파일 Key.
+     */
+    public static File getFile(File directory, String key) {
+        return new File(new File(directory, getShard(key)), key);
+    }
+
+    private static String getShard(String key) {
+        return key.length() > SHARD_LENGTH ? key.substring(0, SHARD_LENGTH) : key;
+    }
+
+    /**
+     * Cache된 파일을 가져오고 사용 순서를 갱신한다.
+     *
+     * @return 파일. (없으면 null)
+     */
+    public synchronized File get(String key) {
+        if (mEntries.get(key) == null) {
+            mMissCount++;
+            return null;
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            // Cache 밖에서 삭제된 파일.
+            mSize -= mEntries.remove(key);
+            mMissCount++;
+            journal(REMOVE, key, -1);
+            return null;
+        }
+        mHitCount++;
+        journal(READ, key, -1);
+        return file;
+    }
+
+    /**
+     * {@link #getFile(String)} 경로에 저장한 파일을 등록하고, 최대 크기를 넘으면 오래 사용하지 않은 파일을 삭제한다.
+     */
+    public synchronized void put(String key) {
+        validateKey(key);
+        long length = getFile(key).length();
+        Long previous = mEntries.put(key, length);
+        if (previous != null) {
+            mSize -= previous;
+        }
+        mSize += length;
+        journal(CLEAN, key, length);
+        trimToSize();
+    }
+
+    /**
+     * 파일을 삭제한다.
+     *
+     * @return 등록된 파일이었으면 true.
+     */
+    public synchronized boolean remove(String key) {
+        Long length = mEntries.remove(key);
+        if (length == null) {
+            return false;
+        }
+        deleteFile(key);
+        mSize -= length;
+        journal(REMOVE, key, -1);
+        return true;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    public synchronized long maxSize() {
+        return mMaxSize;
+    }
+
+    /** 등록된 파일의 전체 Byte 크기. */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * 전체 크기가 최대 크기 이하가 되도록 오래 사용하지 않은 파일부터 삭제한다.
+     */
+    public synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            it.remove();
+            deleteFile(entry.getKey());
+            mSize -= entry.getValue();
+            mEvictionCount++;
+            journal(REMOVE, entry.getKey(), -1);
+        }
+    }
+
+    /**
+     * 모아둔 사용(R) 기록을 Journal 파일에 기록한다.
+     */
+    public synchronized void flush() {
+        if (mJournalWriter == null || mPendingReadCount == 0) {
+            return;
+        }
+        try {
+            mJournalWriter.flush();
+            mPendingReadCount = 0;
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Unable to write journal " + mJournalFile, e);
+            }
+            closeWriter();
+        }
+    }
+
+    /**
+     * 모든 파일을 삭제한다.
+     */
+    public synchronized void clear() {
+        long maxSize = mMaxSize;
+        mMaxSize = 0;
+        try {
+            trimToSize();
+        } finally {
+            mMaxSize = maxSize;
+        }
+    }
+
+    /**
+     * 사용 통계를 가져온다.
+     *
+     * @return 조회 성공/실패, 삭제 횟수와 크기.
+     */
+    public synchronized String getStats() {
+        return "ImageDiskCache [files=" + mEntries.size() + ", hit=" + mHitCount + ", miss="
+                + mMissCount + ", eviction=" + mEvictionCount + ", bytes=" + mSize + "/"
+                + mMaxSize + "]";
+    }
+
+    /**
+     * Journal을 읽어서 Index를 만들고, Journal에 없는 파일을 추가한 후 Journal을 다시 쓴다.
+     */
+    private void load() throws IOException {
+        if (mJournalFile.exists()) {
+            try {
+                readJournal();
+            } catch (IOException e) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Journal is corrupt. Rebuilding from " + mDirectory, e);
+                }
+                mEntries.clear();
+            }
+        }
+        scanDirectory();
+        rebuildJournal();
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+                mJournalFile), Config.UTF_8), 8192);
+        try {
+            String header = reader.readLine();
+            if (!(MAGIC + " " + VERSION).equals(header)) {
+                throw new IOException("Unexpected journal header : " + header);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                applyLine(line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Journal 한 줄을 Index에 반영한다. 깨진 줄은 무시한다. */
+    private void applyLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2 || parts[0].length() != 1) {
+            return;
+        }
+        String key = parts[1];
+        switch (parts[0].charAt(0)) {
+            case CLEAN:
+                if (parts.length == 3) {
+                    try {
+                        mEntries.put(key, Long.parseLong(parts[2]));
+                    } catch (NumberFormatException e) {
+                        // 기록 중에 잘린 줄.
+                    }
+                }
+                break;
+            case READ:
+                mEntries.get(key);
+                break;
+            case REMOVE:
+                mEntries.remove(key);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Cache 폴더와 Shard 폴더를 한번씩 읽어서 파일이 없는 Entry를 제거하고, Journal에 없는 파일은 가장 오래된 것으로
+     * 추가한다. Cache 폴더에 바로 저장된 파일은 Shard 폴더로 옮긴다.
+     */
+    private void scanDirectory() {
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return;
+        }
+        HashMap<String, Boolean> existing = new HashMap<String, Boolean>(names.length * 2);
+        LinkedHashMap<String, Long> unknown = new LinkedHashMap<String, Long>();
+        long now = System.currentTimeMillis();
+        int migrated = 0;
+        for (String name : names) {
+            File file = new File(mDirectory, name);
+            if (JOURNAL_FILE.equals(name) || JOURNAL_FILE_TEMP.equals(name)
+                    || deleteIfStaleTemp(file, now)) {
+                continue;
+            }
+            if (!isValidKey(name)) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                scanShard(file, existing, unknown, now);
+            } else if (isLegacyKey(name) && migrate(file)) {
+                // 이전 버전의 Flat Layout.
+                track(name, getFile(name), existing, unknown);
+                migrated++;
+            }
+        }
+        LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(unknown);
+        for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+            if (existing.containsKey(entry.getKey())) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        mEntries.clear();
+        mEntries.putAll(entries);
+        mSize = 0;
+        for (Long length : mEntries.values()) {
+            mSize += length;
+        }
+        if (Logger.isDebugEnabled()) {
+            Logger.d(getClass(), mDirectory + " : " + mEntries.size() + " files (" + unknown.size()
+                    + " recovered, " + migrated + " migrated), " + mSize + " bytes");
+        }
+    }
+
+    private void scanShard(File shard, HashMap<String, Boolean> existing,
+            LinkedHashMap<String, Long> unknown, long now) {
+        String[] names = shard.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(shard, name);
+            if (!deleteIfStaleTemp(file, now) && isValidKey(name)
+                    && shard.getName().equals(getShard(name)) && file.isFile()) {
+                track(name, file, existing, unknown);
+            }
+        }
+    }
+
+    private void track(String key, File file, HashMap<String, Boolean> existing,
+            LinkedHashMap<String, Long> unknown) {
+        existing.put(key, Boolean.TRUE);
+        if (!mEntries.containsKey(key)) {
+            unknown.put(key, file.length());
+        }
+    }
+
+    /**
+     * Cache 폴더에 바로 저장된 파일을 Shard 폴더로 옮긴다.
+     */
+    private boolean migrate(File file) {
+        File target = getFile(file.getName());
+        File shard = target.getParentFile();
+        if (!shard.isDirectory() && !shard.mkdirs()) {
+            return false;
+        }
+        if (target.exists()) {
+            // 이미 Shard 폴더에 있는 파일을 사용한다.
+            file.delete();
+            return false;
+        }
+        return file.renameTo(target);
+    }
+
+    /**
+     * 오래된 다운로드 임시 파일이면 삭제한다.
+     *
+     * @return 임시 파일이면 true.
+     */
+    private static boolean deleteIfStaleTemp(File file, long now) {
+        if (!file.getName().endsWith(TEMP_SUFFIX)) {
+            return false;
+        }
+        if (now - file.lastModified() > STALE_TEMP_FILE_AGE) {
+            file.delete();
+        }
+        return true;
+    }
+
+    /**
+     * 현재 Index만으로 Journal을 다시 쓴다. 임시 파일에 기록한 후 이름을 바꾼다.
+     */
+    private void rebuildJournal() throws IOException {
+        if (mJournalWriter != null) {
+            closeWriter();
+        }
+        File temp = new File(mDirectory, JOURNAL_FILE_TEMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp),
+                Config.UTF_8), 8192);
+        try {
+            writer.write(MAGIC + " " + VERSION + "\n");
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(mJournalFile)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp);
+        }
+        mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                mJournalFile, true), Config.UTF_8), 8192);
+        mRedundantOpCount = 0;
+        mPendingReadCount = 0;
+    }
+
+    /**
+     * Journal에 한 줄을 기록한다. 사용(R) 기록은 {@link #READ_FLUSH_THRESHOLD}개까지 모아서 Flush하며, 불필요한
+     * 기록이 많으면 Journal을 다시 쓴다.
+     */
+    private void journal(char op, String key, long length) {
+        if (mJournalWriter == null) {
+            return;
+        }
+        try {
+            if (op == CLEAN) {
+                mJournalWriter.write(op + " " + key + " " + length + "\n");
+            } else {
+                mJournalWriter.write(op + " " + key + "\n");
+            }
+            if (op != READ || ++mPendingReadCount >= READ_FLUSH_THRESHOLD) {
+                mJournalWriter.flush();
+                mPendingReadCount = 0;
+            }
+            if (op != CLEAN) {
+                mRedundantOpCount++;
+            }
+            if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                    && mRedundantOpCount >= mEntries.size()) {
+                rebuildJournal();
+            }
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Unable to write journal " + mJournalFile, e);
+            }
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        try {
+            mJournalWriter.close();
+        } catch (IOException e) {
+            if (Logger.isVerboseEnabled()) {
+                Logger.v(getClass(), e.toString());
+            }
+        }
+        mJournalWriter = null;
+    }
+
+    private void deleteFile(String key) {
+        File file = getFile(key);
+        if (file.exists() && !file.delete() && Logger.isWarnEnabled()) {
+            Logger.w(getClass(), "Unable to delete " + file);
+        }
+    }
+
+    private static boolean isValidKey(String key) {
+        if (key.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'
+                    || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 이전 버전이 Cache 폴더에 바로 저장한 이미지 파일 이름인지 확인한다. 같은 폴더의 다른 파일을 옮기지 않도록
+     * {@link com.keun.android.common.utils.Crc64Utils#crc64(String)}의 형식만 허용한다. (두 32bit 값을
+     * 앞의 0 없이 이은 소문자 16진수, 2~16자)
+     */
+    private static boolean isLegacyKey(String name) {
+        if (name.length() < 2 || name.length() > 16) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void validateKey(String key) {
+        if (!isValidKey(key)) {
+            throw new IllegalArgumentException("Keys must match [a-zA-Z0-9_-]+ : \"" + key + "\"");
+        }
+    }
+}
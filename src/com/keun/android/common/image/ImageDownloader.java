@@ -18,14 +18,16 @@ package com.keun.android.common.image;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Handler;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
 import com.keun.android.common.net.HttpClientManager;
+import com.keun.android.common.net.PrefetchLane;
+import com.keun.android.common.net.RequestBuilder;
 import com.keun.android.common.utils.Crc64Utils;
 import com.keun.android.common.utils.Logger;
 import com.keun.android.common.utils.StopWatchAverage;
@@ -35,23 +37,16 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.cookie.BasicClientCookie;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.WeakHashMap;
 
 /**
  * This helper class download images from the Internet and binds those with the
@@ -64,7 +59,6 @@ import java.util.concurrent.ConcurrentHashMap;
  * performance.
  */
 public class ImageDownloader {
-    private static final int HARD_CACHE_CAPACITY = 40;
     private static final int DELAY_BEFORE_PURGE = 30 * 1000; // in milliseconds
 
     private final Context mContext;
@@ -72,15 +66,23 @@ public class ImageDownloader {
 
     private int mResourcesId;
     private SavePath mSavePath;
-
+    private BitmapMemoryCache mMemoryCache;
+    private boolean mExactScale;
+    private ImageLoaderExecutor mExecutor = ImageLoaderExecutor.getDefault();
+    private NegativeCache mNegativeCache = NegativeCache.getDefault();
+    /** Layout 전이라 크기를 알 수 없어 다운로드를 미룬 ImageView. (UI Thread에서만 사용한다) */
+    private final WeakHashMap<ImageView, DeferredDownload> mDeferred =
+            new WeakHashMap<ImageView, DeferredDownload>();
+    /** ImageView에 표시한 Cache의 Bitmap. (UI Thread에서만 사용한다) */
+    private final WeakHashMap<ImageView, Bitmap> mBound = new WeakHashMap<ImageView, Bitmap>();
     public ImageDownloader(Context ctx, String userAgent) {
         this.mContext = ctx;
         this.mUserAgent = userAgent;
+        this.mMemoryCache = BitmapMemoryCache.getDefault(ctx);
     }
 
     public ImageDownloader(Context ctx, String userAgent, SavePath savePath) {
-        this.mContext = ctx;
-        this.mUserAgent = userAgent;
+        this(ctx, userAgent);
         this.mSavePath = savePath;
     }
 
@@ -93,28 +95,58 @@ public class ImageDownloader {
         this.mResourcesId = id;
     }
 
-    // Hard cache, with a fixed maximum capacity and a life duration
-    private final HashMap<String, Bitmap> sHardBitmapCache =
-            new LinkedHashMap<String, Bitmap>(HARD_CACHE_CAPACITY / 2, 0.75f, true) {
-                private static final long serialVersionUID = -7190622541619388252L;
+    /**
+     * Bitmap Memory Cache를 설정한다. 기본값은 {@link BitmapMemoryCache#getDefault(Context)}이다.
+     *
+     * @param cache BitmapMemoryCache
+     */
+    public void setMemoryCache(BitmapMemoryCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Memory cache may not be null");
+        }
+        this.mMemoryCache = cache;
+    }
 
-                @Override
-                protected boolean removeEldestEntry(LinkedHashMap.Entry<String, Bitmap> eldest) {
-                    if (size() > HARD_CACHE_CAPACITY) {
-                        // Entries push-out of hard reference cache are
-                        // transferred to soft reference cache
-                        sSoftBitmapCache.put(eldest.getKey(),
-                                new SoftReference<Bitmap>(eldest.getValue()));
-                        return true;
-                    } else {
-                        return false;
-                    }
-                }
-            };
+    public BitmapMemoryCache getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * inSampleSize로 축소한 후 표시할 크기 안에 들어가도록 한번 더 축소할지 설정한다. (기본값 false)
+     *
+     * @param exactScale 정확하게 축소할지 여부.
+     */
+    public void setExactScale(boolean exactScale) {
+        this.mExactScale = exactScale;
+    }
+
+    /**
+     * 다운로드와 Decode를 실행할 Executor를 설정한다. 기본값은 {@link ImageLoaderExecutor#getDefault()}이다.
+     *
+     * @param executor ImageLoaderExecutor
+     */
+    public void setExecutor(ImageLoaderExecutor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor may not be null");
+        }
+        this.mExecutor = executor;
+    }
+
+    /**
+     * 이미지를 가져오지 못한 URL을 기억할 Cache를 설정한다. 기본값은 {@link NegativeCache#getDefault()}이다.
+     *
+     * @param cache NegativeCache
+     */
+    public void setNegativeCache(NegativeCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Negative cache may not be null");
+        }
+        this.mNegativeCache = cache;
+    }
 
-    // Soft cache for bitmap kicked out of hard cache
-    private final static ConcurrentHashMap<String, SoftReference<Bitmap>> sSoftBitmapCache =
-            new ConcurrentHashMap<String, SoftReference<Bitmap>>(HARD_CACHE_CAPACITY / 2);
+    public NegativeCache getNegativeCache() {
+        return mNegativeCache;
+    }
 
     private final Handler purgeHandler = new Handler();
 
@@ -140,21 +172,43 @@ public class ImageDownloader {
     /**
      * Same as {@link #download(String, ImageView)}, with the possibility to
      * provide an additional cookie that will be used when the image will be
-     * retrieved.
+     * retrieved. If the ImageView has not been laid out yet, the download is
+     * deferred until it is measured, so that the image is decoded and cached
+     * only once at the size it is displayed at.
      * 
      * @param url The URL of the image to download.
      * @param imageView The ImageView to bind the downloaded image to.
      * @param cookie A cookie String that will be used by the http connection.
      */
     public void download(String url, ImageView imageView, String cookie) {
+        if (url != null && !hasTargetSize(imageView)) {
+            deferDownload(url, imageView, cookie);
+            return;
+        }
+        download(url, imageView, cookie, getTargetWidth(imageView), getTargetHeight(imageView));
+    }
+
+    /**
+     * Same as {@link #download(String, ImageView, String)}, with the size the
+     * image will be displayed at. The image is decoded downsampled to that size
+     * instead of at full resolution.
+     * 
+     * @param url The URL of the image to download.
+     * @param imageView The ImageView to bind the downloaded image to.
+     * @param cookie A cookie String that will be used by the http connection.
+     * @param width 표시할 가로 크기(Pixel). (0 이하이면 제한하지 않는다)
+     * @param height 표시할 세로 크기(Pixel). (0 이하이면 제한하지 않는다)
+     */
+    public void download(String url, ImageView imageView, String cookie, int width, int height) {
+        cancelDeferredDownload(imageView);
         resetPurgeTimer();
-        Bitmap bitmap = getBitmapFromCache(url);
+        Bitmap bitmap = url != null ? getBitmapFromCache(getCacheKey(url, width, height)) : null;
 
         if (bitmap == null) {
-            forceDownload(url, imageView, cookie);
+            forceDownload(url, imageView, cookie, width, height);
         } else {
             cancelPotentialDownload(url, imageView);
-            imageView.setImageBitmap(bitmap);
+            bindBitmap(imageView, bitmap);
         }
     }
 
@@ -162,39 +216,102 @@ public class ImageDownloader {
      * Same as download but the image is always downloaded and the cache is not
      * used. Kept private at the moment as its interest is not clear.
      */
-    private void forceDownload(String url, ImageView imageView, String cookie) {
+    private void forceDownload(String url, ImageView imageView, String cookie, int width,
+            int height) {
         // State sanity: url is guaranteed to never be null in
         // DownloadedDrawable and cache keys.
         if (url == null) {
-            if (mResourcesId > 0) {
-                imageView.setImageDrawable(mContext.getResources().getDrawable(mResourcesId));
-            } else {
-                imageView.setImageDrawable(null);
-            }
+            setDefaultImage(imageView);
+            return;
+        }
+
+        // 최근에 실패한 URL은 다시 요청하지 않고 기본 이미지를 표시한다.
+        if (mNegativeCache.isFailed(url)) {
+            cancelPotentialDownload(url, imageView);
+            setDefaultImage(imageView);
             return;
         }
 
         if (cancelPotentialDownload(url, imageView)) {
-            BitmapDownloaderTask task = new BitmapDownloaderTask(imageView);
+            BitmapDownloaderTask task = new BitmapDownloaderTask(imageView, width, height);
             DownloadedDrawable downloadedDrawable = null;
             if (mResourcesId > 0) {
                 downloadedDrawable = new DownloadedDrawable(task, mContext, mResourcesId);
             } else {
                 downloadedDrawable = new DownloadedDrawable(task);
             }
+            unbindBitmap(imageView);
             imageView.setImageDrawable(downloadedDrawable);
             task.execute(url, cookie);
         }
     }
 
+    /**
+     * ImageView가 Measure될 때까지 다운로드를 미룬다. 그 동안 기본 이미지를 표시한다.
+     */
+    private void deferDownload(String url, ImageView imageView, String cookie) {
+        cancelDeferredDownload(imageView);
+        if (!cancelPotentialDownload(url, imageView)) {
+            // 같은 URL을 이미 받고 있다.
+            return;
+        }
+        setDefaultImage(imageView);
+        DeferredDownload deferred = new DeferredDownload(url, imageView, cookie);
+        mDeferred.put(imageView, deferred);
+        imageView.getViewTreeObserver().addOnPreDrawListener(deferred);
+    }
+
+    /**
+     * ImageView에 미뤄둔 다운로드가 있으면 취소한다.
+     */
+    private void cancelDeferredDownload(ImageView imageView) {
+        DeferredDownload deferred = mDeferred.remove(imageView);
+        if (deferred != null) {
+            deferred.detach(imageView);
+        }
+    }
+
+    /**
+     * Bitmap을 ImageView에 표시하고 Memory Cache에 사용 중임을 알린다. 이전에 표시한 Bitmap은 해제한다.
+     */
+    private void bindBitmap(ImageView imageView, Bitmap bitmap) {
+        if (bitmap == null) {
+            unbindBitmap(imageView);
+            imageView.setImageBitmap(null);
+            return;
+        }
+        mMemoryCache.acquire(bitmap);
+        Bitmap previous = mBound.put(imageView, bitmap);
+        imageView.setImageBitmap(bitmap);
+        mMemoryCache.release(previous);
+    }
+
+    /**
+     * ImageView에 표시한 Bitmap을 해제한다. Cache에서 이미 제거된 Bitmap이면 재사용할 수 있게 된다.
+     */
+    private void unbindBitmap(ImageView imageView) {
+        mMemoryCache.release(mBound.remove(imageView));
+    }
+
+    /**
+     * {@link #setResourcesId(int)}로 설정한 기본 이미지를 표시한다.
+     */
+    private void setDefaultImage(ImageView imageView) {
+        unbindBitmap(imageView);
+        if (mResourcesId > 0) {
+            imageView.setImageDrawable(mContext.getResources().getDrawable(mResourcesId));
+        } else {
+            imageView.setImageDrawable(null);
+        }
+    }
+
     /**
      * Clears the image cache used internally to improve performance. Note that
      * for memory efficiency reasons, the cache will automatically be cleared
      * after a certain inactivity delay.
      */
     public void clearCache() {
-        sHardBitmapCache.clear();
-        sSoftBitmapCache.clear();
+        mMemoryCache.clear();
 
         // Cache에 저장된 파일을 정리한다.
         if (mSavePath != null) {
@@ -202,6 +319,162 @@ public class ImageDownloader {
         }
     }
 
+    /**
+     * 곧 표시할 것으로 예상되는 이미지를 낮은 우선순위로 미리 받아서 디스크 Cache({@link SavePath})에 저장한다.
+     * <br />
+     * 다운로드는 {@link PrefetchLane#getDefault()}에서 실행되며, 사용자가 기다리는 요청이 진행 중이면 시작하지 않거나
+     * 받는 중에 멈추고 기다린다.
+     * 이미 저장된 이미지와 최근에 실패한 URL({@link NegativeCache})은 다시 받지 않는다.
+     *
+     * @param urls 이미지 URL 리스트.
+     */
+    public void prefetch(List<String> urls) {
+        if (mSavePath == null || mSavePath.getPath() == null) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "SavePath is not set. Prefetch is ignored.");
+            }
+            return;
+        }
+        PrefetchLane lane = PrefetchLane.getDefault();
+        for (final String value : urls) {
+            if (value == null || value.startsWith("/") || value.startsWith("file://")
+                    || mNegativeCache.isFailed(value)) {
+                continue;
+            }
+            final String url = value.startsWith("http://") || value.startsWith("https://")
+                    ? value : "http://" + value;
+            lane.submit(url, new PrefetchLane.Task() {
+                @Override
+                public long run() throws IOException {
+                    String key = Crc64Utils.crc64(url);
+                    if (getCachedFile(key) != null) {
+                        return 0;
+                    }
+                    File file = getCacheTarget(key);
+                    HttpClientManager manager = new HttpClientManager(mContext, mUserAgent);
+                    HttpEntity entity = null;
+                    try {
+                        entity = getRemoteImage(manager, url, null);
+                        if (entity == null) {
+                            mNegativeCache.failed(value);
+                        } else if (writeToFile(file, entity, null)) {
+                            long length = file.length();
+                            commitCacheFile(key);
+                            return length;
+                        }
+                        return 0;
+                    } finally {
+                        if (entity != null) {
+                            entity.consumeContent();
+                        }
+                        manager.close();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 디스크 Cache에 저장된 파일을 가져온다. 디스크 Cache가 없으면 저장 경로의 파일을 확인한다.
+     *
+     * @return Cache 파일. (없으면 null)
+     */
+    private File getCachedFile(String key) {
+        ImageDiskCache cache = getDiskCache();
+        if (cache != null) {
+            return cache.get(key);
+        }
+        File file = ImageDiskCache.getFile(new File(mSavePath.getPath()), key);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * 다운로드한 이미지를 저장할 파일 경로를 가져온다.
+     */
+    private File getCacheTarget(String key) {
+        ImageDiskCache cache = getDiskCache();
+        return cache != null ? cache.getFile(key)
+                : ImageDiskCache.getFile(new File(mSavePath.getPath()), key);
+    }
+
+    /**
+     * 디스크 Cache의 파일을 삭제한다.
+     */
+    private void removeCachedFile(String key) {
+        ImageDiskCache cache = getDiskCache();
+        if (cache != null) {
+            cache.remove(key);
+            return;
+        }
+        String path = mSavePath.getPath();
+        if (path != null) {
+            ImageDiskCache.getFile(new File(path), key).delete();
+        }
+    }
+
+    /**
+     * 저장 경로의 디스크 Cache를 가져온다. {@link SavePathImpl}이 아니면 크기를 제한하지 않고 저장 경로에 같은 Shard
+     * 폴더 구조로 저장한다. ({@link ImageDiskCache#getFile(File, String)})
+     *
+     * @return ImageDiskCache. (없으면 null)
+     */
+    private ImageDiskCache getDiskCache() {
+        return mSavePath instanceof SavePathImpl ? ((SavePathImpl) mSavePath).getCache() : null;
+    }
+
+    /**
+     * 저장한 파일을 디스크 Cache에 등록한다. 최대 크기를 넘으면 오래 사용하지 않은 파일이 삭제된다.
+     */
+    private void commitCacheFile(String key) {
+        ImageDiskCache cache = getDiskCache();
+        if (cache != null) {
+            cache.put(key);
+        }
+    }
+
+    /**
+     * ImageView의 크기를 알 수 있는지 확인한다. Layout 전이면 LayoutParams에 크기가 지정된 경우에만 알 수 있다.
+     */
+    private static boolean hasTargetSize(ImageView imageView) {
+        if (imageView.getWidth() > 0 || imageView.getHeight() > 0) {
+            return true;
+        }
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        return params != null && params.width > 0 && params.height > 0;
+    }
+
+    /**
+     * ImageView의 가로 크기를 가져온다. Layout 전이면 LayoutParams, 그것도 없으면 화면 크기를 사용한다.
+     */
+    private int getTargetWidth(ImageView imageView) {
+        int width = imageView.getWidth();
+        if (width <= 0 && imageView.getLayoutParams() != null) {
+            width = imageView.getLayoutParams().width;
+        }
+        return width > 0 ? width : mContext.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * ImageView의 세로 크기를 가져온다. Layout 전이면 LayoutParams, 그것도 없으면 화면 크기를 사용한다.
+     */
+    private int getTargetHeight(ImageView imageView) {
+        int height = imageView.getHeight();
+        if (height <= 0 && imageView.getLayoutParams() != null) {
+            height = imageView.getLayoutParams().height;
+        }
+        return height > 0 ? height : mContext.getResources().getDisplayMetrics().heightPixels;
+    }
+
+    /**
+     * 같은 URL이라도 표시 크기별로 축소한 Bitmap을 따로 Cache한다.
+     */
+    private static String getCacheKey(String url, int width, int height) {
+        if (width <= 0 && height <= 0) {
+            return url;
+        }
+        return url + "#" + Math.max(0, width) + "x" + Math.max(0, height);
+    }
+
     private void resetPurgeTimer() {
         purgeHandler.removeCallbacks(purger);
         purgeHandler.postDelayed(purger, DELAY_BEFORE_PURGE);
@@ -218,8 +491,10 @@ public class ImageDownloader {
 
         if (bitmapDownloaderTask != null) {
             String bitmapUrl = bitmapDownloaderTask.url;
-            if ((bitmapUrl == null) || (!bitmapUrl.equals(url))) {
-                bitmapDownloaderTask.cancel(true);
+            // 실행하지 않고 버려진 작업이면 같은 URL이라도 다시 시작한다.
+            if ((bitmapUrl == null) || (!bitmapUrl.equals(url))
+                    || bitmapDownloaderTask.isCancelled()) {
+                bitmapDownloaderTask.cancel();
             } else {
                 // The same URL is already being downloaded.
                 return false;
@@ -249,110 +524,316 @@ public class ImageDownloader {
      * @return The cached bitmap or null if it was not found.
      */
     private Bitmap getBitmapFromCache(String url) {
-        // First try the hard reference cache
-        synchronized (sHardBitmapCache) {
-            final Bitmap bitmap = sHardBitmapCache.get(url);
-            if (bitmap != null) {
-                // Bitmap found in hard cache
-                // Move element to first position, so that it is removed last
-                sHardBitmapCache.remove(url);
-                sHardBitmapCache.put(url, bitmap);
-                return bitmap;
-            }
-        }
+        return mMemoryCache.get(url);
+    }
 
-        // Then try the soft reference cache
-        SoftReference<Bitmap> bitmapReference = sSoftBitmapCache.get(url);
-        if (bitmapReference != null) {
-            final Bitmap bitmap = bitmapReference.get();
-            if (bitmap != null) {
-                // Bitmap found in soft cache
-                return bitmap;
+    /**
+     * 이미지파일을 디스크에 저장한다. 같은 폴더의 임시 파일에 기록한 후 이름을 바꾸므로, 중간에 실패하거나 취소되어도
+     * 일부만 기록된 파일이 남지 않는다.
+     * 
+     * @param file 저장경로와 파일이름
+     * @param entity 이미지 응답. (Stream은 저장 후 닫는다)
+     * @param job 취소 여부를 확인할 작업. (null이면 확인하지 않는다)
+     * @return 저장 성공(true) / 실패 또는 취소(false)
+     * @throws IOException 받은 길이가 응답 길이와 다른 경우 등.
+     */
+    private boolean writeToFile(final File file, HttpEntity entity, ImageLoaderExecutor.Job job)
+            throws IOException {
+        InputStream in = entity.getContent();
+        StopWatchAverage swa = null;
+        if (Logger.isDebugEnabled()) {
+            swa = new StopWatchAverage("Image write (URL: " + file.toString() + ") - run time");
+        }
+        CacheTeeInputStream tee = null;
+        try {
+            tee = new CacheTeeInputStream(in, file, entity.getContentLength());
+            return tee.commit(job);
+        } finally {
+            if (tee != null) {
+                tee.close();
             } else {
-                // Soft reference has been Garbage Collected
-                sSoftBitmapCache.remove(url);
+                in.close();
+            }
+            if (Logger.isDebugEnabled() && swa != null) {
+                Logger.d(getClass(),
+                        "[" + file.toString() + "] 이미지파일 저장 시간 - " + swa.toString());
             }
         }
+    }
 
-        return null;
+    /**
+     * Remote 서버에서 이미지를 읽어온다.
+     */
+    private HttpEntity getRemoteImage(HttpClientManager manager, String url, String cookie)
+            throws IOException {
+        return getRemoteImage(manager, newImageRequest(manager, url, cookie));
+    }
+
+    /**
+     * 이미지 요청을 생성한다. 요청을 중간에 취소(abort)할 수 있도록
+     * {@link HttpClientManager#execute(HttpUriRequest)}로 전달한다.
+     */
+    private static HttpUriRequest newImageRequest(HttpClientManager manager, String url,
+            String cookie) throws IOException {
+        RequestBuilder builder = manager.getTemplate().get(url);
+        if (cookie != null) {
+            CookieStore cookies = new BasicCookieStore();
+            cookies.addCookie(new BasicClientCookie("cookie", cookie));
+            builder.setCookies(cookies);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Remote 서버에서 이미지를 읽어온다.
+     */
+    private HttpEntity getRemoteImage(HttpClientManager manager, HttpUriRequest request)
+            throws IOException {
+        String url = request.getURI().toString();
+        HttpResponse response = manager.execute(request);
+        final int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_OK) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Error " + statusCode
+                        + " while retrieving bitmap from " + url);
+            }
+            return null;
+        }
+        // 이미지인지 여부를 확인한다.
+        Header contentType = response.getFirstHeader("Content-Type");
+        if (contentType == null) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Content-Type Header 가 존재하지 않습니다.");
+            }
+            return null;
+        }
+        String value = contentType.getValue();
+        if (value == null || !((value.toLowerCase()).startsWith("image"))) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "(" + value + ")는(은) 이미지 파일이 아닙니다.");
+            }
+            return null;
+        }
+        return response.getEntity();
     }
 
     /**
-     * The actual AsyncTask that will asynchronously download the image.
+     * The actual task that will asynchronously download the image. It runs
+     * first on the network stage of the {@link ImageLoaderExecutor}, where the
+     * downloaded bytes are decoded while they are written to disk, and then on
+     * the decode stage when the image is already on disk.
      */
-    class BitmapDownloaderTask extends AsyncTask<String, Void, Bitmap> {
-        private static final int IO_BUFFER_SIZE = 4 * 1024;
+    class BitmapDownloaderTask extends ImageLoaderExecutor.Job {
         private String url;
+        private String cookie;
+        private String cacheKey;
         private final WeakReference<ImageView> imageViewReference;
-
-        public BitmapDownloaderTask(ImageView imageView) {
+        /** 시작할 때 ImageView가 Window에 붙어 있었는지 여부. */
+        private final boolean attached;
+        private final int width;
+        private final int height;
+        /** Decode할 파일. (null이면 네트워크 단계) */
+        private File file;
+        /** {@link #file}이 디스크 Cache의 파일이면 그 Key. (Local 파일이면 null) */
+        private String fileKey;
+        /** 서버가 이미지를 주지 않았거나 받은 이미지를 Decode하지 못한 경우 true. (네트워크 단계) */
+        private boolean rejected;
+        /** 진행 중인 HTTP 요청. (취소하면 abort한다) */
+        private volatile HttpUriRequest request;
+
+        public BitmapDownloaderTask(ImageView imageView, int width, int height) {
             imageViewReference = new WeakReference<ImageView>(imageView);
+            this.attached = imageView.getWindowToken() != null;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * 다운로드를 시작한다. Local 파일은 바로 Decode 단계에서 실행한다.
+         */
+        public void execute(String url, String cookie) {
+            this.url = url;
+            this.cookie = cookie;
+            this.cacheKey = getCacheKey(url, width, height);
+            if (url.startsWith("/") || url.startsWith("file://")) {
+                file = new File(url.startsWith("file://") ? url.substring("file://".length())
+                        : url);
+                mExecutor.executeDecode(this);
+            } else {
+                mExecutor.executeNetwork(this);
+            }
         }
 
         /**
-         * Actual download method.
+         * 대기 중이면 Queue에서 제거하고, 다운로드 중이면 HTTP 요청을 abort하여 Connection을 해제한다. 저장 중이던
+         * 임시 파일은 삭제된다.
          */
+        public void cancel() {
+            mExecutor.cancel(this);
+            HttpUriRequest current = request;
+            if (current != null) {
+                current.abort();
+            }
+        }
+
+        /**
+         * ImageView가 사라졌거나, 다른 이미지로 바뀌었거나(ImageDownloader 밖에서 설정한 경우 포함), Window에서
+         * 떨어졌으면 실행하지 않는다. Window에 붙기 전에 시작한 작업(Adapter의 getView 등)은 아직 붙지 않은 것과
+         * 구분할 수 없으므로 떨어진 것으로 보지 않는다. (Worker Thread에서 View의 상태를 읽으므로 조금 늦게 반영될 수
+         * 있다)
+         */
+        @Override
+        protected boolean isStale() {
+            ImageView imageView = imageViewReference.get();
+            if (imageView == null || getBitmapDownloaderTask(imageView) != this) {
+                return true;
+            }
+            return attached && imageView.getWindowToken() == null;
+        }
+
         @Override
-        protected Bitmap doInBackground(String... params) {
+        protected void execute() {
+            Bitmap bitmap = null;
+            // 서버가 이미지를 주지 않았거나 Decode하지 못한 경우. (네트워크 오류와 디스크 오류는 제외한다)
+            boolean failed = false;
+            try {
+                if (file != null) {
+                    bitmap = BitmapDecoder.decodeFile(file, width, height, mExactScale,
+                            mMemoryCache.getBitmapPool());
+                    if (bitmap == null && fileKey != null) {
+                        // Decode할 수 없는 Cache 파일은 지워야 다음에 서버에서 다시 받는다.
+                        removeCachedFile(fileKey);
+                    }
+                    failed = bitmap == null;
+                } else {
+                    bitmap = download();
+                    if (file != null) {
+                        // 디스크에 저장한 파일은 Decode 단계에서 읽는다.
+                        mExecutor.executeDecode(this);
+                        return;
+                    }
+                    // 디스크에 저장하지 못해서 Bitmap이 없는 경우는 URL의 문제가 아니다.
+                    failed = rejected;
+                }
+            } catch (IOException e) {
+                if (isCancelled()) {
+                    if (Logger.isDebugEnabled()) {
+                        Logger.d(getClass(), "Download aborted: " + url);
+                    }
+                } else if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "I/O error while retrieving bitmap from " + url, e);
+                }
+            } catch (IllegalStateException e) {
+                failed = true;
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Incorrect URL: " + url);
+                }
+            } catch (Exception e) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Error while retrieving bitmap from " + url, e);
+                }
+            }
+            if (!isCancelled()) {
+                if (failed) {
+                    mNegativeCache.failed(url);
+                } else if (bitmap != null) {
+                    mNegativeCache.succeeded(url);
+                }
+            }
+            final Bitmap result = bitmap;
+            purgeHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPostExecute(result);
+                }
+            });
+        }
+
+        /**
+         * 서버에서 이미지를 받아서 Decode한다. 디스크 Cache가 있으면 받는 동안 파일에도 저장한다. Cache에 이미
+         * 있거나 받으면서 Decode하지 못한 경우 {@link #file}을 설정한 후 null을 반환한다.
+         *
+         * @return Decode한 Bitmap.
+         */
+        private Bitmap download() throws IOException {
             // TODO 다운로드 정보를 추가한다.
-            url = params[0];
-            String cookie = params[1];
+            // 서버 URL인 경우 "http://" 또는 "https://"로 시작하지 않으면 "http://"를 붙여준다.
+            String remoteUrl = url;
+            if (!remoteUrl.startsWith("http://") && !remoteUrl.startsWith("https://")) {
+                remoteUrl = "http://" + remoteUrl;
+            }
 
             // 네트워크 연결을 수정한다.
             HttpEntity entity = null;
             HttpClientManager manager = null;
             try {
-                if (url.startsWith("/") || url.startsWith("file://")) {
-                    return getBitmap(new FileInputStream(url));
-                }
-
-                // 서버 URL인 경우 "http://" 또는 "https://"로 시작하지 않으면 "http://"를 붙여준다.
-                if (!url.startsWith("http://") && !url.startsWith("https://")) {
-                    url = "http://" + url;
-                }
-
                 // 로컬에 저장하지 않고 서버에서 이미지를 바로 가져온다.
                 if (mSavePath == null || mSavePath.getPath() == null) {
                     // 네트워크를 연결한다.
                     manager = new HttpClientManager(mContext, mUserAgent);
-                    entity = getRemoteImage(manager, cookie);
-                    if (entity != null) {
-                        return getBitmap(entity.getContent());
+                    entity = fetch(manager, remoteUrl);
+                    if (entity == null) {
+                        rejected = true;
+                        return null;
+                    }
+                    InputStream in = entity.getContent();
+                    try {
+                        Bitmap bitmap = BitmapDecoder.decodeStream(in, width, height,
+                                mExactScale);
+                        rejected = bitmap == null;
+                        return bitmap;
+                    } finally {
+                        in.close();
                     }
                 }
 
                 // Cache 파일을 로컬 디스크에 저장한 후 Bitmap을 읽어온다.
-                String key = Crc64Utils.crc64(url);
+                String key = Crc64Utils.crc64(remoteUrl);
 
                 // Cache파일이 로컬에 존재하는지 확인한다.
-                File file = new File(mSavePath.getPath(), key);
-                if (file.exists()) { // 로컬에 파일이 존재한다.
-                    return getBitmap(new FileInputStream(file));
+                File cachedFile = getCachedFile(key);
+                if (cachedFile != null) { // 로컬에 파일이 존재한다.
+                    file = cachedFile;
+                    fileKey = key;
+                    return null;
                 }
 
-                // 서버에서 파일을 받아서 로컬에 저장 후 Cache에 등록한다.
+                // 서버에서 받는 Byte를 임시 파일에 기록하면서 바로 Decode하고, 완료되면 Cache에 등록한다.
                 manager = new HttpClientManager(mContext, mUserAgent);
-                entity = getRemoteImage(manager, cookie);
-                if (entity != null) {
-                    BufferedInputStream stream = new BufferedInputStream(entity.getContent());
-                    boolean isSave = writeToFile(file, stream);
-                    if (isSave == true) {
-                        return getBitmap(new FileInputStream(file));
-                    }
-                }
-            } catch (IOException e) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "I/O error while retrieving bitmap from " + url, e);
+                entity = fetch(manager, remoteUrl);
+                if (entity == null) {
+                    rejected = true;
+                    return null;
                 }
-            } catch (IllegalStateException e) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "Incorrect URL: " + url);
-                }
-            } catch (Exception e) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "Error while retrieving bitmap from " + url, e);
+                File cacheFile = getCacheTarget(key);
+                CacheTeeInputStream tee = new CacheTeeInputStream(entity.getContent(), cacheFile,
+                        entity.getContentLength());
+                try {
+                    Bitmap bitmap = null;
+                    try {
+                        bitmap = BitmapDecoder.decodeStream(tee, width, height, mExactScale);
+                    } catch (IOException e) {
+                        if (isCancelled()) {
+                            throw e;
+                        }
+                        // 크기를 읽은 후 되돌리지 못한 경우 등. 저장한 파일에서 다시 Decode한다.
+                        if (Logger.isDebugEnabled()) {
+                            Logger.d(getClass(), "Streaming decode failed: " + e.toString());
+                        }
+                    }
+                    if (tee.commit(this)) {
+                        commitCacheFile(key);
+                        if (bitmap == null) {
+                            file = cacheFile;
+                            fileKey = key;
+                        }
+                    }
+                    return bitmap;
+                } finally {
+                    tee.close();
                 }
             } finally {
+                request = null;
                 if (entity != null) {
                     try {
                         entity.consumeContent();
@@ -366,23 +847,32 @@ public class ImageDownloader {
                     manager.close();
                 }
             }
-            return null;
+        }
+
+        /**
+         * 취소할 수 있도록 요청을 기록한 후 서버에서 이미지를 읽어온다.
+         */
+        private HttpEntity fetch(HttpClientManager manager, String remoteUrl) throws IOException {
+            HttpUriRequest current = newImageRequest(manager, remoteUrl, cookie);
+            request = current;
+            if (isCancelled()) {
+                current.abort();
+                return null;
+            }
+            return getRemoteImage(manager, current);
         }
 
         /**
          * Once the image is downloaded, associates it to the imageView
          */
-        @Override
-        protected void onPostExecute(Bitmap bitmap) {
+        private void onPostExecute(Bitmap bitmap) {
             if (isCancelled()) {
                 bitmap = null;
             }
 
             // Add bitmap to cache
             if (bitmap != null) {
-                synchronized (sHardBitmapCache) {
-                    sHardBitmapCache.put(url, bitmap);
-                }
+                mMemoryCache.put(cacheKey, bitmap);
             }
 
             if (imageViewReference != null) {
@@ -391,163 +881,47 @@ public class ImageDownloader {
                 // Change bitmap only if this process is still associated with
                 // it
                 if (this == bitmapDownloaderTask) {
-                    imageView.setImageBitmap(bitmap);
+                    bindBitmap(imageView, bitmap);
                 }
             }
         }
+    }
 
-        /**
-         * 이미지파일을 디스크에 저장한다.
-         * 
-         * @param file 저장경로와 파일이름
-         * @param bin BufferedInputStream
-         * @return 저장 성공(true) / 실패(false)
-         * @throws IOException
-         */
-        private boolean writeToFile(final File file, BufferedInputStream bin) throws IOException {
-            StopWatchAverage swa = null;
-            if (Logger.isDebugEnabled()) {
-                swa = new StopWatchAverage("Image write (URL: " + file.toString() + ") - run time");
-            }
-            FileOutputStream fout = null;
-            BufferedOutputStream bout = null;
-            try {
-                if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
-                    if (Logger.isErrorEnabled()) {
-                        Logger.e(getClass(), "Unable to create cache directory " + file.getParent());
-                    }
-                    return false;
-                }
-                file.createNewFile();
-                fout = new FileOutputStream(file);
-                bout = new BufferedOutputStream(fout);
-                int read = -1;
-                while ((read = bin.read()) != -1) {
-                    for (;;) {
-                        try {
-                            bout.write(read);
-                            break;
-                        } catch (IOException e) {
-                            if (Logger.isVerboseEnabled()) {
-                                Logger.v(getClass(), e.toString());
-                            }
-                        }
-                    }
-                }
-                return true;
-            } finally {
-                if (bout != null) {
-                    try {
-                        bout.flush();
-                        bout.close();
-                        bout = null;
-                    } catch (IOException e) {
-                        if (Logger.isVerboseEnabled()) {
-                            Logger.v(getClass(), e.toString());
-                        }
-                    }
-                }
-                if (fout != null) {
-                    try {
-                        fout.close();
-                        fout = null;
-                    } catch (IOException e) {
-                        if (Logger.isVerboseEnabled()) {
-                            Logger.v(getClass(), e.toString());
-                        }
-                    }
-                }
-                if (bin != null) {
-                    try {
-                        bin.close();
-                        bin = null;
-                    } catch (IOException e) {
-                        if (Logger.isVerboseEnabled()) {
-                            Logger.v(getClass(), e.toString());
-                        }
-                    }
-                }
-                if (Logger.isDebugEnabled() && swa != null) {
-                    Logger.d(getClass(),
-                            "[" + file.toString() + "] 이미지파일 저장 시간 - " + swa.toString());
-                }
-            }
+    /**
+     * Layout 전인 ImageView에 미뤄둔 다운로드. 처음 그리기 직전(Measure와 Layout 후)에 측정된 크기로 다운로드를
+     * 시작한다.
+     */
+    private final class DeferredDownload implements ViewTreeObserver.OnPreDrawListener {
+        private final String mUrl;
+        private final String mCookie;
+        private final WeakReference<ImageView> mImageViewReference;
+
+        DeferredDownload(String url, ImageView imageView, String cookie) {
+            this.mUrl = url;
+            this.mCookie = cookie;
+            this.mImageViewReference = new WeakReference<ImageView>(imageView);
         }
 
-        /**
-         * Remote 서버에서 이미지를 읽어온다.
-         */
-        private HttpEntity getRemoteImage(HttpClientManager manager, String cookie)
-                throws IOException {
-            // 이미지를 Cache할 경로를 설정하지 않은 경우에는 다운로드만 받고 종료한다.
-            HttpResponse response = null;
-            if (cookie != null) {
-                CookieStore cookies = new BasicCookieStore();
-                cookies.addCookie(new BasicClientCookie("cookie", cookie));
-                response = manager.sendGet(url, cookies);
-            } else {
-                response = manager.sendGet(url);
-            }
-            final int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode != HttpStatus.SC_OK) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "Error " + statusCode
-                            + " while retrieving bitmap from " + url);
-                }
-                return null;
-            }
-            // 이미지인지 여부를 확인한다.
-            Header contentType = response.getFirstHeader("Content-Type");
-            if (contentType == null) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "Content-Type Header 가 존재하지 않습니다.");
-                }
-                return null;
-            }
-            String value = contentType.getValue();
-            if (value == null || !((value.toLowerCase()).startsWith("image"))) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "(" + value + ")는(은) 이미지 파일이 아닙니다.");
-                }
-                return null;
+        @Override
+        public boolean onPreDraw() {
+            ImageView imageView = mImageViewReference.get();
+            if (imageView != null && mDeferred.get(imageView) == this) {
+                // 크기를 구하지 못해도 다시 미루지 않는다.
+                download(mUrl, imageView, mCookie, getTargetWidth(imageView),
+                        getTargetHeight(imageView));
+            } else if (imageView != null) {
+                detach(imageView);
             }
-            return response.getEntity();
+            return true;
         }
 
         /**
-         * InputStream을 Bitma으로 변환한다.
+         * ViewTreeObserver에서 제거한다.
          */
-        private Bitmap getBitmap(InputStream inputStream) throws IOException {
-            OutputStream outputStream = null;
-            try {
-                final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-                outputStream = new BufferedOutputStream(dataStream, IO_BUFFER_SIZE);
-                copy(inputStream, outputStream);
-                outputStream.flush();
-
-                final byte[] data = dataStream.toByteArray();
-                final Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-
-                // FIXME : Should use
-                // BitmapFactory.decodeStream(inputStream) instead.
-                // final Bitmap bitmap =
-                // BitmapFactory.decodeStream(inputStream);
-                return bitmap;
-            } finally {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-                if (outputStream != null) {
-                    outputStream.close();
-                }
-            }
-        }
-
-        public void copy(InputStream in, OutputStream out) throws IOException {
-            byte[] b = new byte[IO_BUFFER_SIZE];
-            int read;
-            while ((read = in.read(b)) != -1) {
-                out.write(b, 0, read);
+        void detach(ImageView imageView) {
+            ViewTreeObserver observer = imageView.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
             }
         }
     }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 이미지 다운로드와 Decode를 실행하는 전용 Thread Pool. <br />
+ * 네트워크와 Decode 단계의 동시 실행 수를 따로 정하며, 대기 중인 작업은 가장 최근에 요청한 것부터 실행한다(LIFO).
+ * 목록을 빠르게 넘기면 화면에 보이는 행의 이미지가 먼저 로드된다. 취소되었거나 대상 View가 사라진 작업은 실행하지 않고
+ * 버린다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 24.
+ * @version 1.0
+ */
+public class ImageLoaderExecutor {
+
+    /** 네트워크 단계의 기본 동시 실행 수. */
+    public static final int DEFAULT_NETWORK_CONCURRENCY = 3;
+
+    /** Decode 단계의 기본 동시 실행 수. */
+    public static final int DEFAULT_DECODE_CONCURRENCY = 2;
+
+    private static final ImageLoaderExecutor sDefault = new ImageLoaderExecutor(
+            DEFAULT_NETWORK_CONCURRENCY, DEFAULT_DECODE_CONCURRENCY);
+
+    /** 요청 순서. (클수록 최근 요청) */
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private final ThreadPoolExecutor mNetworkExecutor;
+    private final ThreadPoolExecutor mDecodeExecutor;
+
+    /**
+     * @param networkConcurrency 네트워크 단계의 동시 실행 수.
+     * @param decodeConcurrency Decode 단계의 동시 실행 수.
+     */
+    public ImageLoaderExecutor(int networkConcurrency, int decodeConcurrency) {
+        this.mNetworkExecutor = newExecutor(Math.max(1, networkConcurrency), "ImageLoader-net");
+        this.mDecodeExecutor = newExecutor(Math.max(1, decodeConcurrency), "ImageLoader-decode");
+    }
+
+    /**
+     * ImageDownloader가 공유하는 Executor를 가져온다.
+     */
+    public static ImageLoaderExecutor getDefault() {
+        return sDefault;
+    }
+
+    public void setNetworkConcurrency(int concurrency) {
+        setPoolSize(mNetworkExecutor, Math.max(1, concurrency));
+    }
+
+    public void setDecodeConcurrency(int concurrency) {
+        setPoolSize(mDecodeExecutor, Math.max(1, concurrency));
+    }
+
+    /**
+     * 네트워크 단계에서 실행한다.
+     */
+    public void executeNetwork(Job job) {
+        if (!job.isCancelled()) {
+            mNetworkExecutor.execute(job);
+        }
+    }
+
+    /**
+     * Decode 단계에서 실행한다.
+     */
+    public void executeDecode(Job job) {
+        if (!job.isCancelled()) {
+            mDecodeExecutor.execute(job);
+        }
+    }
+
+    /**
+     * 대기 중인 작업을 취소하고 Queue에서 제거한다. 실행 중인 작업은 {@link Job#isCancelled()}로 확인해야 한다.
+     */
+    public void cancel(Job job) {
+        job.mCancelled = true;
+        if (!mNetworkExecutor.remove(job)) {
+            mDecodeExecutor.remove(job);
+        }
+    }
+
+    /**
+     * 대기 중인 작업 수를 가져온다.
+     */
+    public int getQueuedCount() {
+        return mNetworkExecutor.getQueue().size() + mDecodeExecutor.getQueue().size();
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, final String name) {
+        return new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+
+    private static void setPoolSize(ThreadPoolExecutor executor, int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * ImageLoaderExecutor에서 실행하는 작업. 최근에 만든 작업이 먼저 실행된다.
+     */
+    public static abstract class Job implements Runnable, Comparable<Job> {
+        private final long mSequence = sSequence.incrementAndGet();
+        private volatile boolean mCancelled;
+
+        /**
+         * 작업을 실행한다. 취소된 작업이나 {@link #isStale()}인 작업은 실행하지 않는다.
+         */
+        @Override
+        public final void run() {
+            if (mCancelled || isStale()) {
+                mCancelled = true;
+                return;
+            }
+            execute();
+        }
+
+        /**
+         * 작업을 실행한다.
+         */
+        protected abstract void execute();
+
+        /**
+         * 더 이상 실행할 필요가 없는지 확인한다. (대상 View가 사라진 경우 등)
+         */
+        protected boolean isStale() {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public int compareTo(Job another) {
+            return mSequence > another.mSequence ? -1 : (mSequence < another.mSequence ? 1 : 0);
+        }
+    }
+}
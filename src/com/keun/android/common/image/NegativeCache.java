@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.image;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 이미지를 가져오지 못한 URL을 일정 시간 동안 기억하는 Cache. <br />
+ * 서버가 오류 응답을 보냈거나 이미지가 아닌 응답, Decode할 수 없는 이미지를 받은 URL은 유효 시간 동안 다시 요청하지
+ * 않는다. 같은 URL이 다시 실패하면 유효 시간을 최대 시간까지 두 배씩 늘리고(Backoff), 성공하면 기록을 지운다. 저장하는
+ * URL 수를 제한하며, 넘으면 오래 사용하지 않은 URL부터 제거한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 27.
+ * @version 1.0
+ */
+public class NegativeCache {
+
+    /** 기본 최대 URL 수. */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /** 처음 실패한 URL의 기본 유효 시간. (30초) */
+    public static final long DEFAULT_MIN_TTL = 30 * 1000;
+
+    /** 반복해서 실패한 URL의 기본 최대 유효 시간. (30분) */
+    public static final long DEFAULT_MAX_TTL = 30 * 60 * 1000;
+
+    private static final NegativeCache sDefault = new NegativeCache(DEFAULT_MAX_ENTRIES,
+            DEFAULT_MIN_TTL, DEFAULT_MAX_TTL);
+
+    private final long mMinTtl;
+    private final long mMaxTtl;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    private long mHitCount;
+    private long mFailureCount;
+
+    /**
+     * @param maxEntries 저장할 최대 URL 수.
+     * @param minTtl 처음 실패한 URL의 유효 시간. (ms)
+     * @param maxTtl 반복해서 실패한 URL의 최대 유효 시간. (ms)
+     */
+    public NegativeCache(final int maxEntries, long minTtl, long maxTtl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        if (minTtl <= 0 || maxTtl < minTtl) {
+            throw new IllegalArgumentException("Invalid TTL : " + minTtl + ", " + maxTtl);
+        }
+        this.mMinTtl = minTtl;
+        this.mMaxTtl = maxTtl;
+        this.mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * ImageDownloader가 공유하는 Cache를 가져온다.
+     */
+    public static NegativeCache getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * URL이 실패한 후 유효 시간이 지나지 않았는지 확인한다.
+     *
+     * @return 다시 요청하지 않아야 하면 true.
+     */
+    public synchronized boolean isFailed(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry == null || SystemClock.elapsedRealtime() >= entry.mExpiresAt) {
+            // 유효 시간이 지난 기록은 Backoff를 위해 남겨둔다.
+            return false;
+        }
+        mHitCount++;
+        return true;
+    }
+
+    /**
+     * URL이 실패했음을 기록한다. 이전에 실패한 URL이면 유효 시간을 두 배로 늘린다.
+     */
+    public synchronized void failed(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(url, entry);
+        }
+        long ttl = mMinTtl << Math.min(entry.mFailures, 30);
+        entry.mFailures++;
+        entry.mExpiresAt = SystemClock.elapsedRealtime() + Math.min(ttl, mMaxTtl);
+        mFailureCount++;
+    }
+
+    /**
+     * URL이 성공했음을 기록한다. 실패 기록을 지운다.
+     */
+    public synchronized void succeeded(String url) {
+        mEntries.remove(url);
+    }
+
+    /**
+     * 모든 실패 기록을 지운다.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 사용 통계를 가져온다.
+     *
+     * @return 저장한 URL 수, 요청을 생략한 횟수, 실패 횟수.
+     */
+    public synchronized String getStats() {
+        return "NegativeCache [urls=" + mEntries.size() + ", hit=" + mHitCount + ", failure="
+                + mFailureCount + "]";
+    }
+
+    /** URL의 실패 횟수와 만료 시간. */
+    private static final class Entry {
+        int mFailures;
+        long mExpiresAt;
+    }
+}
@@ -26,8 +26,7 @@ import com.keun.android.common.utils.StopWatchAverage;
 import com.keun.android.common.utils.StorageUtils;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.io.IOException;
 
 /**
  * 파일을 내부/외부 디스크에 Cache한다.
@@ -44,14 +43,22 @@ public class SavePathImpl implements ImageDownloader.SavePath {
     private static boolean sIsRunClearCache;
 
     private final Context mContext;
+    private final long mMaxSize;
 
     /**
      * @param ctx Context
-     * @param paths Cache된 파일을 삭제할 경로 설정.
-     * @param size Cache 폴더의 최대 사이즈 설정.
      */
     public SavePathImpl(final Context ctx) {
+        this(ctx, Config.MAX_CACHE_STORAGE_SIZE * 1024);
+    }
+
+    /**
+     * @param ctx Context
+     * @param maxSize Cache 폴더의 최대 Byte 크기. (0 이하이면 크기를 제한하지 않는다)
+     */
+    public SavePathImpl(final Context ctx, final long maxSize) {
         this.mContext = ctx;
+        this.mMaxSize = maxSize;
     }
 
     /*
@@ -81,6 +88,27 @@ public class SavePathImpl implements ImageDownloader.SavePath {
         return null;
     }
 
+    /**
+     * 저장 경로의 디스크 Cache를 가져온다. {@link ImageDownloader}가 다운로드한 파일을 등록하여 최대 크기를 넘지 않게
+     * 한다.
+     *
+     * @return ImageDiskCache. (저장 경로가 없거나 크기를 제한하지 않으면 null)
+     */
+    public ImageDiskCache getCache() {
+        String path = getPath();
+        if (path == null || mMaxSize <= 0) {
+            return null;
+        }
+        try {
+            return ImageDiskCache.open(new File(path), mMaxSize);
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), e.toString());
+            }
+            return null;
+        }
+    }
+
     /*
      * @see com.keun.android.common.image.ImageDownloader.SavePath#clear()
      */
@@ -112,23 +140,19 @@ public class SavePathImpl implements ImageDownloader.SavePath {
         public void run() {
             StopWatchAverage swa = null;
             try {
-                String path = getPath();
-                long size = size(0, path);
+                ImageDiskCache cache = getCache();
+                if (cache == null) {
+                    return;
+                }
                 if (Logger.isVerboseEnabled()) {
-                    Logger.v(getClass(), "Dir Total Size : " + size);
+                    Logger.v(getClass(), "Dir Total Size : " + cache.size());
                     swa = new StopWatchAverage("Image Dir Size Check - Run Time");
                 }
-
-                // 폴더가 아니면 작업을 중단한다.
-                if (!((new File(path)).isDirectory())) {
-                    if (Logger.isWarnEnabled()) {
-                        Logger.w(getClass(), path + "는(은) 폴더가 아니다.");
-                    }
-                    return;
-                }
-                if (Config.MAX_CACHE_STORAGE_SIZE > 0
-                        && (Config.MAX_CACHE_STORAGE_SIZE * 1024) < size) {
-                    delete(path);
+                // Journal에 기록된 크기와 사용 순서로 오래 사용하지 않은 파일을 삭제한다.
+                cache.trimToSize();
+                cache.flush();
+                if (Logger.isDebugEnabled()) {
+                    Logger.d(getClass(), cache.getStats());
                 }
             } catch (Exception e) {
                 if (Logger.isWarnEnabled()) {
@@ -141,90 +165,6 @@ public class SavePathImpl implements ImageDownloader.SavePath {
                 sIsRunClearCache = false;
             }
         }
-
-        /**
-         * Size 이하가 되도록 파일을 삭제한다.
-         *
-         * @param path 폴더 경로.
-         */
-        private void delete(final String path) {
-            if (path == null) {
-                if (Logger.isWarnEnabled()) {
-                    Logger.w(getClass(), "폴더 경로가 Null이다.");
-                }
-                return;
-            }
-            if (Logger.isDebugEnabled()) {
-                Logger.d(getClass(), path + " 폴더 검사.");
-            }
-            File[] files = new File(path).listFiles();
-            sort(files, 0);
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    delete(file.getAbsolutePath());
-                } else {
-                    try {
-                        // 이미지 폴더의 사이즈를 다시 계산한다.
-                        long size = size(0, path); // Base 디렉토리에서 전체 사이즈를 구함.
-                        if (Logger.isDebugEnabled()) {
-                            StringBuilder sb = new StringBuilder();
-                            sb.append("Image Dir Min Size : ");
-                            sb.append(Config.MAX_CACHE_STORAGE_SIZE * 1024).append(" byte");
-                            sb.append(", Image Dir Size: ").append(size).append(" byte");
-                            Logger.d(getClass(), sb.toString());
-                        }
-                        if ((Config.MAX_CACHE_STORAGE_SIZE * 1024) > size) {
-                            return; // Cache를 Clear했으면 종료한다.
-                        }
-                        file.delete(); // 파일 삭제.
-                        if (Logger.isDebugEnabled()) {
-                            StringBuilder sb = new StringBuilder();
-                            sb.append(file.toString()).append(" 파일 삭제");
-                            Logger.d(getClass(), sb.toString());
-                        }
-                    } catch (Exception e) {
-                        if (Logger.isWarnEnabled()) {
-                            Logger.w(getClass(), e);
-                        }
-                    }
-                }
-            }
-        }
-
-        /**
-         * 파일을 생성날짜 순으로 정렬한다.
-         *
-         * @param files 정렬하려는 파일들의 배열.
-         * @param sort 정렬 기준, 0 : ASC, 1 : DESC
-         */
-        private void sort(File[] files, final int sort) {
-            // 파일을 날짜로 정렬한다.
-            Arrays.sort(files, new Comparator<File>() {
-                public int compare(File f1, File f2) {
-                    if (sort == 0) { // ASC로 정렬..
-                        return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
-                    } else { // DESC로 정렬..
-                        return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
-                    }
-                }
-            });
-        }
-
-        /**
-         * Cache 디렉토리의 전체 싸이즈를 가져온다.
-         */
-        private long size(long size, final String path) {
-            File[] files = new File(path).listFiles();
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    size += size(size, file.getAbsolutePath());
-                } else {
-                    size += file.length();
-                }
-            }
-            return size;
-        }
-
     }
 
 }
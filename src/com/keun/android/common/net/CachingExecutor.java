@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.net.cache.CacheEntry;
+import com.keun.android.common.net.cache.HttpResponseCache;
+import com.keun.android.common.utils.BufferPool;
+import com.keun.android.common.utils.Logger;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpResponseCache}를 사용하여 GET 요청을 처리한다. <br />
+ * <ul>
+ * <li>신선한 응답이 있으면 Network를 사용하지 않는다.</li>
+ * <li>만료되었지만 stale-while-revalidate 시간 이내이면 만료된 응답을 바로 반환하고 Background에서 갱신한다.</li>
+ * <li>요청이 실패(I/O 오류, 5xx)하거나 Host의 Circuit이 열려 있으면 stale-if-error 시간 이내의 응답을 반환한다.</li>
+ * <li>저장된 응답이 있으면 ETag/Last-Modified로 조건부 요청을 보내고 304 응답이면 저장된 응답을 갱신한다.</li>
+ * </ul>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 17.
+ * @version 1.0
+ */
+abstract class CachingExecutor {
+
+    private static final String WARNING_STALE = "110 - \"Response is Stale\"";
+    private static final String WARNING_REVALIDATION_FAILED = "111 - \"Revalidation Failed\"";
+
+    /** Background 갱신 Thread. */
+    private static final ThreadPoolExecutor sRevalidator = new ThreadPoolExecutor(2, 2, 30,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CacheRevalidator");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    /** 갱신 중인 URL. (같은 URL을 중복해서 갱신하지 않는다) */
+    private static final ConcurrentHashMap<String, Boolean> sRevalidating =
+            new ConcurrentHashMap<String, Boolean>();
+
+    private final HttpResponseCache mCache;
+    private final CircuitBreaker mCircuitBreaker;
+
+    CachingExecutor(HttpResponseCache cache, CircuitBreaker circuitBreaker) {
+        this.mCache = cache;
+        this.mCircuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Network로 요청을 실행한다. 응답의 압축은 해제되어 있어야 한다.
+     */
+    protected abstract HttpResponse executeNetwork(HttpUriRequest request, boolean hedged)
+            throws IOException;
+
+    HttpResponseCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Cache를 사용하여 GET 요청을 실행한다.
+     *
+     * @param request GET 요청.
+     * @param hedged Hedging 여부.
+     * @return HttpResponse
+     * @throws IOException 요청이 실패하고 사용할 수 있는 응답이 없는 경우.
+     */
+    HttpResponse execute(HttpUriRequest request, boolean hedged) throws IOException {
+        String url = request.getURI().toString();
+        String host = request.getURI().getHost();
+        CacheEntry entry = mCache.get(url);
+        long now = System.currentTimeMillis();
+        if (entry != null) {
+            if (entry.isFresh(now)) {
+                mCache.recordHit(false);
+                return entry.toResponse(null);
+            }
+            if (entry.isStaleUsable(now, mCache.getStaleWhileRevalidate(), false)) {
+                mCache.recordHit(true);
+                revalidateInBackground(request, entry);
+                return entry.toResponse(WARNING_STALE);
+            }
+        }
+
+        if (!mCircuitBreaker.allowRequest(host)) {
+            HttpResponse stale = staleIfError(entry);
+            if (stale != null) {
+                return stale;
+            }
+            throw new IOException("Circuit open : " + host);
+        }
+
+        mCache.recordMiss();
+        if (entry != null) {
+            addConditionalHeaders(request, entry);
+        }
+        HttpResponse response;
+        try {
+            response = executeTracked(request, hedged, host);
+        } catch (IOException e) {
+            HttpResponse stale = staleIfError(entry);
+            if (stale != null) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Stale response (" + e.toString() + ") : " + url);
+                }
+                return stale;
+            }
+            throw e;
+        }
+        return store(url, host, entry, response);
+    }
+
+    /**
+     * Network로 요청을 실행하고, 예외가 발생하면 종류에 관계없이 Host의 실패로 기록한다. (Half-Open 상태의 시험
+     * 요청이 결과를 기록하지 않고 끝나면 Host가 계속 차단된다)
+     */
+    private HttpResponse executeTracked(HttpUriRequest request, boolean hedged, String host)
+            throws IOException {
+        try {
+            return executeNetwork(request, hedged);
+        } catch (IOException e) {
+            mCircuitBreaker.recordFailure(host);
+            throw e;
+        } catch (RuntimeException e) {
+            mCircuitBreaker.recordFailure(host);
+            throw e;
+        }
+    }
+
+    /**
+     * 응답을 Cache에 저장한다. 304 응답이면 저장된 응답을 갱신하여 반환한다.
+     */
+    private HttpResponse store(String url, String host, CacheEntry entry, HttpResponse response)
+            throws IOException {
+        try {
+            return storeResponse(url, host, entry, response);
+        } catch (RuntimeException e) {
+            mCircuitBreaker.recordFailure(host);
+            throw e;
+        }
+    }
+
+    private HttpResponse storeResponse(String url, String host, CacheEntry entry,
+            HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            mCircuitBreaker.recordFailure(host);
+            HttpResponse stale = staleIfError(entry);
+            if (stale != null) {
+                consume(response);
+                return stale;
+            }
+            return response;
+        }
+        mCircuitBreaker.recordSuccess(host);
+
+        long now = System.currentTimeMillis();
+        if (status == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+            consume(response);
+            CacheEntry updated = entry.revalidated(response, now);
+            mCache.put(updated);
+            return updated.toResponse(null);
+        }
+
+        HttpEntity entity = response.getEntity();
+        if (entity == null || !CacheEntry.isCacheable(response)
+                || entity.getContentLength() > mCache.getMaxEntrySize()) {
+            return response;
+        }
+        byte[] body = readBody(response, mCache.getMaxEntrySize());
+        if (body != null) {
+            CacheEntry created = CacheEntry.create(url, response, body, now);
+            if (created != null) {
+                mCache.put(created);
+            }
+        }
+        return response;
+    }
+
+    /** 만료된 응답이 stale-if-error 시간 이내이면 반환한다. */
+    private HttpResponse staleIfError(CacheEntry entry) {
+        if (entry != null
+                && entry.isStaleUsable(System.currentTimeMillis(), mCache.getStaleIfError(), true)) {
+            mCache.recordHit(true);
+            return entry.toResponse(WARNING_REVALIDATION_FAILED);
+        }
+        return null;
+    }
+
+    private void revalidateInBackground(HttpUriRequest request, final CacheEntry entry) {
+        final String url = entry.getUrl();
+        if (sRevalidating.putIfAbsent(url, Boolean.TRUE) != null) {
+            return;
+        }
+        final String host = request.getURI().getHost();
+        final HttpGet revalidation = new HttpGet(request.getURI());
+        for (Header header : request.getAllHeaders()) {
+            revalidation.addHeader(header);
+        }
+        revalidation.setParams(request.getParams());
+        addConditionalHeaders(revalidation, entry);
+        try {
+            sRevalidator.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!mCircuitBreaker.allowRequest(host)) {
+                            return;
+                        }
+                        HttpResponse response = executeTracked(revalidation, false, host);
+                        consume(store(url, host, entry, response));
+                        if (Logger.isDebugEnabled()) {
+                            Logger.d(CachingExecutor.class, "Revalidated : " + url);
+                        }
+                    } catch (Exception e) {
+                        if (Logger.isWarnEnabled()) {
+                            Logger.w(CachingExecutor.class, "Revalidation failed (" + e.toString()
+                                    + ") : " + url);
+                        }
+                    } finally {
+                        sRevalidating.remove(url);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sRevalidating.remove(url);
+        }
+    }
+
+    private static void addConditionalHeaders(HttpUriRequest request, CacheEntry entry) {
+        String etag = entry.getETag();
+        if (etag != null && !request.containsHeader("If-None-Match")) {
+            request.addHeader("If-None-Match", etag);
+        }
+        String lastModified = entry.getLastModified();
+        if (lastModified != null && !request.containsHeader("If-Modified-Since")) {
+            request.addHeader("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * 응답 Body를 읽어서 반환하고 Entity를 다시 읽을 수 있는 Entity로 교체한다. 최대 크기를 넘으면 읽은 부분과 남은
+     * Stream을 이어서 Entity로 설정하고 null을 반환한다.
+     */
+    private static byte[] readBody(HttpResponse response, int maxSize) throws IOException {
+        HttpEntity entity = response.getEntity();
+        InputStream in = entity.getContent();
+        if (in == null) {
+            return null;
+        }
+        PoolingByteArrayOutputStream buffer = new PoolingByteArrayOutputStream();
+        byte[] chunk = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+        try {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+                if (buffer.size() > maxSize) { // 저장하지 않고 그대로 전달한다.
+                    InputStreamEntity remaining = new InputStreamEntity(new SequenceInputStream(
+                            new ByteArrayInputStream(buffer.toByteArray()), in), -1);
+                    remaining.setContentType(entity.getContentType());
+                    response.setEntity(remaining);
+                    return null;
+                }
+            }
+            in.close();
+            byte[] body = buffer.toByteArray();
+            ByteArrayEntity replaced = new ByteArrayEntity(body);
+            replaced.setContentType(entity.getContentType());
+            response.setEntity(replaced);
+            return body;
+        } finally {
+            BufferPool.release(chunk);
+            buffer.release();
+        }
+    }
+
+    private static void consume(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(CachingExecutor.class, e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import android.os.SystemClock;
+
+import com.keun.android.common.utils.Logger;
+
+import java.util.HashMap;
+
+/**
+ * Host별로 연속된 요청 실패 횟수를 세어서, 기준을 넘으면 일정 시간 동안 요청을 차단(Open)한다. <br />
+ * 차단 시간이 지나면 요청 하나만 허용(Half-Open)하여 성공하면 다시 정상(Closed) 상태가 되고, 실패하면 다시
+ * 차단한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 17.
+ * @version 1.0
+ */
+public class CircuitBreaker {
+
+    /** 차단하기 위한 연속 실패 횟수. */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** 차단 시간. (30초) */
+    public static final long DEFAULT_OPEN_TIME = 30 * 1000;
+
+    private final int mFailureThreshold;
+    private final long mOpenTime;
+    private final HashMap<String, State> mHosts = new HashMap<String, State>();
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIME);
+    }
+
+    /**
+     * @param failureThreshold 차단하기 위한 연속 실패 횟수.
+     * @param openTime 차단 시간(ms)
+     */
+    public CircuitBreaker(int failureThreshold, long openTime) {
+        this.mFailureThreshold = failureThreshold;
+        this.mOpenTime = openTime;
+    }
+
+    /**
+     * Host에 요청할 수 있는지 확인한다. 차단 시간이 지난 경우에는 요청 하나만 허용한다. 시험 요청의 결과가 차단
+     * 시간 동안 기록되지 않으면(예외로 종료된 경우 등) 다른 시험 요청을 허용한다.
+     *
+     * @param host Host 이름.
+     * @return 요청할 수 있으면 true.
+     */
+    public synchronized boolean allowRequest(String host) {
+        State state = mHosts.get(host);
+        if (state == null || state.mOpenedAt == 0) {
+            return true;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (state.mTrial) {
+            if (now - state.mTrialStartedAt < mOpenTime) {
+                return false;
+            }
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Circuit trial expired : " + host);
+            }
+        } else if (now - state.mOpenedAt < mOpenTime) {
+            return false;
+        }
+        state.mTrial = true; // Half-Open
+        state.mTrialStartedAt = now;
+        return true;
+    }
+
+    /**
+     * Host가 차단되어 있는지 확인한다. (상태는 바꾸지 않는다)
+     */
+    public synchronized boolean isOpen(String host) {
+        State state = mHosts.get(host);
+        return state != null && state.mOpenedAt != 0;
+    }
+
+    public synchronized void recordSuccess(String host) {
+        mHosts.remove(host);
+    }
+
+    public synchronized void recordFailure(String host) {
+        State state = mHosts.get(host);
+        if (state == null) {
+            state = new State();
+            mHosts.put(host, state);
+        }
+        state.mFailures++;
+        if (state.mTrial || state.mFailures >= mFailureThreshold) {
+            if (Logger.isWarnEnabled() && state.mOpenedAt == 0) {
+                Logger.w(getClass(), "Circuit open : " + host + " (failures: " + state.mFailures
+                        + ")");
+            }
+            state.mOpenedAt = SystemClock.elapsedRealtime();
+            state.mTrial = false;
+        }
+    }
+
+    private static final class State {
+        private int mFailures;
+        /** 차단된 시간. (0이면 정상) */
+        private long mOpenedAt;
+        /** Half-Open 상태에서 시험 요청이 진행 중이다. */
+        private boolean mTrial;
+        /** 시험 요청을 허용한 시간. */
+        private long mTrialStartedAt;
+    }
+}
@@ -18,51 +18,60 @@ package com.keun.android.common.net;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.webkit.URLUtil;
 
 import com.keun.android.common.config.Config;
 import com.keun.android.common.net.CountingMultipartEntity.ProgressListener;
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+import com.keun.android.common.net.codec.ContentCodecRegistry;
+import com.keun.android.common.net.cache.CacheEntry;
+import com.keun.android.common.net.cache.HttpResponseCache;
+import com.keun.android.common.net.codec.ContentDecodingInterceptor;
+import com.keun.android.common.utils.BufferPool;
 import com.keun.android.common.utils.Logger;
 import com.keun.android.common.utils.StopWatchAverage;
 import com.keun.android.common.utils.URLCodec;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.params.ConnRouteParams;
-import org.apache.http.cookie.Cookie;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.cookie.BrowserCompatSpec;
-import org.apache.http.impl.cookie.CookieSpecBase;
 import org.apache.http.message.HeaderGroup;
-import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.DefaultedHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Http Clien를 이용한 네트워크 사용 설정. <br />
@@ -86,8 +95,58 @@ public class HttpClientManager {
         return mHttpClient;
     }
 
-    /** Network Response 시 Gzip 사용 여부 체크 */
-    private boolean mIsAcceptGzip;
+    /** 압축된 응답(gzip, deflate)을 해제한다. */
+    private static final ContentDecodingInterceptor sContentDecoder =
+            new ContentDecodingInterceptor();
+
+    /** 요청 시 기본으로 사용하는 Header, Encoding, Cookie, Timeout 정보. */
+    private volatile RequestTemplate mTemplate = new RequestTemplate.Builder().build();
+
+    /** Redirect를 따라가는 최대 횟수. */
+    public static final int DEFAULT_MAX_REDIRECTS = 5;
+
+    /** 308 Permanent Redirect (HttpStatus에 정의되어 있지 않다) */
+    private static final int SC_PERMANENT_REDIRECT = 308;
+
+    /** Adaptive Timeout을 설정한 Parameter Layer의 표시. */
+    private static final String PARAM_ADAPTIVE_TIMEOUT = "com.keun.android.common.adaptive-timeout";
+
+    /** 영구 Redirect(301, 308) 정보는 모든 HttpClientManager가 공유한다. */
+    private static final RedirectCache sRedirectCache = new RedirectCache();
+
+    private volatile boolean mFollowRedirects;
+    private volatile int mMaxRedirects = DEFAULT_MAX_REDIRECTS;
+
+    /** Adaptive Timeout 기본값 - p99 x 3, 최소 2초, 최대 60초. */
+    public static final float DEFAULT_TIMEOUT_MULTIPLIER = 3.0f;
+    public static final int DEFAULT_TIMEOUT_FLOOR = 2 * 1000;
+    public static final int DEFAULT_TIMEOUT_CEILING = 60 * 1000;
+
+    private volatile boolean mAdaptiveTimeout;
+    private volatile float mTimeoutMultiplier = DEFAULT_TIMEOUT_MULTIPLIER;
+    private volatile int mTimeoutFloor = DEFAULT_TIMEOUT_FLOOR;
+    private volatile int mTimeoutCeiling = DEFAULT_TIMEOUT_CEILING;
+
+    /** 지연된 GET 요청을 한번 더 보낸다. (sendHedged/executeHedged) */
+    private final RequestHedger mHedger = new RequestHedger() {
+        @Override
+        protected HttpResponse executeOnce(HttpUriRequest request) throws IOException {
+            return HttpClientManager.this.executeOnce(request);
+        }
+
+        @Override
+        protected void onLatency(String host, long millis) {
+            if (!mAdaptiveTimeout) { // Adaptive Timeout은 직접 기록한다.
+                LatencyTracker.getDefault().record(host, millis);
+            }
+        }
+    };
+
+    /** Host별 연속 실패 정보는 모든 HttpClientManager가 공유한다. */
+    private static final CircuitBreaker sCircuitBreaker = new CircuitBreaker();
+
+    /** GET 응답 Cache. (null이면 사용하지 않는다) */
+    private volatile CachingExecutor mCachingExecutor;
 
     /**
      * HttpClientManager를 초기화한다.
@@ -247,7 +306,341 @@ public class HttpClientManager {
      * @param isAcceptGzip Gzip 사용(true) / 미사용(false)
      */
     public void setAcceptGzip(boolean isAcceptGzip) {
-        this.mIsAcceptGzip = isAcceptGzip;
+        this.mTemplate = mTemplate.newBuilder().setAcceptGzip(isAcceptGzip).build();
+    }
+
+    /**
+     * sendGet/sendPut/sendPost/sendDelete 요청 시 사용하는 기본 Template을 가져온다.
+     *
+     * @return RequestTemplate
+     */
+    public RequestTemplate getTemplate() {
+        return mTemplate;
+    }
+
+    /**
+     * sendGet/sendPut/sendPost/sendDelete 요청 시 사용할 기본 Template을 설정한다.
+     *
+     * @param template RequestTemplate
+     */
+    public void setTemplate(RequestTemplate template) {
+        if (template == null) {
+            throw new IllegalArgumentException("Template may not be null");
+        }
+        this.mTemplate = template;
+    }
+
+    /**
+     * Redirect(301, 302, 303, 307, 308) 응답을 받으면 Location으로 다시 요청할지 설정한다. (기본값 false) <br />
+     * 사용하는 경우 영구 Redirect(301, 308)된 URL은 {@link #getRedirectCache()}에 저장되어 이후 요청은 바로 새
+     * URL로 전달된다.
+     *
+     * @param followRedirects Redirect를 따라가려면 true.
+     */
+    public void setFollowRedirects(boolean followRedirects) {
+        this.mFollowRedirects = followRedirects;
+    }
+
+    public boolean isFollowRedirects() {
+        return mFollowRedirects;
+    }
+
+    /**
+     * 한 요청에서 Redirect를 따라가는 최대 횟수를 설정한다. 넘으면 ClientProtocolException이 발생한다.
+     *
+     * @param maxRedirects 최대 횟수. (기본값 {@link #DEFAULT_MAX_REDIRECTS})
+     */
+    public void setMaxRedirects(int maxRedirects) {
+        this.mMaxRedirects = maxRedirects;
+    }
+
+    /**
+     * 영구 Redirect(301, 308) 정보를 가져온다.
+     *
+     * @return RedirectCache
+     */
+    public static RedirectCache getRedirectCache() {
+        return sRedirectCache;
+    }
+
+    /**
+     * Host별 최근 응답 시간의 p99를 기준으로 요청마다 Timeout을 설정할지 여부를 설정한다. <br />
+     * Timeout은 p99 x {@link #DEFAULT_TIMEOUT_MULTIPLIER}를 {@link #DEFAULT_TIMEOUT_FLOOR} ~
+     * {@link #DEFAULT_TIMEOUT_CEILING} 사이로 제한한 값이며, 응답 시간이 충분히 쌓이기 전에는 최대값을 사용한다.
+     * 요청(RequestTemplate)에 Timeout을 직접 설정한 경우에는 적용하지 않는다.
+     *
+     * @param adaptive Adaptive Timeout을 사용하려면 true.
+     */
+    public void setAdaptiveTimeout(boolean adaptive) {
+        this.mAdaptiveTimeout = adaptive;
+    }
+
+    /**
+     * Adaptive Timeout을 사용하도록 설정한다.
+     *
+     * @param multiplier p99에 곱할 배수.
+     * @param floor 최소 Timeout(ms)
+     * @param ceiling 최대 Timeout(ms)
+     */
+    public void setAdaptiveTimeout(float multiplier, int floor, int ceiling) {
+        if (multiplier <= 0 || floor <= 0 || ceiling < floor) {
+            throw new IllegalArgumentException("Invalid adaptive timeout (" + multiplier + ", "
+                    + floor + ", " + ceiling + ")");
+        }
+        this.mTimeoutMultiplier = multiplier;
+        this.mTimeoutFloor = floor;
+        this.mTimeoutCeiling = ceiling;
+        this.mAdaptiveTimeout = true;
+    }
+
+    public boolean isAdaptiveTimeout() {
+        return mAdaptiveTimeout;
+    }
+
+    /**
+     * Host의 최근 응답 시간으로 계산한 Timeout을 가져온다.
+     *
+     * @param host Host 이름.
+     * @return Timeout(ms)
+     */
+    public int getAdaptiveTimeout(String host) {
+        long p99 = LatencyTracker.getDefault().getPercentile(host, 0.99);
+        if (p99 < 0) {
+            return mTimeoutCeiling;
+        }
+        long timeout = (long) (p99 * mTimeoutMultiplier);
+        return (int) Math.max(mTimeoutFloor, Math.min(timeout, mTimeoutCeiling));
+    }
+
+    /**
+     * sendHedged/executeHedged 요청이 응답하지 않을 때 Hedge 요청을 보내기까지 기다리는 시간을 설정한다.
+     *
+     * @param delay 시간(ms). -1이면 Host의 최근 응답 시간 p95를 사용한다. (기본값)
+     */
+    public void setHedgeDelay(long delay) {
+        mHedger.setDelay(delay);
+    }
+
+    /**
+     * 전체 sendHedged/executeHedged 요청 중 Hedge 요청을 보낼 수 있는 최대 비율을 설정한다.
+     *
+     * @param budget 0.0 ~ 1.0 (기본값 0.05)
+     */
+    public void setHedgeBudget(float budget) {
+        mHedger.setBudget(budget);
+    }
+
+    public String getHedgeStats() {
+        return mHedger.getStats();
+    }
+
+    /**
+     * GET 응답을 저장할 Cache를 설정한다. <br />
+     * 만료된 응답은 stale-while-revalidate 시간 동안 바로 반환하고 Background에서 갱신하며, 요청이 실패하거나 Host의
+     * Circuit이 열려 있으면 stale-if-error 시간 이내의 응답을 반환한다. 만료된 응답에는 Warning Header(110, 111)가
+     * 추가된다.
+     *
+     * @param cache HttpResponseCache (null이면 사용하지 않는다)
+     */
+    public void setResponseCache(HttpResponseCache cache) {
+        if (cache == null) {
+            mCachingExecutor = null;
+            return;
+        }
+        mCachingExecutor = new CachingExecutor(cache, sCircuitBreaker) {
+            @Override
+            protected HttpResponse executeNetwork(HttpUriRequest request, boolean hedged)
+                    throws IOException {
+                HttpResponse response = hedged ? mHedger.execute(request) : executeOnce(request);
+                decodeContent(response);
+                return response;
+            }
+        };
+    }
+
+    public HttpResponseCache getResponseCache() {
+        CachingExecutor executor = mCachingExecutor;
+        return executor != null ? executor.getCache() : null;
+    }
+
+    /**
+     * Host별 연속 실패 정보를 가져온다. Circuit이 열린 Host에는 Cache된 응답이 없으면 요청하지 않는다.
+     *
+     * @return CircuitBreaker
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return sCircuitBreaker;
+    }
+
+    /* ====== Http Request Builder ====== */
+
+    /**
+     * RequestBuilder로 생성한 요청을 서버에 전달한다.
+     *
+     * <pre>
+     * RequestTemplate template = manager.getTemplate();
+     * manager.send(template.get(url).addParam(name, value));
+     * </pre>
+     *
+     * @param builder RequestBuilder
+     * @return HttpResponse.
+     * @throws IOException
+     */
+    public HttpResponse send(RequestBuilder builder) throws IOException {
+        return sendMethod(builder.getType(), builder.getParams(), builder.build());
+    }
+
+    /**
+     * RequestBuilder#build()로 직접 생성한 요청을 서버에 전달한다. 요청을 중간에 취소(abort)해야 하는 경우에
+     * 사용한다.
+     *
+     * @param request Http Uri Request.
+     * @return HttpResponse.
+     * @throws IOException
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        return sendMethod(toType(request.getMethod()), null, request);
+    }
+
+    /**
+     * 지연에 민감한 GET 요청을 Hedging하여 서버에 전달한다. 응답이 지연 시간(Host의 p95) 안에 오지 않으면 같은
+     * 요청을 다른 Connection으로 한번 더 보내고 먼저 도착한 응답을 사용한다.
+     *
+     * @param builder GET 요청.
+     * @return HttpResponse.
+     * @throws IOException
+     * @see #setHedgeDelay(long)
+     * @see #setHedgeBudget(float)
+     */
+    public HttpResponse sendHedged(RequestBuilder builder) throws IOException {
+        if (builder.getType() != Type.GET) {
+            throw new IllegalArgumentException("Only GET requests can be hedged");
+        }
+        return sendMethod(builder.getType(), builder.getParams(), builder.build(), true);
+    }
+
+    /**
+     * 직접 생성한 GET/HEAD 요청을 Hedging하여 서버에 전달한다.
+     *
+     * @param request GET/HEAD 요청.
+     * @return HttpResponse.
+     * @throws IOException
+     */
+    public HttpResponse executeHedged(HttpUriRequest request) throws IOException {
+        String method = request.getMethod();
+        if (!HttpGet.METHOD_NAME.equals(method) && !HttpHead.METHOD_NAME.equals(method)) {
+            throw new IllegalArgumentException("Only GET/HEAD requests can be hedged");
+        }
+        return sendMethod(Type.GET, null, request, true);
+    }
+
+    /**
+     * 여러 요청을 하나의 multipart/mixed POST 요청으로 묶어서 한번에 전송하고, multipart/mixed 응답을 요청별
+     * 응답으로 나누어 반환한다. 화면을 구성하기 위해 작은 API 요청을 여러 번 보내는 경우 RTT가 큰 Network에서
+     * 지연 시간을 줄일 수 있다. (서버가 Batch 요청을 지원해야 한다) <br />
+     * 요청별 응답도 {@link #send(RequestBuilder)}와 같이 압축(Content-Encoding)을 해제한다.
+     *
+     * <pre>
+     * List&lt;RequestBuilder&gt; requests = new ArrayList&lt;RequestBuilder&gt;();
+     * requests.add(manager.getTemplate().get(&quot;http://api.example.com/v1/users/me&quot;));
+     * requests.add(manager.getTemplate().get(&quot;http://api.example.com/v1/notices&quot;));
+     * List&lt;HttpResponse&gt; responses = manager.sendBatch(&quot;http://api.example.com/batch&quot;, requests);
+     * </pre>
+     *
+     * @param batchUrl Batch 요청을 처리하는 URL.
+     * @param requests 묶을 요청.
+     * @return 요청 순서대로 정렬된 응답. (서버가 응답하지 않은 요청은 null)
+     * @throws HttpResponseException Batch 요청 자체가 실패(2xx가 아닌 응답)한 경우.
+     * @throws IOException
+     */
+    public List<HttpResponse> sendBatch(String batchUrl, List<RequestBuilder> requests)
+            throws IOException {
+        ArrayList<HttpUriRequest> built = new ArrayList<HttpUriRequest>(requests.size());
+        for (RequestBuilder builder : requests) {
+            built.add(builder.build());
+        }
+        HttpResponse response = send(mTemplate.post(batchUrl).setEntity(
+                MultipartBatch.createEntity(built)));
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                throw new HttpResponseException(status, response.getStatusLine()
+                        .getReasonPhrase());
+            }
+            List<HttpResponse> responses = MultipartBatch.parseResponse(response, built.size());
+            for (HttpResponse part : responses) {
+                if (part != null) {
+                    // 요청 Part에도 Accept-Encoding이 포함되므로 압축된 응답 Part가 올 수 있다.
+                    decodeContent(part);
+                }
+            }
+            return responses;
+        } finally {
+            consume(response);
+        }
+    }
+
+    /**
+     * GET 요청을 낮은 우선순위로 미리 실행하여 응답 Cache({@link #setResponseCache(HttpResponseCache)})에
+     * 저장한다. 사용자가 곧 열 것으로 예상되는 화면의 데이터를 미리 받아둘 때 사용한다. <br />
+     * 요청은 {@link PrefetchLane#getDefault()}에서 실행되며, 사용자가 기다리는 요청이 진행 중이면 시작하지 않거나 받는
+     * 중에 멈추고 기다린다. 이미 신선한 응답이 저장되어 있으면 Network를 사용하지 않는다.
+     *
+     * @param urls 요청 URL 리스트.
+     */
+    public void prefetch(List<String> urls) {
+        if (mCachingExecutor == null) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Response cache is not set. Prefetch is ignored.");
+            }
+            return;
+        }
+        PrefetchLane lane = PrefetchLane.getDefault();
+        for (final String url : urls) {
+            lane.submit(url, new PrefetchLane.Task() {
+                @Override
+                public long run() throws IOException {
+                    CachingExecutor caching = mCachingExecutor;
+                    if (caching == null) {
+                        return 0;
+                    }
+                    CacheEntry entry = caching.getCache().get(url);
+                    if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+                        return 0;
+                    }
+                    HttpResponse response = send(mTemplate.get(url));
+                    HttpEntity entity = response.getEntity();
+                    if (entity == null) {
+                        return 0;
+                    }
+                    InputStream in = entity.getContent();
+                    byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+                    try {
+                        long total = 0;
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            total += read;
+                            PrefetchLane.yieldToForeground();
+                        }
+                        return total;
+                    } finally {
+                        BufferPool.release(buffer);
+                        in.close();
+                    }
+                }
+            });
+        }
+    }
+
+    private static Type toType(String method) {
+        if (HttpPut.METHOD_NAME.equals(method)) {
+            return Type.PUT;
+        } else if (HttpPost.METHOD_NAME.equals(method)) {
+            return Type.POST;
+        } else if (HttpDelete.METHOD_NAME.equals(method)) {
+            return Type.DELETE;
+        }
+        return Type.GET;
     }
 
     /* ====== Http GET ====== */
@@ -724,10 +1117,8 @@ public class HttpClientManager {
      */
     public HttpResponse sendGet(String url, String encoding, HeaderGroup headers,
             CookieStore cookies, List<NameValuePair> params) throws IOException {
-        if (params != null && params.size() > 0) { // Parameter가 존재하는지 확인한다.
-            url = url + (url.lastIndexOf("?") > 0 ? "&" : "?") + format(params, encoding); // HTTP.UTF_8
-        }
-        return sendMethod(Type.GET, headers, cookies, params, new HttpGet(urlFilter(url)));
+        return send(mTemplate.get(url).setEncoding(encoding).addHeaders(headers)
+                .setCookies(cookies).addParams(params));
     }
 
     /* ====== Http PUT ====== */
@@ -1175,26 +1566,15 @@ public class HttpClientManager {
     public HttpResponse sendPut(String url, String encoding, String contextType,
             HeaderGroup headers, CookieStore cookies, byte[] body, List<NameValuePair> params)
             throws IOException {
-        if (params != null && params.size() > 0) { // Parameter가 존재하는지 확인한다.
-            url = url + (url.lastIndexOf("?") > 0 ? "&" : "?") + format(params, encoding); // HTTP.UTF_8
-        }
-
-        // Body가 존재하면
-        HttpPut put = new HttpPut(urlFilter(url));
-        if (body != null) {
+        RequestBuilder builder = mTemplate.put(url).setEncoding(encoding).addHeaders(headers)
+                .setCookies(cookies).addParams(params);
+        if (body != null) { // Body가 존재하면
             if (Logger.isVerboseEnabled()) {
                 Logger.v(getClass(), "HTTP PUT Method 통신 시 Body에 정보를 전달한다.");
             }
-            contextType = (contextType == null ? "text/plain" : contextType);
-            ByteArrayEntity entity = new ByteArrayEntity(body);
-            entity.setContentType(contextType == null ? "text/plain" : contextType);
-
-            put.setEntity(entity);
-            put.getParams().setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
-            put.addHeader("Accept", contextType);
-            put.addHeader("Content-Type", contextType);
+            builder.setBody(contextType, body);
         }
-        return sendMethod(Type.PUT, headers, cookies, params, put);
+        return send(builder);
     }
 
     /* ====== Http POST ====== */
@@ -1512,31 +1892,8 @@ public class HttpClientManager {
     public HttpResponse sendPost(String url, HeaderGroup headers, CookieStore cookies,
             List<NameValuePair> params, List<NameValuePair> files, ProgressListener listener)
             throws IOException {
-        HttpPost post = new HttpPost(urlFilter(url));
-        if (files != null && files.size() > 0) {
-            MultipartEntity entity = null;
-            if (listener != null) {
-                entity = new CountingMultipartEntity(listener);
-            } else {
-                entity = new MultipartEntity();
-            }
-            for (NameValuePair pair : files) {
-                FileBody file = new FileBody(new File(pair.getValue()));
-                entity.addPart(pair.getName(), file);
-            }
-            if (params != null && params.size() > 0) {
-                for (NameValuePair pair : params) {
-                    entity.addPart(pair.getName(), new StringBody(pair.getValue()));
-                }
-            }
-            post.setEntity(entity);
-        } else if (params != null && params.size() > 0) { // POST 통신.
-            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(params, HTTP.UTF_8);
-            post.setEntity(entity);
-            post.getParams().setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
-        }
-        post.setParams(mHttpClient.getParams());
-        return sendMethod(Type.POST, headers, cookies, params, post);
+        return send(mTemplate.post(url).addHeaders(headers).setCookies(cookies)
+                .addParams(params).addFiles(files).setProgressListener(listener));
     }
 
     /* ====== Http DELETE ====== */
@@ -2016,54 +2373,49 @@ public class HttpClientManager {
      */
     public HttpResponse sendDelete(String url, String encoding, HeaderGroup headers,
             CookieStore cookies, List<NameValuePair> params) throws IOException {
-        if (params != null && params.size() > 0) { // Parameter가 존재하는지 확인한다.
-            url = url + (url.lastIndexOf("?") > 0 ? "&" : "?") + format(params, encoding); // HTTP.UTF_8
-        }
-        return sendMethod(Type.DELETE, headers, cookies, params, new HttpDelete(urlFilter(url)));
+        return send(mTemplate.delete(url).setEncoding(encoding).addHeaders(headers)
+                .setCookies(cookies).addParams(params));
     }
 
     /* ====== Http Method ====== */
 
     /**
+     * Header, Cookie, Accept-Encoding은 RequestBuilder에서 이미 설정되어 있으므로 요청만 실행한다.
+     *
      * @param type Get/Put/Post/Delete 타입.
-     * @param url Http URL.
+     * @param params 파라미터 리스트. (로그 기록용)
      * @param request Http Uri Request.
      * @return
      * @throws IOException
      */
-    private HttpResponse sendMethod(Type type, HeaderGroup headers, CookieStore cookies,
-            List<NameValuePair> params, HttpUriRequest request) throws IOException {
+    private HttpResponse sendMethod(Type type, List<NameValuePair> params,
+            HttpUriRequest request) throws IOException {
+        return sendMethod(type, params, request, false);
+    }
+
+    /**
+     * @param hedged 응답이 지연되면 Hedge 요청을 보내려면 true. (GET/HEAD 전용)
+     */
+    private HttpResponse sendMethod(Type type, List<NameValuePair> params,
+            HttpUriRequest request, boolean hedged) throws IOException {
         StopWatchAverage swa = null;
         if (Logger.isDebugEnabled()) { // 실행시간 설정.
             swa = new StopWatchAverage();
         }
         HttpResponse response = null;
+        boolean foreground = PrefetchLane.beginForeground(request);
         try {
-            // Cookie가 존재하면 Cookie를 Header에 설정한다.
-            if (cookies != null) {
-                List<Cookie> list = cookies.getCookies();
-                CookieSpecBase cookieSpecBase = new BrowserCompatSpec();
-                List<Header> cookieHeader = cookieSpecBase.formatCookies(list);
-                if (headers == null) {
-                    headers = new HeaderGroup();
-                }
-                for (Header h : cookieHeader) {
-                    request.addHeader(h);
-                }
-            }
-
-            if (mIsAcceptGzip) { // GZip을 이용해서 통신한다.
-                modifyRequestToAcceptGzipResponse(request);
-            }
-            if (headers != null) { // Header가 존재하면 Header를 설정한다.
-                for (Header header : headers.getAllHeaders()) {
-                    request.addHeader(header);
-                }
-            }
             if (Logger.isDebugEnabled()) { // HTTP Request URI
                 printConnectionLog(type, params, request);
             }
-            return (response = mHttpClient.execute(request));
+            CachingExecutor caching = mCachingExecutor;
+            if (caching != null && HttpGet.METHOD_NAME.equals(request.getMethod())) {
+                response = caching.execute(request, hedged);
+            } else {
+                response = hedged ? mHedger.execute(request) : executeOnce(request);
+                decodeContent(response);
+            }
+            return response;
         } catch (ClientProtocolException e) {
             if (Logger.isErrorEnabled()) {
                 Logger.e(getClass(), e);
@@ -2077,6 +2429,9 @@ public class HttpClientManager {
             request.abort();
             throw e;
         } finally {
+            if (foreground) {
+                PrefetchLane.endForeground();
+            }
             // Response 로그를 기록한다.
             if (Logger.isDebugEnabled()) {
                 String url = printConnectionLog(type, params, request, response);
@@ -2088,6 +2443,263 @@ public class HttpClientManager {
         }
     }
 
+    /**
+     * Redirect 응답이면 Location으로 다시 요청한다. 영구 Redirect된 URL은 처음부터 새 URL로 요청한다.
+     */
+    private HttpResponse executeFollowingRedirects(HttpUriRequest request) throws IOException {
+        HttpUriRequest current = request;
+        URI cached = sRedirectCache.get(request.getURI());
+        if (cached != null) {
+            HttpUriRequest redirect = newRedirectRequest(request, request.getMethod(), cached,
+                    true, false);
+            if (redirect != null) {
+                if (Logger.isDebugEnabled()) {
+                    Logger.d(getClass(), "Cached redirect : " + request.getURI() + " -> " + cached);
+                }
+                current = redirect;
+            }
+        }
+
+        try {
+            for (int count = 0;; count++) {
+                HttpResponse response = mHttpClient.execute(current);
+                int status = response.getStatusLine().getStatusCode();
+                Header location = response.getFirstHeader("Location");
+                if (!isRedirect(status) || location == null) {
+                    return response;
+                }
+
+                URI target;
+                try {
+                    target = current.getURI().resolve(location.getValue());
+                } catch (IllegalArgumentException e) {
+                    if (Logger.isWarnEnabled()) {
+                        Logger.w(getClass(), "Invalid redirect location : " + location.getValue());
+                    }
+                    return response;
+                }
+
+                // 303과 POST의 301/302는 Body 없이 GET으로 요청한다. (Browser와 동일)
+                String method = current.getMethod();
+                boolean keepBody = true;
+                if (status == HttpStatus.SC_SEE_OTHER
+                        || ((status == HttpStatus.SC_MOVED_PERMANENTLY
+                        || status == HttpStatus.SC_MOVED_TEMPORARILY)
+                        && HttpPost.METHOD_NAME.equals(method))) {
+                    method = HttpGet.METHOD_NAME;
+                    keepBody = false;
+                }
+                HttpUriRequest redirect = newRedirectRequest(current, method, target, keepBody,
+                        true);
+                if (redirect == null) { // Body를 다시 보낼 수 없으면 Redirect 응답을 그대로 전달한다.
+                    return response;
+                }
+                if (count >= mMaxRedirects) {
+                    consume(response);
+                    throw new ClientProtocolException("Maximum redirects (" + mMaxRedirects
+                            + ") exceeded");
+                }
+                if (status == HttpStatus.SC_MOVED_PERMANENTLY || status == SC_PERMANENT_REDIRECT) {
+                    sRedirectCache.put(current.getURI(), target);
+                }
+                if (Logger.isDebugEnabled()) {
+                    Logger.d(getClass(), "Redirect (" + status + ") : " + current.getURI() + " -> "
+                            + target);
+                }
+                consume(response);
+                current = redirect;
+            }
+        } catch (IOException e) {
+            if (current != request) {
+                current.abort();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 설정(Adaptive Timeout, Redirect)에 따라 요청 하나를 실행한다. Hedging 시에는 여러 Thread에서 호출된다.
+     */
+    private HttpResponse executeOnce(HttpUriRequest request) throws IOException {
+        RateLimiter limiter = RateLimiter.getDefault();
+        if (!limiter.isEnabled()) {
+            return executeDirect(request);
+        }
+        String host = request.getURI().getHost();
+        TrafficClass trafficClass = RateLimiter.getTrafficClass(request);
+        limiter.acquireRequest(host, trafficClass);
+        if (!limiter.isByteLimited(host, trafficClass)) {
+            return executeDirect(request);
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            HttpEntity entity = enclosing.getEntity();
+            if (entity != null && !(entity instanceof ThrottledEntity)) {
+                enclosing.setEntity(new ThrottledEntity(entity, limiter, host, trafficClass));
+            }
+        }
+        HttpResponse response = executeDirect(request);
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new ThrottledEntity(entity, limiter, host, trafficClass));
+        }
+        return response;
+    }
+
+    /**
+     * Adaptive Timeout, Redirect 설정에 따라 요청을 실행한다.
+     */
+    private HttpResponse executeDirect(HttpUriRequest request) throws IOException {
+        if (mAdaptiveTimeout) {
+            return executeAdaptive(request);
+        } else if (mFollowRedirects) {
+            return executeFollowingRedirects(request);
+        }
+        return mHttpClient.execute(request);
+    }
+
+    /**
+     * Host의 응답 시간으로 계산한 Timeout을 요청에 설정하고, 실행 후 응답 시간을 기록한다. <br />
+     * Timeout이 발생한 경우에는 사용한 Timeout 값을 기록하여 느린 Host의 Timeout이 점점 늘어나도록 한다. Timeout은
+     * 이번 실행에만 적용되는 Parameter Layer로 설정하고 실행 후 원래 Parameter로 되돌리므로, 요청 객체를 다시 실행하거나
+     * Parameter를 공유하는 Hedge/Redirect 요청에서 사용자가 설정한 값으로 보이지 않는다.
+     */
+    private HttpResponse executeAdaptive(HttpUriRequest request) throws IOException {
+        String host = request.getURI().getHost();
+        HttpParams original = request.getParams();
+        // Hedge 요청은 실행 중인 원래 요청의 Layer를 복사했을 수 있다.
+        HttpParams params = original instanceof DefaultedHttpParams
+                && original.getParameter(PARAM_ADAPTIVE_TIMEOUT) != null
+                ? ((DefaultedHttpParams) original).getDefaults() : original;
+        int timeout = -1;
+        if (params.getParameter(CoreConnectionPNames.SO_TIMEOUT) == null
+                && params.getParameter(CoreConnectionPNames.CONNECTION_TIMEOUT) == null) {
+            timeout = getAdaptiveTimeout(host);
+            request.setParams(newAdaptiveParams(params, timeout));
+        }
+        long start = SystemClock.elapsedRealtime();
+        try {
+            HttpResponse response = mFollowRedirects ? executeFollowingRedirects(request)
+                    : mHttpClient.execute(request);
+            LatencyTracker.getDefault().record(host, SystemClock.elapsedRealtime() - start);
+            return response;
+        } catch (InterruptedIOException e) { // SocketTimeoutException, ConnectTimeoutException
+            if (timeout > 0) {
+                LatencyTracker.getDefault().record(host, timeout);
+                if (Logger.isDebugEnabled()) {
+                    Logger.d(getClass(), "Adaptive timeout (" + timeout + "ms) : " + host);
+                }
+            }
+            throw e;
+        } finally {
+            if (timeout > 0) {
+                request.setParams(original);
+            }
+        }
+    }
+
+    /**
+     * 요청의 Parameter 위에 Adaptive Timeout만 설정한 Layer를 만든다. (Timeout 외의 값은 원래 Parameter를 따른다)
+     */
+    private static HttpParams newAdaptiveParams(HttpParams defaults, int timeout) {
+        HttpParams layer = new DefaultedHttpParams(new BasicHttpParams(), defaults);
+        layer.setIntParameter(PARAM_ADAPTIVE_TIMEOUT, timeout);
+        HttpConnectionParams.setConnectionTimeout(layer, timeout);
+        HttpConnectionParams.setSoTimeout(layer, timeout);
+        return layer;
+    }
+
+    private static boolean isRedirect(int status) {
+        switch (status) {
+            case HttpStatus.SC_MOVED_PERMANENTLY:
+            case HttpStatus.SC_MOVED_TEMPORARILY:
+            case HttpStatus.SC_SEE_OTHER:
+            case HttpStatus.SC_TEMPORARY_REDIRECT:
+            case SC_PERMANENT_REDIRECT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Redirect할 요청을 생성한다. Header와 Parameter(Timeout)는 원래 요청을 따르며, 다른 Host로 이동하면
+     * 인증 정보(Authorization, Cookie)는 전달하지 않는다.
+     *
+     * @param keepBody 원래 요청의 Body를 전달하려면 true.
+     * @param sent 원래 요청의 Body를 이미 전송했으면 true.
+     * @return Redirect 요청. (Body를 다시 보낼 수 없거나 지원하지 않는 Method면 null)
+     */
+    private static HttpUriRequest newRedirectRequest(HttpUriRequest original, String method,
+            URI uri, boolean keepBody, boolean sent) {
+        HttpRequestBase redirect;
+        if (HttpGet.METHOD_NAME.equals(method)) {
+            redirect = new HttpGet(uri);
+        } else if (HttpHead.METHOD_NAME.equals(method)) {
+            redirect = new HttpHead(uri);
+        } else if (HttpDelete.METHOD_NAME.equals(method)) {
+            redirect = new HttpDelete(uri);
+        } else if (HttpPost.METHOD_NAME.equals(method) || HttpPut.METHOD_NAME.equals(method)) {
+            HttpEntityEnclosingRequestBase request = HttpPost.METHOD_NAME.equals(method)
+                    ? new HttpPost(uri) : new HttpPut(uri);
+            if (keepBody && original instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) original).getEntity();
+                // 이미 전송한 Body는 반복 가능한 Entity만 다시 보낼 수 있다.
+                if (sent && entity != null && !entity.isRepeatable()) {
+                    return null;
+                }
+                request.setEntity(entity);
+            }
+            redirect = request;
+        } else {
+            return null;
+        }
+
+        boolean sameHost = uri.getHost() != null
+                && uri.getHost().equalsIgnoreCase(original.getURI().getHost());
+        for (Header header : original.getAllHeaders()) {
+            String name = header.getName();
+            if (!keepBody && (HTTP.CONTENT_TYPE.equalsIgnoreCase(name)
+                    || HTTP.CONTENT_LEN.equalsIgnoreCase(name))) {
+                continue;
+            }
+            if (!sameHost && ("Authorization".equalsIgnoreCase(name)
+                    || "Cookie".equalsIgnoreCase(name))) {
+                continue;
+            }
+            redirect.addHeader(header);
+        }
+        redirect.setParams(original.getParams());
+        return redirect;
+    }
+
+    private static void consume(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(HttpClientManager.class, e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 압축된 응답이면 Entity를 압축이 해제된 Entity로 교체한다. Native AndroidHttpClient는 Interceptor를
+     * 추가할 수 없으므로 실행 후에 직접 처리한다.
+     */
+    private static void decodeContent(HttpResponse response) throws IOException {
+        try {
+            sContentDecoder.process(response, null);
+        } catch (HttpException e) {
+            IOException ioe = new IOException(e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
     /* ====== URL Filter ====== */
 
     private static final Pattern ACCEPTED_URI_SCHEMA = Pattern.compile("(?i)"
@@ -2102,7 +2714,7 @@ public class HttpClientManager {
      *
      * @return Original or modified URL
      */
-    private String urlFilter(String url) {
+    static String urlFilter(String url) {
         String inUrl = url.trim();
         boolean hasSpace = inUrl.indexOf(' ') != -1;
         Matcher matcher = ACCEPTED_URI_SCHEMA.matcher(inUrl);
@@ -2131,7 +2743,7 @@ public class HttpClientManager {
      * @param parameters The parameters to include.
      * @param encoding The encoding to use.
      */
-    private String format(final List<? extends NameValuePair> parameters, String encoding) {
+    static String format(final List<? extends NameValuePair> parameters, String encoding) {
         final StringBuilder result = new StringBuilder();
         if (parameters == null || parameters.size() <= 0) {
             return "";
@@ -2163,8 +2775,9 @@ public class HttpClientManager {
     }
 
     /**
-     * Gets the input stream from a response entity. If the entity is gzipped
-     * then this will get a stream over the uncompressed data.
+     * Gets the input stream from a response entity. If the entity is compressed
+     * (gzip, deflate) then this will get a stream over the uncompressed data.
+     * send 계열 메소드의 응답은 이미 압축이 해제되어 있으므로 그대로 돌려준다.
      *
      * @param entity the entity whose content should be read
      * @return the input stream to read from
@@ -2172,22 +2785,7 @@ public class HttpClientManager {
      */
     public static InputStream getUngzippedContent(HttpEntity entity)
             throws IOException {
-        InputStream responseStream = entity.getContent();
-        if (responseStream == null) {
-            return responseStream;
-        }
-        Header header = entity.getContentEncoding();
-        if (header == null) {
-            return responseStream;
-        }
-        String contentEncoding = header.getValue();
-        if (contentEncoding == null) {
-            return responseStream;
-        }
-        if (contentEncoding.contains("gzip")) {
-            responseStream = new GZIPInputStream(responseStream);
-        }
-        return responseStream;
+        return ContentCodecRegistry.getDefault().getDecodedContent(entity);
     }
 
     /* ====== Connect Log ====== */
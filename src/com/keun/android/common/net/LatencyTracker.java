@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Host별로 최근 응답 시간(요청부터 응답 Header 수신까지)을 보관하고 백분위 값(p95, p99 등)을 계산한다. <br />
+ * Host마다 최근 {@link #DEFAULT_WINDOW}개의 값만 보관하며, 값이 {@link #MIN_SAMPLES}개보다 적으면 백분위 값을
+ * 제공하지 않는다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 15.
+ * @version 1.0
+ */
+public class LatencyTracker {
+
+    /** Host별로 보관할 최근 응답 시간 개수. */
+    public static final int DEFAULT_WINDOW = 128;
+
+    /** 백분위 값을 계산하기 위한 최소 개수. */
+    public static final int MIN_SAMPLES = 20;
+
+    private static final LatencyTracker sDefault = new LatencyTracker(DEFAULT_WINDOW);
+
+    private final int mWindow;
+    private final ConcurrentHashMap<String, Samples> mHosts =
+            new ConcurrentHashMap<String, Samples>();
+
+    /**
+     * 모든 HttpClientManager가 공유하는 LatencyTracker를 가져온다.
+     */
+    public static LatencyTracker getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param window Host별로 보관할 최근 응답 시간 개수.
+     */
+    public LatencyTracker(int window) {
+        this.mWindow = Math.max(MIN_SAMPLES, window);
+    }
+
+    /**
+     * 응답 시간을 기록한다.
+     *
+     * @param host Host 이름.
+     * @param millis 응답 시간(ms)
+     */
+    public void record(String host, long millis) {
+        if (host == null) {
+            return;
+        }
+        Samples samples = mHosts.get(host);
+        if (samples == null) {
+            Samples created = new Samples(mWindow);
+            samples = mHosts.putIfAbsent(host, created);
+            if (samples == null) {
+                samples = created;
+            }
+        }
+        samples.add(millis);
+    }
+
+    /**
+     * 최근 응답 시간의 백분위 값을 가져온다.
+     *
+     * @param host Host 이름.
+     * @param percentile 0.0 ~ 1.0 (예: p99는 0.99)
+     * @return 응답 시간(ms). (기록된 값이 부족하면 -1)
+     */
+    public long getPercentile(String host, double percentile) {
+        if (host == null) {
+            return -1;
+        }
+        Samples samples = mHosts.get(host);
+        return samples != null ? samples.percentile(percentile) : -1;
+    }
+
+    public int getSampleCount(String host) {
+        Samples samples = host != null ? mHosts.get(host) : null;
+        return samples != null ? samples.size() : 0;
+    }
+
+    public void clear() {
+        mHosts.clear();
+    }
+
+    /** 최근 응답 시간을 보관하는 Ring Buffer. 정렬 결과는 값이 추가될 때까지 재사용한다. */
+    private static final class Samples {
+        private final long[] mValues;
+        private final long[] mSorted;
+        private int mCount;
+        private int mIndex;
+        private boolean mDirty;
+
+        Samples(int window) {
+            this.mValues = new long[window];
+            this.mSorted = new long[window];
+        }
+
+        synchronized void add(long value) {
+            mValues[mIndex] = value;
+            mIndex = (mIndex + 1) % mValues.length;
+            if (mCount < mValues.length) {
+                mCount++;
+            }
+            mDirty = true;
+        }
+
+        synchronized int size() {
+            return mCount;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (mCount < MIN_SAMPLES) {
+                return -1;
+            }
+            if (mDirty) {
+                System.arraycopy(mValues, 0, mSorted, 0, mCount);
+                Arrays.sort(mSorted, 0, mCount);
+                mDirty = false;
+            }
+            int index = (int) Math.ceil(percentile * mCount) - 1;
+            return mSorted[Math.max(0, Math.min(index, mCount - 1))];
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.mime.FormBodyPart;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 여러 요청을 하나의 multipart/mixed 요청으로 묶고, multipart/mixed 응답을 요청별 응답으로 나눈다. <br />
+ * 각 Part는 Content-Type: application/http이며 Body에 HTTP 요청(응답) 메시지 전체를 담는다. 응답 Part는
+ * Content-ID가 "response-" + 요청 Content-ID인 경우 해당 요청과 연결하고, 없으면 순서대로 연결한다.
+ *
+ * <pre>
+ * --batch_xxx
+ * Content-Type: application/http
+ * Content-ID: &lt;1&gt;
+ *
+ * GET /v1/users/me HTTP/1.1
+ * Host: api.example.com
+ *
+ * --batch_xxx--
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 20.
+ * @version 1.0
+ * @see HttpClientManager#sendBatch(String, List)
+ */
+final class MultipartBatch {
+
+    static final String SUBTYPE = "mixed";
+    static final String PART_CONTENT_TYPE = "application/http";
+
+    private static final String CRLF = "\r\n";
+
+    private MultipartBatch() {
+    }
+
+    /**
+     * 요청들을 multipart/mixed Entity로 만든다.
+     *
+     * @param requests 묶을 요청.
+     * @return MultipartEntity
+     * @throws IOException 요청 Entity를 읽지 못한 경우.
+     */
+    static MultipartEntity createEntity(List<HttpUriRequest> requests) throws IOException {
+        MultipartEntity entity = new MultipartEntity(SUBTYPE, HttpMultipartMode.STRICT, null,
+                null);
+        for (int i = 0; i < requests.size(); i++) {
+            String contentId = String.valueOf(i + 1);
+            BatchBodyPart part = new BatchBodyPart(contentId, new ByteArrayBody(
+                    serialize(requests.get(i)), PART_CONTENT_TYPE, null));
+            part.addField("Content-ID", "<" + contentId + ">");
+            entity.addPart(part);
+        }
+        return entity;
+    }
+
+    /**
+     * multipart/mixed 응답을 요청별 응답으로 나눈다. 응답 Part는 {@link MultipartReader}로 차례대로 읽으며,
+     * 각 응답의 Body만 Memory에 저장한다.
+     *
+     * @param response Batch 응답.
+     * @param count 요청 개수.
+     * @return 요청 순서대로 정렬된 응답. (응답이 없는 요청은 null)
+     * @throws IOException multipart/mixed 응답이 아니거나 형식이 잘못된 경우.
+     */
+    static List<HttpResponse> parseResponse(HttpResponse response, int count) throws IOException {
+        HttpEntity entity = response.getEntity();
+        String boundary = MultipartReader.getBoundary(entity);
+        if (boundary == null) {
+            throw new IOException("Not a multipart response : "
+                    + (entity != null ? entity.getContentType() : null));
+        }
+        ArrayList<HttpResponse> responses = new ArrayList<HttpResponse>(count);
+        for (int i = 0; i < count; i++) {
+            responses.add(null);
+        }
+        MultipartReader reader = new MultipartReader(entity.getContent(), boundary);
+        try {
+            int next = 0;
+            MultipartReader.Part part;
+            while (next < count && (part = reader.next()) != null) {
+                int index = indexOf(part.getField("Content-ID"));
+                if (index < 0 || index >= count || responses.get(index) != null) {
+                    index = next;
+                }
+                responses.set(index, parseHttpResponse(part.getInputStream()));
+                while (next < count && responses.get(next) != null) {
+                    next++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return responses;
+    }
+
+    /** 요청을 HTTP 메시지(Request Line, Header, Body)로 만든다. */
+    private static byte[] serialize(HttpUriRequest request) throws IOException {
+        URI uri = request.getURI();
+        StringBuilder head = new StringBuilder();
+        head.append(request.getMethod()).append(' ');
+        String path = uri.getRawPath();
+        head.append(path == null || path.length() == 0 ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            head.append('?').append(uri.getRawQuery());
+        }
+        head.append(" HTTP/1.1").append(CRLF);
+        if (uri.getHost() != null && !request.containsHeader(HTTP.TARGET_HOST)) {
+            head.append(HTTP.TARGET_HOST).append(": ").append(uri.getHost());
+            if (uri.getPort() != -1) {
+                head.append(':').append(uri.getPort());
+            }
+            head.append(CRLF);
+        }
+        for (Header header : request.getAllHeaders()) {
+            head.append(header.getName()).append(": ").append(header.getValue()).append(CRLF);
+        }
+
+        HttpEntity entity = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        }
+        PoolingByteArrayOutputStream out = new PoolingByteArrayOutputStream();
+        try {
+            if (entity == null) {
+                head.append(CRLF);
+                out.write(head.toString().getBytes(Config.UTF_8));
+                return out.toByteArray();
+            }
+            PoolingByteArrayOutputStream content = new PoolingByteArrayOutputStream();
+            try {
+                entity.writeTo(content);
+                appendEntityHeader(head, request, entity.getContentType());
+                appendEntityHeader(head, request, entity.getContentEncoding());
+                head.append(HTTP.CONTENT_LEN).append(": ").append(content.size()).append(CRLF);
+                head.append(CRLF);
+                out.write(head.toString().getBytes(Config.UTF_8));
+                content.writeTo(out);
+            } finally {
+                content.release();
+            }
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    private static void appendEntityHeader(StringBuilder head, HttpUriRequest request,
+            Header header) {
+        if (header != null && !request.containsHeader(header.getName())) {
+            head.append(header.getName()).append(": ").append(header.getValue()).append(CRLF);
+        }
+    }
+
+    /** "&lt;response-3&gt;", "&lt;3&gt;" 형식의 Content-ID에서 요청 순서(0부터)를 가져온다. */
+    private static int indexOf(String contentId) {
+        if (contentId == null) {
+            return -1;
+        }
+        String value = contentId.trim();
+        if (value.startsWith("<") && value.endsWith(">")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (value.startsWith("response-")) {
+            value = value.substring("response-".length());
+        }
+        try {
+            return Integer.parseInt(value) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Part Body(HTTP 응답 메시지)로 HttpResponse를 만든다. */
+    private static HttpResponse parseHttpResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        String[] status = statusLine.split(" ", 3);
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(status[1]);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid status line : " + statusLine);
+        }
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                HttpVersion.HTTP_1_1, statusCode, status.length > 2 ? status[2] : ""));
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                response.addHeader(line.substring(0, colon).trim(), line.substring(colon + 1)
+                        .trim());
+            }
+        }
+        PoolingByteArrayOutputStream body = new PoolingByteArrayOutputStream();
+        try {
+            body.readFrom(in);
+            ByteArrayEntity entity = new ByteArrayEntity(body.toByteArray());
+            entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+            entity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+            response.setEntity(entity);
+        } finally {
+            body.release();
+        }
+        return response;
+    }
+
+    /** CRLF(또는 LF)까지 한 줄을 읽는다. (Stream의 끝이면 빈 문자열) */
+    private static String readLine(InputStream in) throws IOException {
+        PoolingByteArrayOutputStream line = new PoolingByteArrayOutputStream();
+        try {
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                line.write(b);
+            }
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1
+                    : bytes.length;
+            return new String(bytes, 0, length, Config.UTF_8);
+        } finally {
+            line.release();
+        }
+    }
+
+    /** Content-Disposition(form-data) 없이 Content-Type과 Content-ID만 가지는 Part. */
+    private static final class BatchBodyPart extends FormBodyPart {
+        BatchBodyPart(String name, ContentBody body) {
+            super(name, body);
+        }
+
+        @Override
+        protected void generateContentDisp(ContentBody body) {
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.utils.BufferPool;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.mime.Header;
+import org.apache.http.entity.mime.MinimalField;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * multipart(mixed, related, form-data 등) Body를 Stream으로 읽는다. <br />
+ * Part 전체를 Memory에 올리지 않고, 고정 크기 Buffer 안에서 Boyer-Moore-Horspool 알고리즘으로 Boundary를
+ * 찾는다. {@link #next()}로 가져온 Part의 Stream은 다음 Part로 넘어가면 더 이상 읽을 수 없으며, 읽지 않은 부분은
+ * 건너뛴다.
+ *
+ * <pre>
+ * MultipartReader reader = new MultipartReader(entity.getContent(),
+ *         MultipartReader.getBoundary(entity));
+ * try {
+ *     MultipartReader.Part part;
+ *     while ((part = reader.next()) != null) {
+ *         String type = part.getField(&quot;Content-Type&quot;);
+ *         InputStream in = part.getInputStream();
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 21.
+ * @version 1.0
+ */
+public class MultipartReader implements Closeable {
+
+    /** Header 한 줄의 최대 길이. */
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    /** Part 하나의 최대 Header 개수. */
+    private static final int MAX_HEADER_COUNT = 100;
+
+    private static final int STATE_PREAMBLE = 0;
+    private static final int STATE_BODY = 1;
+    private static final int STATE_DONE = 2;
+
+    private final InputStream mInput;
+    /** CRLF + "--" + boundary */
+    private final byte[] mDelimiter;
+    /** Boyer-Moore-Horspool 이동 거리 표. */
+    private final int[] mSkip = new int[256];
+
+    private byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+    private boolean mEof;
+    /** Buffer에서 찾은 다음 구분자의 위치. (-1이면 아직 찾지 못했다) */
+    private int mDelimiterPos = -1;
+
+    private int mState = STATE_PREAMBLE;
+    private Part mCurrent;
+
+    /**
+     * @param in multipart Body.
+     * @param boundary Content-Type의 boundary 값.
+     */
+    public MultipartReader(InputStream in, String boundary) {
+        if (boundary == null || boundary.length() == 0) {
+            throw new IllegalArgumentException("Boundary may not be empty");
+        }
+        this.mInput = in;
+        try {
+            this.mDelimiter = ("\r\n--" + boundary).getBytes(Config.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+        int last = mDelimiter.length - 1;
+        for (int i = 0; i < mSkip.length; i++) {
+            mSkip[i] = mDelimiter.length;
+        }
+        for (int i = 0; i < last; i++) {
+            mSkip[mDelimiter[i] & 0xff] = last - i;
+        }
+        this.mBuffer = BufferPool.acquire(Math.max(BufferPool.DEFAULT_SIZE,
+                mDelimiter.length * 4));
+        // 첫 Boundary 앞에 CRLF가 없어도 구분자로 찾을 수 있도록 CRLF로 시작한다.
+        mBuffer[0] = '\r';
+        mBuffer[1] = '\n';
+        mLimit = 2;
+    }
+
+    /**
+     * Memory에 있는 multipart Body를 읽는다.
+     */
+    public MultipartReader(ByteBuffer buffer, String boundary) {
+        this(new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining()), boundary);
+    }
+
+    /**
+     * Entity의 Content-Type에서 boundary 값을 가져온다.
+     *
+     * @return boundary (multipart가 아니면 null)
+     */
+    public static String getBoundary(HttpEntity entity) {
+        if (entity == null || entity.getContentType() == null) {
+            return null;
+        }
+        for (HeaderElement element : entity.getContentType().getElements()) {
+            if (!element.getName().toLowerCase().startsWith("multipart/")) {
+                continue;
+            }
+            NameValuePair boundary = element.getParameterByName("boundary");
+            if (boundary != null && boundary.getValue() != null) {
+                return boundary.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 다음 Part를 가져온다. 이전 Part에서 읽지 않은 부분은 건너뛴다.
+     *
+     * @return Part (마지막 Part 다음이면 null)
+     * @throws IOException 형식이 잘못되었거나 Stream이 중간에 끝난 경우.
+     */
+    public Part next() throws IOException {
+        if (mCurrent != null) {
+            mCurrent.mClosed = true;
+            mCurrent = null;
+        }
+        if (mState == STATE_DONE) {
+            return null;
+        }
+        // Preamble 또는 이전 Part의 남은 Body를 건너뛴다.
+        byte[] skip = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+        try {
+            while (readBody(skip, 0, skip.length) != -1) {
+                // skip
+            }
+        } finally {
+            BufferPool.release(skip);
+        }
+        if (!consumeDelimiter()) {
+            mState = STATE_DONE;
+            return null;
+        }
+        Header header = readHeader();
+        mState = STATE_BODY;
+        mCurrent = new Part(header);
+        return mCurrent;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mState = STATE_DONE;
+        if (mBuffer != null) {
+            BufferPool.release(mBuffer);
+            mBuffer = null;
+        }
+        mInput.close();
+    }
+
+    /**
+     * 다음 구분자 전까지 Body를 읽는다.
+     *
+     * @return 읽은 Byte 수. (구분자에 도달하면 -1)
+     */
+    private int readBody(byte[] b, int off, int len) throws IOException {
+        if (mBuffer == null) {
+            throw new IOException("MultipartReader is closed");
+        }
+        for (;;) {
+            if (mDelimiterPos < 0) {
+                mDelimiterPos = indexOfDelimiter(mPos, mLimit);
+            }
+            int available;
+            if (mDelimiterPos >= 0) {
+                available = mDelimiterPos - mPos;
+                if (available == 0) {
+                    return -1;
+                }
+            } else {
+                // 구분자의 앞부분일 수 있는 마지막 (길이 - 1) Byte는 남겨둔다.
+                available = mLimit - mPos - (mDelimiter.length - 1);
+            }
+            if (available > 0) {
+                int count = Math.min(available, len);
+                System.arraycopy(mBuffer, mPos, b, off, count);
+                mPos += count;
+                return count;
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart stream");
+            }
+        }
+    }
+
+    /**
+     * 구분자를 읽는다.
+     *
+     * @return 다음 Part가 있으면 true, 마지막 구분자("--")이면 false.
+     */
+    private boolean consumeDelimiter() throws IOException {
+        if (!require(mDelimiter.length + 2)) {
+            throw new IOException("Unexpected end of multipart stream");
+        }
+        mPos += mDelimiter.length;
+        mDelimiterPos = -1;
+        if (mBuffer[mPos] == '-' && mBuffer[mPos + 1] == '-') {
+            mPos += 2;
+            return false;
+        }
+        readLine(); // Transport padding과 CRLF.
+        return true;
+    }
+
+    private Header readHeader() throws IOException {
+        Header header = new Header();
+        int count = 0;
+        String line;
+        while ((line = readLine()).length() > 0) {
+            if (++count > MAX_HEADER_COUNT) {
+                throw new IOException("Too many part headers");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                header.addField(new MinimalField(line.substring(0, colon).trim(), line
+                        .substring(colon + 1).trim()));
+            }
+        }
+        return header;
+    }
+
+    /** CRLF(또는 LF)까지 한 줄을 읽는다. (줄바꿈 문자는 제외한다) */
+    private String readLine() throws IOException {
+        int start = mPos;
+        int scanned = 0;
+        for (;;) {
+            for (int i = start + scanned; i < mLimit; i++) {
+                if (mBuffer[i] == '\n') {
+                    int end = i > start && mBuffer[i - 1] == '\r' ? i - 1 : i;
+                    String line = new String(mBuffer, start, end - start, Config.UTF_8);
+                    mPos = i + 1;
+                    return line;
+                }
+            }
+            scanned = mLimit - start;
+            if (scanned > MAX_LINE_LENGTH) {
+                throw new IOException("Part header line is too long");
+            }
+            int before = mPos;
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart stream");
+            }
+            start -= before - mPos; // fill()이 Buffer를 앞으로 당긴 경우.
+        }
+    }
+
+    /** Buffer에 최소 count Byte가 있도록 읽는다. */
+    private boolean require(int count) throws IOException {
+        while (mLimit - mPos < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 남은 데이터를 Buffer 앞으로 당기고 Stream에서 더 읽는다. 필요하면 Buffer를 늘린다.
+     *
+     * @return 더 읽은 경우 true, Stream의 끝이면 false.
+     */
+    private boolean fill() throws IOException {
+        if (mEof) {
+            return false;
+        }
+        if (mPos > 0) {
+            System.arraycopy(mBuffer, mPos, mBuffer, 0, mLimit - mPos);
+            mLimit -= mPos;
+            if (mDelimiterPos >= 0) {
+                mDelimiterPos -= mPos;
+            }
+            mPos = 0;
+        }
+        if (mLimit == mBuffer.length) { // 긴 Header 줄.
+            byte[] larger = BufferPool.acquire(mBuffer.length * 2);
+            System.arraycopy(mBuffer, 0, larger, 0, mLimit);
+            BufferPool.release(mBuffer);
+            mBuffer = larger;
+        }
+        int read = mInput.read(mBuffer, mLimit, mBuffer.length - mLimit);
+        if (read == -1) {
+            mEof = true;
+            return false;
+        }
+        mLimit += read;
+        return true;
+    }
+
+    /** Boyer-Moore-Horspool 알고리즘으로 Buffer에서 구분자를 찾는다. */
+    private int indexOfDelimiter(int from, int to) {
+        byte[] pattern = mDelimiter;
+        int last = pattern.length - 1;
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while (mBuffer[i + j] == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += mSkip[mBuffer[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * multipart Body의 Part 하나. (Header와 Body Stream)
+     */
+    public final class Part {
+        private final Header mHeader;
+        private final InputStream mStream;
+        private boolean mClosed;
+
+        Part(Header header) {
+            this.mHeader = header;
+            this.mStream = new PartInputStream();
+        }
+
+        public Header getHeader() {
+            return mHeader;
+        }
+
+        /**
+         * Header 값을 가져온다.
+         *
+         * @param name Header 이름. (대소문자를 구분하지 않는다)
+         * @return 값 (없으면 null)
+         */
+        public String getField(String name) {
+            MinimalField field = mHeader.getField(name);
+            return field != null ? field.getBody() : null;
+        }
+
+        /**
+         * Part Body를 읽는 Stream을 가져온다. 다음 Part로 넘어가면 더 이상 읽을 수 없다.
+         */
+        public InputStream getInputStream() {
+            return mStream;
+        }
+
+        private final class PartInputStream extends InputStream {
+            private final byte[] mOne = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                return read(mOne, 0, 1) == -1 ? -1 : mOne[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (mClosed) {
+                    throw new IOException("Part is no longer readable");
+                }
+                if (len == 0) {
+                    return 0;
+                }
+                return readBody(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                if (mClosed || mBuffer == null) {
+                    return 0;
+                }
+                int end = mDelimiterPos >= 0 ? mDelimiterPos : mLimit - mDelimiter.length + 1;
+                return Math.max(0, end - mPos);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.keun.android.common.utils.Logger;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Network 연결 상태를 확인하고, 연결 상태가 바뀌면 등록된 Listener에 알린다. <br />
+ * Listener가 등록되어 있는 동안에만 CONNECTIVITY_ACTION BroadcastReceiver를 등록한다.
+ * (android.permission.ACCESS_NETWORK_STATE 권한이 필요하다.)
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 13.
+ * @version 1.0
+ */
+public final class NetworkMonitor {
+
+    /**
+     * Network 연결 상태 변경을 전달 받는다. Main Thread에서 호출된다.
+     */
+    public static interface OnNetworkChangeListener {
+        public void onNetworkChanged(boolean isConnected);
+    }
+
+    private static NetworkMonitor sInstance;
+
+    private final Context mContext;
+    private final CopyOnWriteArrayList<OnNetworkChangeListener> mListeners =
+            new CopyOnWriteArrayList<OnNetworkChangeListener>();
+
+    private BroadcastReceiver mReceiver;
+    private volatile boolean mIsConnected;
+
+    private NetworkMonitor(Context context) {
+        this.mContext = context;
+        this.mIsConnected = queryConnected();
+    }
+
+    public static synchronized NetworkMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NetworkMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Network에 연결되어 있는지 확인한다.
+     *
+     * @return 연결되어 있으면 true.
+     */
+    public boolean isConnected() {
+        if (mReceiver == null) { // Receiver가 없으면 상태가 갱신되지 않으므로 직접 확인한다.
+            mIsConnected = queryConnected();
+        }
+        return mIsConnected;
+    }
+
+    public synchronized void addListener(OnNetworkChangeListener listener) {
+        if (listener == null || !mListeners.addIfAbsent(listener)) {
+            return;
+        }
+        if (mReceiver == null) {
+            mIsConnected = queryConnected();
+            mReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    boolean connected = !intent.getBooleanExtra(
+                            ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)
+                            && queryConnected();
+                    if (connected != mIsConnected) {
+                        mIsConnected = connected;
+                        if (Logger.isDebugEnabled()) {
+                            Logger.d(NetworkMonitor.class, "Network connected : " + connected);
+                        }
+                        for (OnNetworkChangeListener l : mListeners) {
+                            l.onNetworkChanged(connected);
+                        }
+                    }
+                }
+            };
+            mContext.registerReceiver(mReceiver, new IntentFilter(
+                    ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    public synchronized void removeListener(OnNetworkChangeListener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty() && mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+        }
+    }
+
+    private boolean queryConnected() {
+        try {
+            ConnectivityManager cm = (ConnectivityManager) mContext
+                    .getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm == null) {
+                return true;
+            }
+            NetworkInfo info = cm.getActiveNetworkInfo();
+            return info != null && info.isConnected();
+        } catch (SecurityException e) {
+            // 권한이 없으면 연결되어 있다고 가정한다.
+            if (Logger.isWarnEnabled()) {
+                Logger.w(NetworkMonitor.class, "ACCESS_NETWORK_STATE 권한이 없습니다.");
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+import com.keun.android.common.utils.Logger;
+
+import org.apache.http.HttpRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 곧 사용할 것으로 예상되는 자원(HTTP 응답, 이미지)을 미리 받아두는 낮은 우선순위의 실행 Lane. <br />
+ * <ul>
+ * <li>동시에 실행하는 작업 수를 제한한다.</li>
+ * <li>받은 Byte가 Budget을 넘으면 남은 작업을 버린다. ({@link #resetBudget()}으로 초기화)</li>
+ * <li>INTERACTIVE Traffic Class의 HttpClientManager 요청이 진행 중이면 다음 작업을 시작하지 않고 기다린다.
+ * 받고 있는 작업도 {@link #yieldToForeground()}를 호출하는 읽기 Loop에서 멈춘다.</li>
+ * <li>같은 Key의 작업은 한번만 등록된다.</li>
+ * </ul>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 18.
+ * @version 1.0
+ * @see HttpClientManager#prefetch(java.util.List)
+ */
+public class PrefetchLane {
+
+    /** 동시에 실행하는 기본 작업 수. */
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    /** 받을 수 있는 기본 Byte 수. (4 MByte) */
+    public static final long DEFAULT_BYTE_BUDGET = 4 * 1024 * 1024;
+
+    /** 진행 중인 Foreground 요청 수. */
+    private static final AtomicInteger sForeground = new AtomicInteger();
+    private static final Object sForegroundLock = new Object();
+
+    private static final PrefetchLane sDefault = new PrefetchLane(DEFAULT_CONCURRENCY,
+            DEFAULT_BYTE_BUDGET);
+
+    private final LinkedList<Entry> mQueue = new LinkedList<Entry>();
+    /** 대기 중이거나 실행 중인 작업의 Key. */
+    private final HashSet<String> mKeys = new HashSet<String>();
+    private final AtomicInteger mThreadCount = new AtomicInteger();
+
+    private int mMaxConcurrency;
+    private long mByteBudget;
+    private long mBytesUsed;
+    private int mRunning;
+    private int mCompletedCount;
+    private int mDroppedCount;
+
+    /**
+     * 미리 받을 작업.
+     */
+    public static interface Task {
+        /**
+         * 작업을 실행한다.
+         *
+         * @return 받은 Byte 수. (이미 받아둔 경우 0)
+         * @throws IOException
+         */
+        public long run() throws IOException;
+    }
+
+    /**
+     * @param maxConcurrency 동시에 실행하는 최대 작업 수.
+     * @param byteBudget 받을 수 있는 최대 Byte 수.
+     */
+    public PrefetchLane(int maxConcurrency, long byteBudget) {
+        this.mMaxConcurrency = Math.max(1, maxConcurrency);
+        this.mByteBudget = byteBudget;
+    }
+
+    /**
+     * HttpClientManager와 ImageDownloader가 공유하는 Lane을 가져온다.
+     */
+    public static PrefetchLane getDefault() {
+        return sDefault;
+    }
+
+    public synchronized void setMaxConcurrency(int maxConcurrency) {
+        this.mMaxConcurrency = Math.max(1, maxConcurrency);
+        startWorkers();
+    }
+
+    public synchronized void setByteBudget(long byteBudget) {
+        this.mByteBudget = byteBudget;
+    }
+
+    /**
+     * 사용한 Byte 수를 초기화한다. (예: 화면이 바뀐 경우)
+     */
+    public synchronized void resetBudget() {
+        mBytesUsed = 0;
+    }
+
+    /**
+     * 작업을 등록한다.
+     *
+     * @param key 중복 확인에 사용할 Key. (예: URL)
+     * @param task 작업.
+     * @return 등록되면 true. 같은 Key의 작업이 이미 있거나 Budget을 모두 사용했으면 false.
+     */
+    public synchronized boolean submit(String key, Task task) {
+        if (mBytesUsed >= mByteBudget) {
+            mDroppedCount++;
+            return false;
+        }
+        if (!mKeys.add(key)) {
+            return false;
+        }
+        mQueue.add(new Entry(key, task));
+        startWorkers();
+        return true;
+    }
+
+    /**
+     * 아직 시작하지 않은 작업을 모두 취소한다.
+     */
+    public synchronized void cancelAll() {
+        for (Entry entry : mQueue) {
+            mKeys.remove(entry.mKey);
+        }
+        mDroppedCount += mQueue.size();
+        mQueue.clear();
+    }
+
+    public synchronized String getStats() {
+        return "PrefetchLane [pending=" + mQueue.size() + ", running=" + mRunning + ", completed="
+                + mCompletedCount + ", dropped=" + mDroppedCount + ", bytes=" + mBytesUsed + "/"
+                + mByteBudget + "]";
+    }
+
+    /**
+     * 현재 Thread가 Prefetch Thread인지 확인한다.
+     */
+    static boolean isPrefetchThread() {
+        return Thread.currentThread() instanceof LaneThread;
+    }
+
+    /**
+     * Foreground 요청을 시작한다. INTERACTIVE Traffic Class의 요청만 Foreground로 센다. (Prefetch Thread의 요청과
+     * EventBatcher, OfflineRequestQueue 등 BACKGROUND 요청은 무시된다)
+     *
+     * @param request 시작할 요청.
+     * @return {@link #endForeground()}를 호출해야 하면 true.
+     */
+    static boolean beginForeground(HttpRequest request) {
+        if (RateLimiter.getTrafficClass(request) != TrafficClass.INTERACTIVE) {
+            return false;
+        }
+        sForeground.incrementAndGet();
+        return true;
+    }
+
+    static void endForeground() {
+        if (sForeground.decrementAndGet() <= 0) {
+            synchronized (sForegroundLock) {
+                sForegroundLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Prefetch Thread에서 호출하면 Foreground 요청이 모두 끝날 때까지 기다린다. 응답을 읽는 Loop에서 호출하여 받고 있는
+     * 작업도 Foreground 요청이 진행 중이면 멈추게 한다. 다른 Thread에서 호출하면 바로 반환한다.
+     *
+     * @throws InterruptedIOException 기다리는 중에 Interrupt된 경우.
+     */
+    public static void yieldToForeground() throws InterruptedIOException {
+        if (sForeground.get() <= 0 || !isPrefetchThread()) {
+            return;
+        }
+        try {
+            awaitForegroundIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for foreground requests");
+        }
+    }
+
+    private void startWorkers() {
+        while (mRunning < mMaxConcurrency && mRunning < mQueue.size()) {
+            mRunning++;
+            new LaneThread(new Worker(), "PrefetchLane #" + mThreadCount.incrementAndGet())
+                    .start();
+        }
+    }
+
+    /** 다음 작업을 가져온다. 없으면 Worker를 종료한다. */
+    private synchronized Entry next() {
+        if (mBytesUsed >= mByteBudget && !mQueue.isEmpty()) {
+            if (Logger.isDebugEnabled()) {
+                Logger.d(getClass(), "Prefetch budget exhausted (" + mBytesUsed + " bytes)");
+            }
+            cancelAll();
+        }
+        if (mQueue.isEmpty() || mRunning > mMaxConcurrency) {
+            mRunning--;
+            return null;
+        }
+        return mQueue.removeFirst();
+    }
+
+    private synchronized void complete(Entry entry, long bytes) {
+        mKeys.remove(entry.mKey);
+        mBytesUsed += bytes;
+        mCompletedCount++;
+    }
+
+    /** Foreground 요청이 모두 끝날 때까지 기다린다. */
+    private static void awaitForegroundIdle() throws InterruptedException {
+        synchronized (sForegroundLock) {
+            while (sForeground.get() > 0) {
+                sForegroundLock.wait();
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            for (;;) {
+                try {
+                    awaitForegroundIdle();
+                } catch (InterruptedException e) {
+                    synchronized (PrefetchLane.this) {
+                        mRunning--;
+                    }
+                    return;
+                }
+                Entry entry = next();
+                if (entry == null) {
+                    return;
+                }
+                long bytes = 0;
+                try {
+                    bytes = entry.mTask.run();
+                } catch (IOException e) {
+                    if (Logger.isWarnEnabled()) {
+                        Logger.w(PrefetchLane.class, "Prefetch failed (" + e.toString() + ") : "
+                                + entry.mKey);
+                    }
+                } catch (RuntimeException e) {
+                    if (Logger.isWarnEnabled()) {
+                        Logger.w(PrefetchLane.class, "Prefetch failed : " + entry.mKey, e);
+                    }
+                } finally {
+                    complete(entry, bytes);
+                }
+            }
+        }
+    }
+
+    private static final class LaneThread extends Thread {
+        LaneThread(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+        }
+    }
+
+    private static final class Entry {
+        private final String mKey;
+        private final Task mTask;
+
+        Entry(String key, Task task) {
+            this.mKey = key;
+            this.mTask = task;
+        }
+    }
+}
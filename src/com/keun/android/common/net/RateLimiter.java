@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import org.apache.http.HttpRequest;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Host와 Traffic Class별로 초당 요청 수와 초당 전송 Byte 수를 제한한다. <br />
+ * 제한은 Host를 지정한 설정과 모든 Host({@link #ANY_HOST}) 설정이 모두 적용된다. 예를 들어 BACKGROUND 요청
+ * 전체를 200 KByte/s로 제한하면 대량 동기화가 Network를 모두 사용하지 않으므로 INTERACTIVE 요청의 지연 시간을
+ * 예측할 수 있다.
+ *
+ * <pre>
+ * RateLimiter limiter = RateLimiter.getDefault();
+ * limiter.setBytesPerSecond(RateLimiter.ANY_HOST, TrafficClass.BACKGROUND, 200 * 1024);
+ * limiter.setRequestsPerSecond(&quot;api.example.com&quot;, TrafficClass.BACKGROUND, 5);
+ *
+ * manager.send(manager.getTemplate().get(url).setTrafficClass(TrafficClass.BACKGROUND));
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 18.
+ * @version 1.0
+ * @see RequestBuilder#setTrafficClass(TrafficClass)
+ */
+public final class RateLimiter {
+
+    /** 요청의 Traffic Class. */
+    public static enum TrafficClass {
+        /** 사용자가 기다리는 요청. (기본값) */
+        INTERACTIVE,
+        /** 동기화, Prefetch, 로그 전송 등 Background 요청. */
+        BACKGROUND
+    }
+
+    /** 모든 Host에 적용한다. */
+    public static final String ANY_HOST = "*";
+
+    /** 요청 HttpParams에 Traffic Class를 지정하는 Parameter 이름. */
+    public static final String PARAM_TRAFFIC_CLASS = "com.keun.android.common.net.traffic-class";
+
+    /** 전송 Byte 제한의 순간 허용량. (0.25초 분량) */
+    private static final double BYTE_BURST_SECONDS = 0.25;
+
+    private static final RateLimiter sDefault = new RateLimiter();
+
+    private final ConcurrentHashMap<String, TokenBucket> mRequestBuckets =
+            new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentHashMap<String, TokenBucket> mByteBuckets =
+            new ConcurrentHashMap<String, TokenBucket>();
+
+    public RateLimiter() {
+    }
+
+    /**
+     * HttpClientManager가 사용하는 RateLimiter를 가져온다.
+     */
+    public static RateLimiter getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * 초당 전송 Byte 수(업로드, 다운로드 각각)를 제한한다.
+     *
+     * @param host Host 이름. ({@link #ANY_HOST}이면 모든 Host의 합계)
+     * @param trafficClass Traffic Class.
+     * @param bytesPerSecond 초당 Byte 수. (0 이하이면 제한하지 않는다)
+     */
+    public void setBytesPerSecond(String host, TrafficClass trafficClass, long bytesPerSecond) {
+        String key = key(host, trafficClass);
+        if (bytesPerSecond <= 0) {
+            mByteBuckets.remove(key);
+        } else {
+            mByteBuckets.put(key, new TokenBucket(bytesPerSecond, Math.max(
+                    ThrottledEntity.CHUNK_SIZE, bytesPerSecond * BYTE_BURST_SECONDS)));
+        }
+    }
+
+    /**
+     * 초당 요청 수를 제한한다.
+     *
+     * @param host Host 이름. ({@link #ANY_HOST}이면 모든 Host의 합계)
+     * @param trafficClass Traffic Class.
+     * @param requestsPerSecond 초당 요청 수. (0 이하이면 제한하지 않는다)
+     */
+    public void setRequestsPerSecond(String host, TrafficClass trafficClass,
+            double requestsPerSecond) {
+        String key = key(host, trafficClass);
+        if (requestsPerSecond <= 0) {
+            mRequestBuckets.remove(key);
+        } else {
+            mRequestBuckets.put(key, new TokenBucket(requestsPerSecond, Math.max(1,
+                    requestsPerSecond)));
+        }
+    }
+
+    /**
+     * 모든 제한을 해제한다.
+     */
+    public void clear() {
+        mRequestBuckets.clear();
+        mByteBuckets.clear();
+    }
+
+    /** 설정된 제한이 있는지 확인한다. */
+    boolean isEnabled() {
+        return !mRequestBuckets.isEmpty() || !mByteBuckets.isEmpty();
+    }
+
+    /** 전송 Byte 제한이 있는지 확인한다. */
+    boolean isByteLimited(String host, TrafficClass trafficClass) {
+        return mByteBuckets.containsKey(key(host, trafficClass))
+                || mByteBuckets.containsKey(key(ANY_HOST, trafficClass));
+    }
+
+    /**
+     * 요청 하나를 보낼 수 있을 때까지 기다린다.
+     */
+    void acquireRequest(String host, TrafficClass trafficClass) throws InterruptedIOException {
+        acquire(mRequestBuckets, host, trafficClass, 1);
+    }
+
+    /**
+     * Byte를 전송할 수 있을 때까지 기다린다.
+     */
+    void acquireBytes(String host, TrafficClass trafficClass, int bytes)
+            throws InterruptedIOException {
+        acquire(mByteBuckets, host, trafficClass, bytes);
+    }
+
+    /**
+     * 요청의 Traffic Class를 가져온다. 지정하지 않은 경우 Prefetch Thread에서 실행되면 BACKGROUND, 아니면
+     * INTERACTIVE이다.
+     */
+    static TrafficClass getTrafficClass(HttpRequest request) {
+        Object value = request.getParams().getParameter(PARAM_TRAFFIC_CLASS);
+        if (value instanceof TrafficClass) {
+            return (TrafficClass) value;
+        }
+        return PrefetchLane.isPrefetchThread() ? TrafficClass.BACKGROUND
+                : TrafficClass.INTERACTIVE;
+    }
+
+    private static void acquire(ConcurrentHashMap<String, TokenBucket> buckets, String host,
+            TrafficClass trafficClass, int count) throws InterruptedIOException {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        TokenBucket bucket = buckets.get(key(host, trafficClass));
+        if (bucket != null) {
+            bucket.acquire(count);
+        }
+        bucket = buckets.get(key(ANY_HOST, trafficClass));
+        if (bucket != null) {
+            bucket.acquire(count);
+        }
+    }
+
+    private static String key(String host, TrafficClass trafficClass) {
+        return trafficClass.name() + '|' + (host != null ? host.toLowerCase() : ANY_HOST);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 영구 Redirect(301, 308)의 이전 URL과 새 URL을 보관한다. <br />
+ * 보관된 URL로 요청하면 서버를 거치지 않고 바로 새 URL로 요청하여 Redirect 왕복을 줄인다. 최대 개수를 넘으면 가장
+ * 오래 사용하지 않은 항목부터 삭제한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 14.
+ * @version 1.0
+ */
+public class RedirectCache {
+
+    /** 기본 최대 보관 개수. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** Redirect가 연속으로 이어진 경우 따라갈 최대 횟수. (순환 방지) */
+    private static final int MAX_CHAIN = 5;
+
+    private final LinkedHashMap<String, URI> mMap;
+
+    public RedirectCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 최대 보관 개수.
+     */
+    public RedirectCache(final int capacity) {
+        this.mMap = new LinkedHashMap<String, URI>(capacity / 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, URI> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 영구 Redirect 정보를 저장한다.
+     *
+     * @param from 요청한 URL.
+     * @param to Location URL.
+     */
+    public synchronized void put(URI from, URI to) {
+        if (from.equals(to)) {
+            return;
+        }
+        mMap.put(from.toString(), to);
+    }
+
+    /**
+     * 영구 Redirect된 최종 URL을 찾는다.
+     *
+     * @param uri 요청할 URL.
+     * @return 새 URL. (저장된 정보가 없으면 null)
+     */
+    public synchronized URI get(URI uri) {
+        URI target = null;
+        String key = uri.toString();
+        for (int i = 0; i < MAX_CHAIN; i++) {
+            URI next = mMap.get(key);
+            if (next == null) {
+                break;
+            }
+            target = next;
+            key = next.toString();
+        }
+        return target;
+    }
+
+    public synchronized void remove(URI from) {
+        mMap.remove(from.toString());
+    }
+
+    public synchronized void clear() {
+        mMap.clear();
+    }
+
+    public synchronized int size() {
+        return mMap.size();
+    }
+}
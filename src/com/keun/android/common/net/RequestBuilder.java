@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.net.CountingMultipartEntity.ProgressListener;
+import com.keun.android.common.net.HttpClientManager.Type;
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.message.HeaderGroup;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RequestTemplate}을 기반으로 요청마다 달라지는 정보(Parameter, Header, Body, 파일)만 추가하여
+ * HttpUriRequest를 생성한다. <br />
+ * Template의 Header는 이미 구성되어 있으므로 요청 시 추가 정보만 설정한다. RequestBuilder는 Thread에
+ * 안전하지 않으므로 요청마다 새로 생성하여 사용한다.
+ *
+ * <pre>
+ * HttpResponse response = manager.send(template.post(&quot;/upload&quot;)
+ *         .addParam(&quot;title&quot;, title)
+ *         .addFile(&quot;image&quot;, path)
+ *         .setProgressListener(listener));
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 6.
+ * @version 1.0
+ * @see RequestTemplate
+ */
+public final class RequestBuilder {
+
+    private final RequestTemplate mTemplate;
+    private final Type mType;
+    private final String mUrl;
+
+    private String mEncoding;
+    private List<Header> mHeaders;
+    private List<Header> mCookies;
+    private List<NameValuePair> mParams;
+    private List<NameValuePair> mFiles;
+    private ProgressListener mListener;
+    private String mContentType;
+    private byte[] mBody;
+    private HttpEntity mEntity;
+    private TrafficClass mTrafficClass;
+
+    RequestBuilder(RequestTemplate template, Type type, String url) {
+        this.mTemplate = template;
+        this.mType = type;
+        this.mUrl = url;
+        this.mEncoding = template.getEncoding();
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 요청에 추가된 파라미터 리스트를 가져온다.
+     *
+     * @return 파라미터 리스트. (없으면 null)
+     */
+    public List<NameValuePair> getParams() {
+        return mParams;
+    }
+
+    /**
+     * Template의 Encoding 대신 사용할 Parameter Encoding을 설정한다.
+     */
+    public RequestBuilder setEncoding(String encoding) {
+        if (encoding != null) {
+            this.mEncoding = encoding;
+        }
+        return this;
+    }
+
+    public RequestBuilder addHeader(String name, String value) {
+        return addHeader(new BasicHeader(name, value));
+    }
+
+    public RequestBuilder addHeader(Header header) {
+        if (header != null) {
+            if (mHeaders == null) {
+                mHeaders = new ArrayList<Header>();
+            }
+            mHeaders.add(header);
+        }
+        return this;
+    }
+
+    public RequestBuilder addHeaders(HeaderGroup headers) {
+        if (headers != null) {
+            for (Header header : headers.getAllHeaders()) {
+                addHeader(header);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 이번 요청에만 사용할 Cookie를 추가한다.
+     */
+    public RequestBuilder setCookies(CookieStore cookies) {
+        if (cookies != null) {
+            List<Header> headers = RequestTemplate.formatCookies(cookies.getCookies());
+            if (headers.size() > 0) {
+                mCookies = headers;
+            }
+        }
+        return this;
+    }
+
+    public RequestBuilder addParam(String name, String value) {
+        return addParam(new BasicNameValuePair(name, value));
+    }
+
+    public RequestBuilder addParam(NameValuePair param) {
+        if (param != null) {
+            if (mParams == null) {
+                mParams = new ArrayList<NameValuePair>();
+            }
+            mParams.add(param);
+        }
+        return this;
+    }
+
+    public RequestBuilder addParams(List<NameValuePair> params) {
+        if (params != null && params.size() > 0) {
+            if (mParams == null) {
+                mParams = new ArrayList<NameValuePair>(params);
+            } else {
+                mParams.addAll(params);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 업로드 할 파일을 추가한다. (POST 전용)
+     *
+     * @param name 파라미터 이름.
+     * @param path 파일 경로.
+     */
+    public RequestBuilder addFile(String name, String path) {
+        if (mFiles == null) {
+            mFiles = new ArrayList<NameValuePair>();
+        }
+        mFiles.add(new BasicNameValuePair(name, path));
+        return this;
+    }
+
+    public RequestBuilder addFiles(List<NameValuePair> files) {
+        if (files != null && files.size() > 0) {
+            if (mFiles == null) {
+                mFiles = new ArrayList<NameValuePair>(files);
+            } else {
+                mFiles.addAll(files);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 업로드 진행률을 받을 Listener를 설정한다.
+     */
+    public RequestBuilder setProgressListener(ProgressListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    /**
+     * Http Body에 전달 할 정보를 설정한다. (PUT/POST 전용)
+     *
+     * @param contentType Content Type (Null인 경우 text/plain)
+     * @param body Body 정보.
+     */
+    public RequestBuilder setBody(String contentType, byte[] body) {
+        this.mContentType = contentType;
+        this.mBody = body;
+        return this;
+    }
+
+    /**
+     * Http Body에 전달 할 Entity를 직접 설정한다. (PUT/POST 전용)
+     */
+    public RequestBuilder setEntity(HttpEntity entity) {
+        this.mEntity = entity;
+        return this;
+    }
+
+    /**
+     * 요청의 Traffic Class를 설정한다. {@link RateLimiter}에 설정된 Class별 제한이 적용된다.
+     */
+    public RequestBuilder setTrafficClass(TrafficClass trafficClass) {
+        this.mTrafficClass = trafficClass;
+        return this;
+    }
+
+    /**
+     * 설정된 정보로 HttpUriRequest를 생성한다.
+     *
+     * @return HttpUriRequest
+     * @throws UnsupportedEncodingException
+     */
+    public HttpUriRequest build() throws UnsupportedEncodingException {
+        HttpRequestBase request;
+        switch (mType) {
+            case PUT: {
+                HttpPut put = new HttpPut(appendParams(mUrl));
+                if (mEntity != null) {
+                    put.setEntity(mEntity);
+                } else if (mBody != null) {
+                    setBodyEntity(put);
+                }
+                request = put;
+                break;
+            }
+            case POST:
+            case UPLOAD: {
+                HttpPost post = new HttpPost(mUrl);
+                if (mEntity != null) {
+                    post.setEntity(mEntity);
+                } else if (mFiles != null && mFiles.size() > 0) {
+                    MultipartEntity entity = null;
+                    if (mListener != null) {
+                        entity = new CountingMultipartEntity(mListener);
+                    } else {
+                        entity = new MultipartEntity();
+                    }
+                    for (NameValuePair pair : mFiles) {
+                        entity.addPart(pair.getName(), new FileBody(new File(pair.getValue())));
+                    }
+                    if (mParams != null) {
+                        for (NameValuePair pair : mParams) {
+                            entity.addPart(pair.getName(), new StringBody(pair.getValue()));
+                        }
+                    }
+                    post.setEntity(entity);
+                } else if (mBody != null) {
+                    setBodyEntity(post);
+                } else if (mParams != null && mParams.size() > 0) {
+                    post.setEntity(new UrlEncodedFormEntity(mParams, mEncoding));
+                    post.getParams().setBooleanParameter(
+                            CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
+                }
+                request = post;
+                break;
+            }
+            case DELETE: {
+                request = new HttpDelete(appendParams(mUrl));
+                break;
+            }
+            case GET:
+            default: {
+                request = new HttpGet(appendParams(mUrl));
+                break;
+            }
+        }
+
+        // Template Header를 먼저 설정하고 요청 Header를 추가한다.
+        if (mCookies != null) {
+            for (Header header : mCookies) {
+                request.addHeader(header);
+            }
+        }
+        for (Header header : mTemplate.headers()) {
+            request.addHeader(header);
+        }
+        if (mHeaders != null) {
+            for (Header header : mHeaders) {
+                request.addHeader(header);
+            }
+        }
+
+        // Template에 Timeout이 설정된 경우에만 요청 단위로 설정한다.
+        HttpParams params = request.getParams();
+        if (mTemplate.getConnectionTimeout() != RequestTemplate.TIMEOUT_DEFAULT) {
+            HttpConnectionParams.setConnectionTimeout(params, mTemplate.getConnectionTimeout());
+        }
+        if (mTemplate.getSoTimeout() != RequestTemplate.TIMEOUT_DEFAULT) {
+            HttpConnectionParams.setSoTimeout(params, mTemplate.getSoTimeout());
+        }
+        if (mTrafficClass != null) {
+            params.setParameter(RateLimiter.PARAM_TRAFFIC_CLASS, mTrafficClass);
+        }
+        return request;
+    }
+
+    private void setBodyEntity(HttpEntityEnclosingRequestBase request) {
+        String contentType = (mContentType == null ? "text/plain" : mContentType);
+        ByteArrayEntity entity = new ByteArrayEntity(mBody);
+        entity.setContentType(contentType);
+        request.setEntity(entity);
+        request.getParams().setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
+        request.addHeader("Accept", contentType);
+        request.addHeader("Content-Type", contentType);
+    }
+
+    /** GET/PUT/DELETE는 파라미터를 URL에 추가한다. */
+    private String appendParams(String url) {
+        if (mParams != null && mParams.size() > 0) {
+            return url + (url.lastIndexOf("?") > 0 ? "&" : "?")
+                    + HttpClientManager.format(mParams, mEncoding);
+        }
+        return url;
+    }
+}
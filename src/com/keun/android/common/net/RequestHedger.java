@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import android.os.SystemClock;
+
+import com.keun.android.common.utils.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 멱등(GET/HEAD) 요청이 지연 시간 안에 응답하지 않으면 같은 요청을 다른 Connection으로 한번 더 보내고(Hedging),
+ * 먼저 도착한 응답을 사용한다. 늦은 요청은 abort()하여 Connection을 반환한다. <br />
+ * 지연 시간은 고정 값 또는 Host의 최근 응답 시간 p95를 사용하며, Hedge 요청은 전체 요청의 일정 비율(Budget)을 넘지
+ * 않는다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 16.
+ * @version 1.0
+ */
+abstract class RequestHedger {
+
+    /** 지연 시간으로 Host의 p95를 사용한다. */
+    public static final long DELAY_P95 = -1;
+
+    /** Hedge 요청 비율. (전체 요청의 5%) */
+    public static final float DEFAULT_BUDGET = 0.05f;
+
+    /** 쌓아둘 수 있는 최대 Hedge 개수. (순간적으로 몰리는 Hedge를 제한한다) */
+    private static final float MAX_TOKENS = 10;
+
+    private static final int MAX_THREADS = 8;
+
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(0, MAX_THREADS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RequestHedger #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private volatile long mDelay = DELAY_P95;
+    private volatile float mBudget = DEFAULT_BUDGET;
+
+    private final Object mTokenLock = new Object();
+    private float mTokens;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mHedgeCount = new AtomicLong();
+    private final AtomicLong mHedgeWinCount = new AtomicLong();
+
+    /**
+     * 요청 하나를 실행한다. 여러 Thread에서 동시에 호출된다.
+     */
+    protected abstract HttpResponse executeOnce(HttpUriRequest request) throws IOException;
+
+    /**
+     * 요청이 끝난 후 응답 시간을 전달 받는다.
+     */
+    protected void onLatency(String host, long millis) {
+    }
+
+    /**
+     * @param delay Hedge 요청을 보내기 전 기다리는 시간(ms). {@link #DELAY_P95}이면 Host의 p95를 사용한다.
+     */
+    void setDelay(long delay) {
+        this.mDelay = delay;
+    }
+
+    /**
+     * @param budget 전체 요청 대비 Hedge 요청의 최대 비율. (0.0 ~ 1.0)
+     */
+    void setBudget(float budget) {
+        this.mBudget = Math.max(0f, Math.min(budget, 1f));
+    }
+
+    String getStats() {
+        return "RequestHedger [request=" + mRequestCount.get() + ", hedge=" + mHedgeCount.get()
+                + ", hedgeWin=" + mHedgeWinCount.get() + "]";
+    }
+
+    /**
+     * 요청을 실행하고 지연되면 Hedge 요청을 보낸다.
+     *
+     * @param request GET/HEAD 요청.
+     * @return 먼저 도착한 응답.
+     * @throws IOException 두 요청이 모두 실패한 경우.
+     */
+    HttpResponse execute(HttpUriRequest request) throws IOException {
+        mRequestCount.incrementAndGet();
+        synchronized (mTokenLock) {
+            mTokens = Math.min(MAX_TOKENS, mTokens + mBudget);
+        }
+        String host = request.getURI().getHost();
+        long delay = mDelay != DELAY_P95 ? mDelay : LatencyTracker.getDefault().getPercentile(
+                host, 0.95);
+        if (delay < 0) { // 응답 시간 정보가 부족하면 Hedging하지 않는다.
+            return executeTimed(request, host);
+        }
+
+        Race race = new Race(host);
+        Attempt primary = new Attempt(race, request, false);
+        if (!race.start(primary)) {
+            return executeTimed(request, host);
+        }
+
+        boolean interrupted = false;
+        try {
+            synchronized (race) {
+                race.awaitLocked(delay);
+                if (race.mWinner == null && race.mPending > 0 && tryAcquireToken()) {
+                    HttpUriRequest copy = copy(request);
+                    if (copy != null && race.start(new Attempt(race, copy, true))) {
+                        mHedgeCount.incrementAndGet();
+                        if (Logger.isDebugEnabled()) {
+                            Logger.d(getClass(), "Hedge request (" + delay + "ms) : "
+                                    + request.getURI());
+                        }
+                    }
+                }
+                race.awaitLocked(0);
+                if (race.mWinner != null) {
+                    if (race.mWinner.mIsHedge) {
+                        mHedgeWinCount.incrementAndGet();
+                    }
+                    race.abortLosers();
+                    return race.mResponse;
+                }
+                throw race.mError;
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            race.abortAll();
+            throw new InterruptedIOException("Hedged request interrupted");
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private HttpResponse executeTimed(HttpUriRequest request, String host) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HttpResponse response = executeOnce(request);
+        onLatency(host, SystemClock.elapsedRealtime() - start);
+        return response;
+    }
+
+    private boolean tryAcquireToken() {
+        synchronized (mTokenLock) {
+            if (mTokens >= 1f) {
+                mTokens -= 1f;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /** 같은 URI, Header, Parameter로 새 요청을 생성한다. */
+    private static HttpUriRequest copy(HttpUriRequest request) {
+        HttpRequestBase copy;
+        if (HttpGet.METHOD_NAME.equals(request.getMethod())) {
+            copy = new HttpGet(request.getURI());
+        } else if (HttpHead.METHOD_NAME.equals(request.getMethod())) {
+            copy = new HttpHead(request.getURI());
+        } else {
+            return null;
+        }
+        for (Header header : request.getAllHeaders()) {
+            copy.addHeader(header);
+        }
+        copy.setParams(request.getParams());
+        return copy;
+    }
+
+    private static void consume(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(RequestHedger.class, e.toString());
+                }
+            }
+        }
+    }
+
+    /** 원래 요청과 Hedge 요청 중 먼저 응답한 요청을 결정한다. */
+    private final class Race {
+        private final String mHost;
+        private final Attempt[] mAttempts = new Attempt[2];
+        private int mCount;
+        private int mPending;
+        private Attempt mWinner;
+        private HttpResponse mResponse;
+        private IOException mError;
+
+        Race(String host) {
+            this.mHost = host;
+        }
+
+        synchronized boolean start(Attempt attempt) {
+            try {
+                sExecutor.execute(attempt);
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+            mAttempts[mCount++] = attempt;
+            mPending++;
+            return true;
+        }
+
+        /** 응답이 도착하거나, 모든 요청이 실패하거나, timeout이 지날 때까지 기다린다. (0이면 무한) */
+        void awaitLocked(long timeout) throws InterruptedException {
+            long end = SystemClock.elapsedRealtime() + timeout;
+            while (mWinner == null && mPending > 0) {
+                if (timeout == 0) {
+                    wait();
+                } else {
+                    long remaining = end - SystemClock.elapsedRealtime();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    wait(remaining);
+                }
+            }
+        }
+
+        /** @return 먼저 도착한 응답이면 true. */
+        synchronized boolean complete(Attempt attempt, HttpResponse response, long latency) {
+            mPending--;
+            if (mWinner != null) {
+                notifyAll();
+                return false;
+            }
+            mWinner = attempt;
+            mResponse = response;
+            onLatency(mHost, latency);
+            notifyAll();
+            return true;
+        }
+
+        synchronized void fail(Attempt attempt, IOException e) {
+            mPending--;
+            if (mError == null) {
+                mError = e;
+            }
+            notifyAll();
+        }
+
+        synchronized void abortLosers() {
+            for (int i = 0; i < mCount; i++) {
+                if (mAttempts[i] != mWinner) {
+                    mAttempts[i].mRequest.abort();
+                }
+            }
+        }
+
+        synchronized void abortAll() {
+            for (int i = 0; i < mCount; i++) {
+                mAttempts[i].mRequest.abort();
+            }
+        }
+    }
+
+    private final class Attempt implements Runnable {
+        private final Race mRace;
+        private final HttpUriRequest mRequest;
+        private final boolean mIsHedge;
+
+        Attempt(Race race, HttpUriRequest request, boolean hedge) {
+            this.mRace = race;
+            this.mRequest = request;
+            this.mIsHedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                HttpResponse response = executeOnce(mRequest);
+                if (!mRace.complete(this, response, SystemClock.elapsedRealtime() - start)) {
+                    consume(response); // 늦게 도착한 응답은 버린다.
+                }
+            } catch (IOException e) {
+                mRace.fail(this, e);
+            } catch (RuntimeException e) {
+                IOException ioe = new IOException(e.toString());
+                ioe.initCause(e);
+                mRace.fail(this, ioe);
+            }
+        }
+    }
+}
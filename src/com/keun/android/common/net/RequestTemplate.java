@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.net.HttpClientManager.Type;
+import com.keun.android.common.net.codec.ContentCodecRegistry;
+
+import org.apache.http.Header;
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BrowserCompatSpec;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.HeaderGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP Request 시 공통으로 사용하는 기본 정보(Header, Encoding, Cookie, Timeout)를 정의한다. <br />
+ * Header, Cookie, Accept-Encoding은 Template을 생성할 때 한 번만 구성하며, 생성 후에는 변경되지 않으므로
+ * 여러 Thread에서 공유하여 사용할 수 있다. 요청마다 달라지는 정보는 {@link RequestBuilder}에 추가한다.
+ *
+ * <pre>
+ * RequestTemplate template = new RequestTemplate.Builder()
+ *         .setBaseUrl(&quot;http://api.example.com&quot;)
+ *         .addHeader(&quot;X-App-Version&quot;, &quot;1.0&quot;)
+ *         .setAcceptGzip(true)
+ *         .build();
+ *
+ * HttpResponse response = manager.send(template.get(&quot;/list&quot;).addParam(&quot;page&quot;, &quot;1&quot;));
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 6.
+ * @version 1.0
+ * @see RequestBuilder
+ */
+public final class RequestTemplate {
+
+    /** Timeout을 설정하지 않은 경우 HttpClient의 설정을 그대로 사용한다. */
+    public static final int TIMEOUT_DEFAULT = -1;
+
+    /** Cookie Header를 생성한다. (formatCookies는 상태를 가지지 않으므로 공유한다.) */
+    static final BrowserCompatSpec COOKIE_SPEC = new BrowserCompatSpec();
+
+    private final String mBaseUrl;
+    private final String mEncoding;
+    private final Header[] mHeaders;
+    private final List<Header> mDefaultHeaders;
+    private final List<Cookie> mCookies;
+    private final boolean mIsAcceptGzip;
+    private final int mConnectionTimeout;
+    private final int mSoTimeout;
+
+    private RequestTemplate(Builder builder) {
+        this.mBaseUrl = builder.mBaseUrl;
+        this.mEncoding = builder.mEncoding;
+        this.mDefaultHeaders = new ArrayList<Header>(builder.mHeaders);
+        this.mCookies = new ArrayList<Cookie>(builder.mCookies);
+        this.mIsAcceptGzip = builder.mIsAcceptGzip;
+        this.mConnectionTimeout = builder.mConnectionTimeout;
+        this.mSoTimeout = builder.mSoTimeout;
+
+        // Cookie, Accept-Encoding, 기본 Header 순서로 한 번만 구성한다.
+        List<Header> headers = new ArrayList<Header>();
+        headers.addAll(formatCookies(mCookies));
+        if (mIsAcceptGzip) {
+            // 등록된 Codec(gzip, deflate)을 모두 Accept-Encoding으로 요청한다.
+            String acceptEncoding = ContentCodecRegistry.getDefault().getAcceptEncoding();
+            if (acceptEncoding != null) {
+                headers.add(new BasicHeader("Accept-Encoding", acceptEncoding));
+            }
+        }
+        headers.addAll(mDefaultHeaders);
+        this.mHeaders = headers.toArray(new Header[headers.size()]);
+    }
+
+    /**
+     * Cookie 목록을 Cookie Header로 변환한다.
+     *
+     * @param cookies Cookie 목록.
+     * @return Cookie Header 목록. (Cookie가 없으면 빈 목록)
+     */
+    static List<Header> formatCookies(List<Cookie> cookies) {
+        if (cookies == null || cookies.size() <= 0) {
+            return new ArrayList<Header>(0);
+        }
+        return COOKIE_SPEC.formatCookies(cookies);
+    }
+
+    /**
+     * Template의 기본 URL을 가져온다.
+     *
+     * @return 기본 URL. (설정하지 않은 경우 null)
+     */
+    public String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    /**
+     * Parameter Encoding을 가져온다.
+     */
+    public String getEncoding() {
+        return mEncoding;
+    }
+
+    /**
+     * 요청마다 추가되는 기본 Header(Cookie, Accept-Encoding 포함)를 가져온다.
+     *
+     * @return Header 배열의 복사본.
+     */
+    public Header[] getHeaders() {
+        Header[] headers = new Header[mHeaders.length];
+        System.arraycopy(mHeaders, 0, headers, 0, mHeaders.length);
+        return headers;
+    }
+
+    /**
+     * 구성이 끝난 Header 배열을 복사없이 가져온다. (RequestBuilder 전용)
+     */
+    Header[] headers() {
+        return mHeaders;
+    }
+
+    public boolean isAcceptGzip() {
+        return mIsAcceptGzip;
+    }
+
+    public int getConnectionTimeout() {
+        return mConnectionTimeout;
+    }
+
+    public int getSoTimeout() {
+        return mSoTimeout;
+    }
+
+    /**
+     * Http Get 요청을 생성한다.
+     *
+     * @param url Http URL. (기본 URL이 설정된 경우 상대 경로 사용 가능)
+     * @return RequestBuilder
+     */
+    public RequestBuilder get(String url) {
+        return newRequest(Type.GET, url);
+    }
+
+    /**
+     * Http Put 요청을 생성한다.
+     *
+     * @param url Http URL. (기본 URL이 설정된 경우 상대 경로 사용 가능)
+     * @return RequestBuilder
+     */
+    public RequestBuilder put(String url) {
+        return newRequest(Type.PUT, url);
+    }
+
+    /**
+     * Http Post 요청을 생성한다.
+     *
+     * @param url Http URL. (기본 URL이 설정된 경우 상대 경로 사용 가능)
+     * @return RequestBuilder
+     */
+    public RequestBuilder post(String url) {
+        return newRequest(Type.POST, url);
+    }
+
+    /**
+     * Http Delete 요청을 생성한다.
+     *
+     * @param url Http URL. (기본 URL이 설정된 경우 상대 경로 사용 가능)
+     * @return RequestBuilder
+     */
+    public RequestBuilder delete(String url) {
+        return newRequest(Type.DELETE, url);
+    }
+
+    /**
+     * 요청 타입에 맞는 RequestBuilder를 생성한다.
+     *
+     * @param type Get/Put/Post/Delete 타입.
+     * @param url Http URL. (기본 URL이 설정된 경우 상대 경로 사용 가능)
+     * @return RequestBuilder
+     */
+    public RequestBuilder newRequest(Type type, String url) {
+        return new RequestBuilder(this, type, resolveUrl(url));
+    }
+
+    /**
+     * 기본 URL과 요청 URL을 합친다. 기본 URL은 Template 생성 시 이미 검사하였으므로 상대 경로의 공백만
+     * 치환한다.
+     */
+    private String resolveUrl(String url) {
+        if (url == null) {
+            throw new IllegalArgumentException("URL may not be null");
+        }
+        if (mBaseUrl == null || url.indexOf("://") != -1) {
+            return HttpClientManager.urlFilter(url);
+        }
+        String path = url.trim().replace(" ", "%20");
+        if (path.length() == 0) {
+            return mBaseUrl;
+        }
+        boolean baseSlash = mBaseUrl.endsWith("/");
+        boolean pathSlash = path.startsWith("/");
+        if (baseSlash && pathSlash) {
+            return mBaseUrl + path.substring(1);
+        } else if (!baseSlash && !pathSlash && !path.startsWith("?")) {
+            return mBaseUrl + "/" + path;
+        }
+        return mBaseUrl + path;
+    }
+
+    /**
+     * 현재 Template의 설정을 복사한 Builder를 생성한다. 기존 Template을 기반으로 새로운 Template을 만들 때
+     * 사용한다.
+     *
+     * @return Builder
+     */
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * RequestTemplate을 생성한다.
+     *
+     * @author Keun-yang Son
+     * @since 2012. 2. 6.
+     * @version 1.0
+     */
+    public static final class Builder {
+        private String mBaseUrl;
+        private String mEncoding = Config.UTF_8;
+        private final List<Header> mHeaders = new ArrayList<Header>();
+        private final List<Cookie> mCookies = new ArrayList<Cookie>();
+        private boolean mIsAcceptGzip;
+        private int mConnectionTimeout = TIMEOUT_DEFAULT;
+        private int mSoTimeout = TIMEOUT_DEFAULT;
+
+        public Builder() {
+        }
+
+        private Builder(RequestTemplate template) {
+            this.mBaseUrl = template.mBaseUrl;
+            this.mEncoding = template.mEncoding;
+            this.mCookies.addAll(template.mCookies);
+            this.mIsAcceptGzip = template.mIsAcceptGzip;
+            this.mConnectionTimeout = template.mConnectionTimeout;
+            this.mSoTimeout = template.mSoTimeout;
+
+            // Cookie와 Accept-Encoding은 build() 시 다시 구성하므로 기본 Header만 복사한다.
+            this.mHeaders.addAll(template.mDefaultHeaders);
+        }
+
+        /**
+         * 기본 URL을 설정한다. 요청 시 상대 경로를 사용하면 기본 URL 뒤에 추가된다.
+         */
+        public Builder setBaseUrl(String baseUrl) {
+            this.mBaseUrl = (baseUrl == null ? null : HttpClientManager.urlFilter(baseUrl));
+            return this;
+        }
+
+        /**
+         * Parameter Encoding을 설정한다. (기본값 UTF-8)
+         */
+        public Builder setEncoding(String encoding) {
+            this.mEncoding = (encoding == null ? Config.UTF_8 : encoding);
+            return this;
+        }
+
+        public Builder addHeader(String name, String value) {
+            this.mHeaders.add(new BasicHeader(name, value));
+            return this;
+        }
+
+        public Builder addHeader(Header header) {
+            if (header != null) {
+                this.mHeaders.add(header);
+            }
+            return this;
+        }
+
+        public Builder addHeaders(HeaderGroup headers) {
+            if (headers != null) {
+                for (Header header : headers.getAllHeaders()) {
+                    this.mHeaders.add(header);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 같은 이름의 Header를 모두 삭제한다.
+         */
+        public Builder removeHeaders(String name) {
+            for (int i = mHeaders.size() - 1; i >= 0; i--) {
+                if (mHeaders.get(i).getName().equalsIgnoreCase(name)) {
+                    mHeaders.remove(i);
+                }
+            }
+            return this;
+        }
+
+        public Builder addCookie(Cookie cookie) {
+            if (cookie != null) {
+                this.mCookies.add(cookie);
+            }
+            return this;
+        }
+
+        /**
+         * CookieStore의 Cookie를 추가한다. Template 생성 시점의 Cookie만 사용한다.
+         */
+        public Builder addCookies(CookieStore cookies) {
+            if (cookies != null) {
+                this.mCookies.addAll(cookies.getCookies());
+            }
+            return this;
+        }
+
+        public Builder clearCookies() {
+            this.mCookies.clear();
+            return this;
+        }
+
+        /**
+         * Network Response 시 압축(gzip, deflate) 사용 여부를 설정한다. Accept-Encoding에는
+         * {@link ContentCodecRegistry}에 등록된 Codec이 모두 포함된다.
+         *
+         * @param isAcceptGzip 압축 사용(true) / 미사용(false)
+         */
+        public Builder setAcceptGzip(boolean isAcceptGzip) {
+            this.mIsAcceptGzip = isAcceptGzip;
+            return this;
+        }
+
+        /**
+         * Connection/Socket Timeout 시간을 설정한다.
+         */
+        public Builder setTimeout(int timeout) {
+            this.mConnectionTimeout = timeout;
+            this.mSoTimeout = timeout;
+            return this;
+        }
+
+        public Builder setConnectionTimeout(int timeout) {
+            this.mConnectionTimeout = timeout;
+            return this;
+        }
+
+        public Builder setSoTimeout(int timeout) {
+            this.mSoTimeout = timeout;
+            return this;
+        }
+
+        public RequestTemplate build() {
+            return new RequestTemplate(this);
+        }
+    }
+}
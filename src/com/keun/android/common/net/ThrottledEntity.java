@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 읽기(getContent)와 쓰기(writeTo) 속도를 {@link RateLimiter}로 제한하는 Entity. <br />
+ * 요청 Entity(업로드, CountingMultipartEntity 포함)와 응답 Entity(다운로드) 모두에 사용한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 18.
+ * @version 1.0
+ */
+class ThrottledEntity extends HttpEntityWrapper {
+
+    /** 한번에 읽고 쓰는 최대 크기. (작을수록 속도가 고르게 제한된다) */
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private final RateLimiter mLimiter;
+    private final String mHost;
+    private final TrafficClass mTrafficClass;
+
+    ThrottledEntity(HttpEntity wrapped, RateLimiter limiter, String host,
+            TrafficClass trafficClass) {
+        super(wrapped);
+        this.mLimiter = limiter;
+        this.mHost = host;
+        this.mTrafficClass = trafficClass;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream in = wrappedEntity.getContent();
+        return in != null ? new ThrottledInputStream(in) : null;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        wrappedEntity.writeTo(new ThrottledOutputStream(outstream));
+    }
+
+    private final class ThrottledInputStream extends FilterInputStream {
+        ThrottledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                mLimiter.acquireBytes(mHost, mTrafficClass, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, Math.min(len, CHUNK_SIZE));
+            if (read > 0) {
+                mLimiter.acquireBytes(mHost, mTrafficClass, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, CHUNK_SIZE));
+            if (skipped > 0) {
+                mLimiter.acquireBytes(mHost, mTrafficClass, (int) skipped);
+            }
+            return skipped;
+        }
+    }
+
+    private final class ThrottledOutputStream extends FilterOutputStream {
+        ThrottledOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mLimiter.acquireBytes(mHost, mTrafficClass, 1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, CHUNK_SIZE);
+                mLimiter.acquireBytes(mHost, mTrafficClass, chunk);
+                out.write(b, off, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net;
+
+import android.os.SystemClock;
+
+import java.io.InterruptedIOException;
+
+/**
+ * 초당 일정한 개수의 Token을 채우는 Token Bucket. <br />
+ * Token이 부족해도 요청한 개수를 먼저 빼고(부채), 부족한 만큼 채워질 때까지 기다린다. 그래서 Bucket 용량보다 큰
+ * 요청도 처리할 수 있고, 평균 속도는 항상 설정한 속도를 넘지 않는다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 18.
+ * @version 1.0
+ */
+final class TokenBucket {
+
+    /** 초당 채워지는 Token 개수. */
+    private final double mRate;
+    /** 최대로 쌓아둘 수 있는 Token 개수. (순간 허용량) */
+    private final double mCapacity;
+
+    private double mTokens;
+    private long mLastRefill;
+
+    /**
+     * @param rate 초당 채워지는 Token 개수.
+     * @param capacity 최대로 쌓아둘 수 있는 Token 개수.
+     */
+    TokenBucket(double rate, double capacity) {
+        this.mRate = rate;
+        this.mCapacity = capacity;
+        this.mTokens = capacity;
+        this.mLastRefill = SystemClock.elapsedRealtime();
+    }
+
+    double getRate() {
+        return mRate;
+    }
+
+    /**
+     * Token을 사용한다. 부족하면 채워질 때까지 기다린다.
+     *
+     * @param count Token 개수.
+     * @throws InterruptedIOException 기다리는 중 Interrupt된 경우.
+     */
+    void acquire(double count) throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            refill();
+            mTokens -= count;
+            wait = mTokens < 0 ? (long) Math.ceil(-mTokens * 1000 / mRate) : 0;
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+
+    private void refill() {
+        long now = SystemClock.elapsedRealtime();
+        if (now > mLastRefill) {
+            mTokens = Math.min(mCapacity, mTokens + (now - mLastRefill) * mRate / 1000);
+            mLastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.keun.android.common.config.Config;
+import com.keun.android.common.net.HttpClientManager;
+import com.keun.android.common.net.NetworkMonitor;
+import com.keun.android.common.net.NetworkMonitor.OnNetworkChangeListener;
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+import com.keun.android.common.net.codec.GzipCodec;
+import com.keun.android.common.utils.Crc64Utils;
+import com.keun.android.common.utils.Logger;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+/**
+ * 통계/로그와 같은 작은 Event를 모아서 하나의 gzip 압축 POST 요청으로 전송한다. <br />
+ * Event는 Memory Queue에 쌓였다가 개수/용량 제한에 도달하거나, 전송 주기가 지나거나, Network에 다시 연결되면 한번에
+ * 전송된다. 전송에 실패한 Batch는 {@link FileBatchQueue}에 저장되었다가 지수 Backoff 간격으로 재전송되며,
+ * {@link #close()} 시 남은 Event도 파일로 저장되므로 Process가 종료되어도 유실되지 않는다. <br />
+ * Batch Body는 Event를 줄바꿈(\n)으로 구분한 UTF-8 문자열이며 Content-Encoding: gzip으로 전송한다.
+ *
+ * <pre>
+ * EventBatcher batcher = new EventBatcher(context, manager, &quot;http://log.example.com/events&quot;);
+ * batcher.enqueue(&quot;{\&quot;event\&quot;:\&quot;click\&quot;}&quot;);
+ * ...
+ * batcher.close();
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 13.
+ * @version 1.0
+ */
+public class EventBatcher {
+
+    /** Batch 하나에 담을 최대 Event 개수. */
+    public static final int DEFAULT_MAX_BATCH_EVENTS = 100;
+    /** Batch 하나에 담을 최대 용량. (압축 전 64 KByte) */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+    /** 첫 Event가 들어온 후 Batch를 전송할 때까지 기다리는 시간. (1분) */
+    public static final long DEFAULT_FLUSH_INTERVAL = 60 * 1000;
+    /** 전송하지 못하고 Memory에 쌓아둘 수 있는 최대 Event 개수. 넘으면 오래된 Event부터 버린다. */
+    public static final int DEFAULT_MAX_QUEUE_EVENTS = 1000;
+
+    public static final String DEFAULT_CONTENT_TYPE = "application/x-ndjson; charset=UTF-8";
+
+    /** 파일로 보관할 최대 Batch 개수와 용량. */
+    private static final int MAX_FILE_BATCHES = 200;
+    private static final long MAX_FILE_BYTES = 2 * 1024 * 1024;
+
+    private static final GzipCodec sGzipCodec = new GzipCodec();
+
+    private final HttpClientManager mManager;
+    private final String mUrl;
+    private final FileBatchQueue mFileQueue;
+    private final NetworkMonitor mNetworkMonitor;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private int mMaxBatchEvents = DEFAULT_MAX_BATCH_EVENTS;
+    private int mMaxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long mFlushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int mMaxQueueEvents = DEFAULT_MAX_QUEUE_EVENTS;
+    private String mContentType = DEFAULT_CONTENT_TYPE;
+
+    /* mLock으로 보호한다. */
+    private final Object mLock = new Object();
+    private ArrayList<byte[]> mPending = new ArrayList<byte[]>();
+    private int mPendingBytes;
+    private boolean mFlushScheduled;
+    private boolean mClosed;
+    private long mDropped;
+
+    /* Worker Thread에서만 사용한다. */
+    private final RetryBackoff mBackoff = new RetryBackoff();
+    private int mAttempts;
+    private File mAttemptFile;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                mFlushScheduled = false;
+            }
+            if (flushPending(true)) {
+                drainFileQueue();
+            }
+        }
+    };
+
+    private final Runnable mRetryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainFileQueue();
+        }
+    };
+
+    private final OnNetworkChangeListener mNetworkListener = new OnNetworkChangeListener() {
+        @Override
+        public void onNetworkChanged(boolean isConnected) {
+            if (isConnected) {
+                // Network가 연결되면 기다리지 않고 바로 전송한다.
+                mHandler.removeCallbacks(mRetryRunnable);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mBackoff.reset();
+                    }
+                });
+                flush();
+            }
+        }
+    };
+
+    /**
+     * @param context Context
+     * @param manager Batch를 전송할 HttpClientManager. (close()는 호출자가 담당한다)
+     * @param url Batch를 전송할 URL.
+     */
+    public EventBatcher(Context context, HttpClientManager manager, String url) {
+        this(context, manager, url, new File(context.getFilesDir(), "event_batch/"
+                + Crc64Utils.crc64(url)));
+    }
+
+    /**
+     * @param context Context
+     * @param manager Batch를 전송할 HttpClientManager. (close()는 호출자가 담당한다)
+     * @param url Batch를 전송할 URL.
+     * @param directory 전송하지 못한 Batch를 저장할 디렉토리.
+     */
+    public EventBatcher(Context context, HttpClientManager manager, String url, File directory) {
+        this.mManager = manager;
+        this.mUrl = url;
+        this.mFileQueue = new FileBatchQueue(directory, MAX_FILE_BATCHES, MAX_FILE_BYTES);
+        this.mThread = new HandlerThread(getClass().getSimpleName(),
+                Process.THREAD_PRIORITY_BACKGROUND);
+        this.mThread.start();
+        this.mHandler = new Handler(mThread.getLooper());
+        this.mNetworkMonitor = NetworkMonitor.getInstance(context);
+        this.mNetworkMonitor.addListener(mNetworkListener);
+
+        // 이전 실행에서 전송하지 못한 Batch를 전송한다.
+        mHandler.post(mRetryRunnable);
+    }
+
+    public void setMaxBatchEvents(int maxBatchEvents) {
+        this.mMaxBatchEvents = Math.max(1, maxBatchEvents);
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.mMaxBatchBytes = Math.max(1, maxBatchBytes);
+    }
+
+    /**
+     * 첫 Event가 들어온 후 Batch를 전송할 때까지 기다리는 시간을 설정한다.
+     *
+     * @param flushInterval 시간(ms)
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.mFlushInterval = Math.max(0, flushInterval);
+    }
+
+    public void setMaxQueueEvents(int maxQueueEvents) {
+        this.mMaxQueueEvents = Math.max(1, maxQueueEvents);
+    }
+
+    public void setContentType(String contentType) {
+        this.mContentType = contentType;
+    }
+
+    /**
+     * Event를 Queue에 추가한다. 전송은 Worker Thread에서 처리하므로 바로 반환된다.
+     *
+     * @param event Event (UTF-8로 전송한다)
+     * @return Queue에 추가되면 true, close()된 경우 false.
+     */
+    public boolean enqueue(String event) {
+        byte[] data;
+        try {
+            data = event.getBytes(Config.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+        synchronized (mLock) {
+            if (mClosed) {
+                return false;
+            }
+            if (mPending.size() >= mMaxQueueEvents) {
+                // Worker가 처리하지 못할 만큼 쌓인 경우 오래된 Event부터 버린다.
+                mPendingBytes -= mPending.remove(0).length + 1;
+                mDropped++;
+            }
+            mPending.add(data);
+            mPendingBytes += data.length + 1;
+
+            if (mPending.size() >= mMaxBatchEvents || mPendingBytes >= mMaxBatchBytes) {
+                scheduleFlushLocked(0);
+            } else if (mPending.size() == 1) {
+                scheduleFlushLocked(mFlushInterval);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queue에 쌓인 Event와 파일로 저장된 Batch를 바로 전송한다.
+     */
+    public void flush() {
+        synchronized (mLock) {
+            if (!mClosed) {
+                scheduleFlushLocked(0);
+            }
+        }
+    }
+
+    /**
+     * 남은 Event를 파일로 저장하고 Worker Thread를 종료한다. 저장된 Event는 다음에 생성한
+     * EventBatcher가 전송한다.
+     */
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+        mNetworkMonitor.removeListener(mNetworkListener);
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.removeCallbacks(mRetryRunnable);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                flushPending(false);
+                mThread.quit();
+            }
+        });
+    }
+
+    /**
+     * Queue가 가득 차서 버린 Event 개수를 가져온다.
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDropped;
+        }
+    }
+
+    /**
+     * 파일로 저장되어 전송을 기다리는 Batch 개수를 가져온다.
+     */
+    public int getStoredBatchCount() {
+        return mFileQueue.size();
+    }
+
+    private void scheduleFlushLocked(long delay) {
+        if (delay == 0) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+        }
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, delay);
+        }
+    }
+
+    /* ====== Worker Thread ====== */
+
+    /**
+     * Memory에 쌓인 Event를 Batch로 만들어 전송한다. 전송할 수 없거나 실패하면 파일로 저장한다.
+     *
+     * @param send 전송을 시도하려면 true, 파일로 저장만 하려면 false.
+     * @return 전송에 실패하여 재전송을 예약한 경우 false.
+     */
+    private boolean flushPending(boolean send) {
+        boolean ok = true;
+        for (;;) {
+            ArrayList<byte[]> events;
+            synchronized (mLock) {
+                if (mPending.isEmpty()) {
+                    return ok;
+                }
+                events = takeBatchLocked();
+            }
+            byte[] batch;
+            try {
+                batch = encode(events);
+            } catch (IOException e) {
+                if (Logger.isErrorEnabled()) {
+                    Logger.e(getClass(), "Batch를 만들지 못했습니다.", e);
+                }
+                continue;
+            }
+            // 이전 Batch가 파일로 남아 있으면 순서를 지키기 위해 뒤에 저장한다.
+            if (send && mFileQueue.isEmpty() && mNetworkMonitor.isConnected()) {
+                int result = post(batch, events.size());
+                if (result == RetryBackoff.RESULT_SUCCESS || result == RetryBackoff.RESULT_DROP) {
+                    mBackoff.reset();
+                    continue;
+                }
+                send = ok = false;
+                scheduleRetry();
+            }
+            mFileQueue.offer(batch);
+        }
+    }
+
+    /** 파일로 저장된 Batch를 오래된 순서로 전송한다. */
+    private void drainFileQueue() {
+        File file;
+        while ((file = mFileQueue.peek()) != null) {
+            if (!mNetworkMonitor.isConnected()) {
+                return; // Network가 연결되면 다시 시도한다.
+            }
+            byte[] batch;
+            try {
+                batch = mFileQueue.read(file);
+            } catch (IOException e) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Batch 파일을 읽지 못했습니다. " + file, e);
+                }
+                mFileQueue.remove(file);
+                continue;
+            }
+            if (!file.equals(mAttemptFile)) {
+                mAttemptFile = file;
+                mAttempts = 0;
+            }
+            int result = post(batch, -1);
+            if (result == RetryBackoff.RESULT_RETRY && ++mAttempts < RetryBackoff.MAX_ATTEMPTS) {
+                scheduleRetry();
+                return;
+            }
+            if (result != RetryBackoff.RESULT_SUCCESS && Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Batch 전송에 실패하여 삭제합니다. " + file);
+            }
+            mFileQueue.remove(file);
+            mBackoff.reset();
+        }
+    }
+
+    private void scheduleRetry() {
+        long delay = mBackoff.nextDelay();
+        if (Logger.isDebugEnabled()) {
+            Logger.d(getClass(), "Batch 재전송 예약 : " + delay + "ms");
+        }
+        mHandler.removeCallbacks(mRetryRunnable);
+        mHandler.postDelayed(mRetryRunnable, delay);
+    }
+
+    private ArrayList<byte[]> takeBatchLocked() {
+        ArrayList<byte[]> events;
+        if (mPending.size() <= mMaxBatchEvents && mPendingBytes <= mMaxBatchBytes) {
+            events = mPending;
+            mPending = new ArrayList<byte[]>();
+            mPendingBytes = 0;
+            return events;
+        }
+        events = new ArrayList<byte[]>();
+        int bytes = 0;
+        while (!mPending.isEmpty() && events.size() < mMaxBatchEvents) {
+            int size = mPending.get(0).length + 1;
+            if (!events.isEmpty() && bytes + size > mMaxBatchBytes) {
+                break;
+            }
+            events.add(mPending.remove(0));
+            bytes += size;
+        }
+        mPendingBytes -= bytes;
+        return events;
+    }
+
+    private static byte[] encode(ArrayList<byte[]> events) throws IOException {
+        PoolingByteArrayOutputStream buffer = new PoolingByteArrayOutputStream();
+        try {
+            OutputStream out = sGzipCodec.encode(buffer);
+            for (byte[] event : events) {
+                out.write(event);
+                out.write('\n');
+            }
+            out.close();
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Batch를 전송한다.
+     *
+     * @return 성공(RESULT_SUCCESS), 재전송(RESULT_RETRY), 서버가 거부하여 재전송하지 않음(RESULT_DROP)
+     */
+    private int post(byte[] batch, int count) {
+        ByteArrayEntity entity = new ByteArrayEntity(batch);
+        entity.setContentType(mContentType);
+        entity.setContentEncoding(GzipCodec.ENCODING);
+        HttpResponse response = null;
+        try {
+            response = mManager.send(mManager.getTemplate().post(mUrl).setEntity(entity)
+                    .setTrafficClass(TrafficClass.BACKGROUND));
+            int status = response.getStatusLine().getStatusCode();
+            if (Logger.isDebugEnabled()) {
+                Logger.d(getClass(), "Batch 전송 (events: " + count + ", bytes: " + batch.length
+                        + ") - " + status);
+            }
+            return RetryBackoff.classify(status);
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Batch 전송 실패 : " + e.toString());
+            }
+            return RetryBackoff.RESULT_RETRY;
+        } finally {
+            if (response != null) {
+                HttpEntity responseEntity = response.getEntity();
+                if (responseEntity != null) {
+                    try {
+                        responseEntity.consumeContent();
+                    } catch (IOException e) {
+                        if (Logger.isVerboseEnabled()) {
+                            Logger.v(getClass(), e.toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
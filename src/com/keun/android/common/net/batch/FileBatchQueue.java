@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import com.keun.android.common.utils.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * 전송하지 못한 Batch를 파일로 보관하는 FIFO Queue. <br />
+ * Batch 하나를 파일 하나로 저장하며, 임시 파일에 기록한 후 이름을 바꾸므로 중간에 Process가 종료되어도 반쯤 기록된
+ * Batch가 남지 않는다. 보관 개수나 용량을 넘으면 가장 오래된 Batch부터 삭제한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 13.
+ * @version 1.0
+ */
+public class FileBatchQueue {
+
+    private static final String SUFFIX = ".batch";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final int mMaxCount;
+    private final long mMaxBytes;
+
+    /** 파일 이름(생성 시간) 순으로 정렬된 Batch 파일. */
+    private ArrayList<File> mFiles;
+    private long mTotalBytes;
+    private int mSequence;
+
+    /**
+     * @param directory Batch 파일을 저장할 디렉토리.
+     * @param maxCount 보관할 최대 Batch 개수.
+     * @param maxBytes 보관할 최대 용량.
+     */
+    public FileBatchQueue(File directory, int maxCount, long maxBytes) {
+        this.mDirectory = directory;
+        this.mMaxCount = maxCount;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Batch를 Queue의 끝에 추가한다.
+     *
+     * @param data Batch 데이터.
+     * @return 저장에 성공하면 true.
+     */
+    public synchronized boolean offer(byte[] data) {
+        load();
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            if (Logger.isErrorEnabled()) {
+                Logger.e(getClass(), "Unable to create batch directory " + mDirectory);
+            }
+            return false;
+        }
+        String name = String.format("%013d-%05d", System.currentTimeMillis(),
+                (mSequence++) % 100000);
+        File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        File file = new File(mDirectory, name + SUFFIX);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.getFD().sync();
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Batch 파일을 저장하지 못했습니다. " + temp, e);
+            }
+            temp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    if (Logger.isVerboseEnabled()) {
+                        Logger.v(getClass(), e.toString());
+                    }
+                }
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return false;
+        }
+        mFiles.add(file);
+        mTotalBytes += data.length;
+        trim();
+        return true;
+    }
+
+    /**
+     * 가장 오래된 Batch 파일을 가져온다. Queue에서 제거하지는 않는다.
+     *
+     * @return Batch 파일. (없으면 null)
+     */
+    public synchronized File peek() {
+        load();
+        return mFiles.isEmpty() ? null : mFiles.get(0);
+    }
+
+    /**
+     * Batch 파일의 내용을 읽는다.
+     *
+     * @param file {@link #peek()}으로 가져온 파일.
+     * @return Batch 데이터.
+     * @throws IOException
+     */
+    public byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of batch file " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Batch 파일을 Queue에서 제거하고 삭제한다.
+     *
+     * @param file 제거할 파일.
+     */
+    public synchronized void remove(File file) {
+        load();
+        if (mFiles.remove(file)) {
+            mTotalBytes -= file.length();
+            file.delete();
+        }
+    }
+
+    public synchronized int size() {
+        load();
+        return mFiles.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** 처음 사용할 때 디렉토리의 Batch 파일 목록을 읽고, 기록 중이던 임시 파일은 삭제한다. */
+    private void load() {
+        if (mFiles != null) {
+            return;
+        }
+        mFiles = new ArrayList<File>();
+        mTotalBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                mFiles.add(file);
+                mTotalBytes += file.length();
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+        Collections.sort(mFiles);
+        trim();
+    }
+
+    private void trim() {
+        while (!mFiles.isEmpty() && (mFiles.size() > mMaxCount || mTotalBytes > mMaxBytes)) {
+            File file = mFiles.remove(0);
+            mTotalBytes -= file.length();
+            file.delete();
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Batch Queue가 가득 차서 오래된 Batch를 삭제합니다. " + file);
+            }
+        }
+    }
+}
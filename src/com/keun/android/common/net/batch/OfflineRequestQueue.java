@@ -0,0 +1,535 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.keun.android.common.net.HttpClientManager;
+import com.keun.android.common.net.NetworkMonitor;
+import com.keun.android.common.net.NetworkMonitor.OnNetworkChangeListener;
+import com.keun.android.common.net.RequestBuilder;
+import com.keun.android.common.utils.Logger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 변경 요청(POST/PUT/DELETE)을 Disk의 Journal에 기록하고, Network에 연결되어 있을 때 기록된 순서대로 전송하는
+ * Queue. <br />
+ * <ul>
+ * <li>{@link #enqueue(String, RequestBuilder)}는 Journal에 기록한 후 바로 반환하므로, 화면은 전송 결과를
+ * 기다리지 않고 바로 반영할 수 있다.</li>
+ * <li>같은 Key로 추가된 요청은 아직 전송되지 않은 이전 요청을 대체한다. (예: 같은 항목의 설정 변경)</li>
+ * <li>Network에 다시 연결되면 임의의 짧은 지연 후 Batch 단위로 전송하며, 실패하면 지수 Backoff 간격으로 재전송한다.</li>
+ * <li>동시 전송 수가 1(기본값)이면 요청은 엄격하게 순서대로 전송된다. 1보다 크면 같은 묶음 안의 요청은 동시에
+ * 전송되지만, 앞의 묶음이 끝나기 전에 다음 묶음을 시작하지 않는다.</li>
+ * </ul>
+ *
+ * <pre>
+ * OfflineRequestQueue queue = new OfflineRequestQueue(context, manager);
+ * queue.enqueue(&quot;profile/nickname&quot;, manager.getTemplate().put(url).addParam(&quot;nickname&quot;, name));
+ * ...
+ * queue.close();
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 19.
+ * @version 1.0
+ */
+public class OfflineRequestQueue {
+
+    /** 한번에 꺼내서 전송하는 최대 요청 수. */
+    public static final int DEFAULT_BATCH_SIZE = 10;
+    /** 동시에 전송하는 최대 요청 수. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 1;
+
+    /** Network에 다시 연결된 후 전송을 시작하기 전 최대 지연 시간. (단말들이 동시에 전송하지 않도록 한다) */
+    private static final long RECONNECT_JITTER = 3 * 1000;
+    /** 완료된 Record가 이 개수를 넘고 남은 요청보다 많으면 Journal을 다시 쓴다. */
+    private static final int COMPACT_THRESHOLD = 100;
+
+    /**
+     * 요청의 전송 결과를 전달 받는다. (Worker Thread에서 호출된다)
+     */
+    public static interface OnReplayListener {
+        /**
+         * 요청이 성공(2xx)한 경우.
+         *
+         * @param id enqueue()에서 반환한 요청 ID.
+         * @param key 요청 Key. (없으면 null)
+         * @param statusCode 응답 상태 코드.
+         */
+        public void onReplayed(long id, String key, int statusCode);
+
+        /**
+         * 서버가 요청을 거부(4xx)했거나 최대 횟수만큼 실패하여 요청을 버린 경우.
+         *
+         * @param id enqueue()에서 반환한 요청 ID.
+         * @param key 요청 Key. (없으면 null)
+         * @param statusCode 마지막 응답 상태 코드. (응답을 받지 못했으면 -1)
+         */
+        public void onDropped(long id, String key, int statusCode);
+    }
+
+    private final HttpClientManager mManager;
+    private final RequestJournal mJournal;
+    private final NetworkMonitor mNetworkMonitor;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
+    private volatile int mMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private volatile OnReplayListener mListener;
+
+    /* mLock으로 보호한다. */
+    private final Object mLock = new Object();
+    /** 전송을 기다리는 요청. (추가된 순서) */
+    private LinkedHashMap<Long, QueuedRequest> mPending;
+    /** Key별 마지막 요청 ID. */
+    private final HashMap<String, Long> mKeys = new HashMap<String, Long>();
+    /** 전송 중인 요청 ID. */
+    private final HashSet<Long> mInFlight = new HashSet<Long>();
+    private IOException mLoadError;
+    private long mNextId = 1;
+    private boolean mClosed;
+
+    /* Worker Thread에서만 사용한다. */
+    private final RetryBackoff mBackoff = new RetryBackoff();
+    private ThreadPoolExecutor mExecutor;
+
+    private final Runnable mReplayRunnable = new Runnable() {
+        @Override
+        public void run() {
+            replay();
+        }
+    };
+
+    private final OnNetworkChangeListener mNetworkListener = new OnNetworkChangeListener() {
+        @Override
+        public void onNetworkChanged(boolean isConnected) {
+            if (isConnected) {
+                mHandler.removeCallbacks(mReplayRunnable);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mBackoff.reset();
+                    }
+                });
+                mHandler.postDelayed(mReplayRunnable,
+                        mBackoff.jitter(RECONNECT_JITTER));
+            }
+        }
+    };
+
+    /**
+     * @param context Context
+     * @param manager 요청을 전송할 HttpClientManager. (close()는 호출자가 담당한다)
+     */
+    public OfflineRequestQueue(Context context, HttpClientManager manager) {
+        this(context, manager, new File(context.getFilesDir(),
+                "offline_requests/requests.journal"));
+    }
+
+    /**
+     * @param context Context
+     * @param manager 요청을 전송할 HttpClientManager. (close()는 호출자가 담당한다)
+     * @param journalFile 요청을 기록할 Journal 파일.
+     */
+    public OfflineRequestQueue(Context context, HttpClientManager manager, File journalFile) {
+        this.mManager = manager;
+        this.mJournal = new RequestJournal(journalFile);
+        this.mThread = new HandlerThread(getClass().getSimpleName(),
+                Process.THREAD_PRIORITY_BACKGROUND);
+        this.mThread.start();
+        this.mHandler = new Handler(mThread.getLooper());
+        this.mNetworkMonitor = NetworkMonitor.getInstance(context);
+        this.mNetworkMonitor.addListener(mNetworkListener);
+
+        // 이전 실행에서 전송하지 못한 요청을 전송한다.
+        mHandler.post(mReplayRunnable);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.mBatchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 동시에 전송하는 최대 요청 수를 설정한다. 1보다 크면 같은 묶음 안에서는 순서가 보장되지 않는다.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.mMaxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    public void setOnReplayListener(OnReplayListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * 요청을 Journal에 기록하고 전송을 예약한다.
+     *
+     * @param key 같은 Key의 전송되지 않은 이전 요청을 대체한다. (null이면 대체하지 않는다)
+     * @param builder POST/PUT/DELETE 요청.
+     * @return 요청 ID.
+     * @throws IOException Journal에 기록하지 못한 경우.
+     */
+    public long enqueue(String key, RequestBuilder builder) throws IOException {
+        return enqueue(key, builder.build());
+    }
+
+    /**
+     * 요청을 Journal에 기록하고 전송을 예약한다. Entity는 Memory로 읽어서 기록한다.
+     *
+     * @param key 같은 Key의 전송되지 않은 이전 요청을 대체한다. (null이면 대체하지 않는다)
+     * @param request POST/PUT/DELETE 요청.
+     * @return 요청 ID.
+     * @throws IOException Journal에 기록하지 못한 경우.
+     */
+    public long enqueue(String key, HttpUriRequest request) throws IOException {
+        String method = request.getMethod();
+        if (!HttpPost.METHOD_NAME.equals(method) && !HttpPut.METHOD_NAME.equals(method)
+                && !HttpDelete.METHOD_NAME.equals(method)) {
+            throw new IllegalArgumentException("Only POST/PUT/DELETE requests can be queued");
+        }
+        long id;
+        synchronized (mLock) {
+            if (mClosed) {
+                throw new IOException("Queue is closed");
+            }
+            loadLocked();
+            id = mNextId++;
+            QueuedRequest queued = QueuedRequest.from(id, key, request);
+            mJournal.append(queued);
+            mPending.put(id, queued);
+            if (key != null) {
+                Long previous = mKeys.put(key, id);
+                // 전송 중인 요청은 그대로 두고, 아직 전송하지 않은 요청만 대체한다.
+                if (previous != null && !mInFlight.contains(previous)
+                        && mPending.remove(previous) != null) {
+                    mJournal.remove(previous);
+                    if (Logger.isDebugEnabled()) {
+                        Logger.d(getClass(), "Superseded request : " + key);
+                    }
+                }
+            }
+        }
+        if (mNetworkMonitor.isConnected()) {
+            mHandler.post(mReplayRunnable);
+        }
+        return id;
+    }
+
+    /**
+     * 전송을 기다리는 요청 수를 가져온다.
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mPending != null ? mPending.size() : 0;
+        }
+    }
+
+    /**
+     * 기다리지 않고 바로 전송을 시도한다.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mReplayRunnable);
+        mHandler.post(mReplayRunnable);
+    }
+
+    /**
+     * Worker Thread를 종료한다. 전송하지 못한 요청은 Journal에 남아 다음에 생성한 OfflineRequestQueue가
+     * 전송한다.
+     */
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+        mNetworkMonitor.removeListener(mNetworkListener);
+        mHandler.removeCallbacks(mReplayRunnable);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mExecutor != null) {
+                    mExecutor.shutdown();
+                }
+                synchronized (mLock) {
+                    mJournal.close();
+                }
+                mThread.quit();
+            }
+        });
+    }
+
+    private void loadLocked() throws IOException {
+        if (mPending != null) {
+            return;
+        }
+        if (mLoadError != null) {
+            throw mLoadError;
+        }
+        try {
+            mPending = mJournal.load();
+        } catch (IOException e) {
+            mLoadError = e;
+            throw e;
+        }
+        for (QueuedRequest request : mPending.values()) {
+            mNextId = Math.max(mNextId, request.getId() + 1);
+            if (request.getKey() != null) {
+                mKeys.put(request.getKey(), request.getId());
+            }
+        }
+    }
+
+    /* ====== Worker Thread ====== */
+
+    /** 요청을 묶음 단위로 순서대로 전송한다. 재전송이 필요한 요청이 있으면 멈추고 재전송을 예약한다. */
+    private void replay() {
+        for (;;) {
+            if (!mNetworkMonitor.isConnected()) {
+                return; // Network가 연결되면 다시 시도한다.
+            }
+            ArrayList<QueuedRequest> batch = new ArrayList<QueuedRequest>();
+            synchronized (mLock) {
+                if (mClosed) {
+                    return;
+                }
+                try {
+                    loadLocked();
+                } catch (IOException e) {
+                    if (Logger.isErrorEnabled()) {
+                        Logger.e(getClass(), "Journal을 읽지 못했습니다.", e);
+                    }
+                    return;
+                }
+                for (QueuedRequest request : mPending.values()) {
+                    if (batch.size() >= mBatchSize) {
+                        break;
+                    }
+                    batch.add(request);
+                    mInFlight.add(request.getId());
+                }
+            }
+            if (batch.isEmpty()) {
+                mBackoff.reset();
+                return;
+            }
+            boolean retry = false;
+            int index = 0;
+            while (!retry && index < batch.size()) {
+                int end = Math.min(batch.size(), index + mMaxConcurrency);
+                int[] results = send(batch, index, end);
+                for (int i = index; i < end; i++) {
+                    retry |= complete(batch.get(i), results[(i - index) * 2],
+                            results[(i - index) * 2 + 1]);
+                }
+                index = end;
+            }
+            synchronized (mLock) {
+                for (QueuedRequest request : batch) {
+                    mInFlight.remove(request.getId());
+                }
+            }
+            if (retry) {
+                scheduleRetry();
+                return;
+            }
+            mBackoff.reset();
+        }
+    }
+
+    /**
+     * 요청을 동시에 전송한다.
+     *
+     * @return 요청마다 전송 결과와 상태 코드.
+     */
+    private int[] send(ArrayList<QueuedRequest> batch, int start, int end) {
+        int[] results = new int[(end - start) * 2];
+        if (end - start == 1) {
+            send(batch.get(start), results, 0);
+            return results;
+        }
+        ThreadPoolExecutor executor = getExecutor(end - start);
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = start; i < end; i++) {
+            final QueuedRequest request = batch.get(i);
+            final int[] out = results;
+            final int offset = (i - start) * 2;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    send(request, out, offset);
+                    return null;
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[i * 2] = RetryBackoff.RESULT_RETRY;
+            } catch (ExecutionException e) {
+                results[i * 2] = RetryBackoff.RESULT_RETRY;
+            }
+        }
+        return results;
+    }
+
+    /** 요청 하나를 전송하고 결과를 out[offset], 상태 코드를 out[offset + 1]에 기록한다. */
+    private void send(QueuedRequest queued, int[] out, int offset) {
+        HttpResponse response = null;
+        out[offset + 1] = -1;
+        try {
+            response = mManager.execute(queued.toRequest());
+            int status = response.getStatusLine().getStatusCode();
+            out[offset + 1] = status;
+            if (Logger.isDebugEnabled()) {
+                Logger.d(getClass(), "Replay " + queued.getMethod() + " " + queued.getUrl()
+                        + " - " + status);
+            }
+            out[offset] = RetryBackoff.classify(status);
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Replay 실패 : " + e.toString());
+            }
+            out[offset] = RetryBackoff.RESULT_RETRY;
+        } catch (RuntimeException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Replay 실패 : " + queued.getUrl(), e);
+            }
+            out[offset] = RetryBackoff.RESULT_RETRY;
+        } finally {
+            if (response != null) {
+                HttpEntity entity = response.getEntity();
+                if (entity != null) {
+                    try {
+                        entity.consumeContent();
+                    } catch (IOException e) {
+                        if (Logger.isVerboseEnabled()) {
+                            Logger.v(getClass(), e.toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 전송 결과를 반영한다.
+     *
+     * @return 재전송이 필요하면 true.
+     */
+    private boolean complete(QueuedRequest request, int result, int status) {
+        if (result == RetryBackoff.RESULT_RETRY
+                && ++request.mAttempts < RetryBackoff.MAX_ATTEMPTS) {
+            return true;
+        }
+        synchronized (mLock) {
+            mPending.remove(request.getId());
+            String key = request.getKey();
+            if (key != null) {
+                Long latest = mKeys.get(key);
+                if (latest != null && latest.longValue() == request.getId()) {
+                    mKeys.remove(key);
+                }
+            }
+            try {
+                mJournal.remove(request.getId());
+                if (mJournal.getDoneCount() >= COMPACT_THRESHOLD
+                        && mJournal.getDoneCount() > mPending.size()) {
+                    mJournal.compact(mPending.values());
+                }
+            } catch (IOException e) {
+                // 다음 실행에서 한번 더 전송될 수 있다.
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Journal에 기록하지 못했습니다.", e);
+                }
+            }
+        }
+        OnReplayListener listener = mListener;
+        if (result == RetryBackoff.RESULT_SUCCESS) {
+            if (listener != null) {
+                listener.onReplayed(request.getId(), request.getKey(), status);
+            }
+        } else {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "요청을 전송하지 못하여 삭제합니다. " + request.getMethod() + " "
+                        + request.getUrl() + " (" + status + ")");
+            }
+            if (listener != null) {
+                listener.onDropped(request.getId(), request.getKey(), status);
+            }
+        }
+        return false;
+    }
+
+    private ThreadPoolExecutor getExecutor(int threads) {
+        if (mExecutor == null) {
+            mExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "OfflineRequestQueue #"
+                                    + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        } else if (mExecutor.getMaximumPoolSize() < threads) {
+            mExecutor.setMaximumPoolSize(threads);
+            mExecutor.setCorePoolSize(threads);
+        }
+        return mExecutor;
+    }
+
+    private void scheduleRetry() {
+        long delay = mBackoff.nextDelay();
+        if (Logger.isDebugEnabled()) {
+            Logger.d(getClass(), "요청 재전송 예약 : " + delay + "ms");
+        }
+        mHandler.removeCallbacks(mReplayRunnable);
+        mHandler.postDelayed(mReplayRunnable, delay);
+    }
+}
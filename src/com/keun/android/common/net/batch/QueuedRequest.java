@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import com.keun.android.common.net.RateLimiter;
+import com.keun.android.common.net.RateLimiter.TrafficClass;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.protocol.HTTP;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * {@link OfflineRequestQueue}에 저장되는 요청 하나. (Method, URL, Header, Body) <br />
+ * 요청을 만든 후 변경하지 않으며, Journal에 기록하고 다시 읽을 수 있다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 19.
+ * @version 1.0
+ */
+final class QueuedRequest {
+
+    /** 저장할 수 있는 Body의 최대 크기. (1 MByte) */
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private final long mId;
+    private final String mKey;
+    private final String mMethod;
+    private final String mUrl;
+    /** Header 이름과 값을 번갈아 저장한다. */
+    private final String[] mHeaders;
+    private final byte[] mBody;
+
+    /** 전송을 시도한 횟수. (Journal에는 기록하지 않는다) */
+    int mAttempts;
+
+    private QueuedRequest(long id, String key, String method, String url, String[] headers,
+            byte[] body) {
+        this.mId = id;
+        this.mKey = key;
+        this.mMethod = method;
+        this.mUrl = url;
+        this.mHeaders = headers;
+        this.mBody = body;
+    }
+
+    /**
+     * HttpUriRequest의 내용을 복사한다. Entity는 Memory로 읽어 저장한다.
+     *
+     * @throws IOException Entity를 읽지 못한 경우.
+     * @throws IllegalArgumentException Body가 {@link #MAX_BODY_SIZE}보다 큰 경우.
+     */
+    static QueuedRequest from(long id, String key, HttpUriRequest request) throws IOException {
+        ArrayList<String> headers = new ArrayList<String>();
+        for (Header header : request.getAllHeaders()) {
+            if (!HTTP.CONTENT_LEN.equalsIgnoreCase(header.getName())) {
+                headers.add(header.getName());
+                headers.add(header.getValue());
+            }
+        }
+        byte[] body = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                if (entity.getContentLength() > MAX_BODY_SIZE) {
+                    throw new IllegalArgumentException("Request body is too large : "
+                            + entity.getContentLength());
+                }
+                addEntityHeader(headers, request, entity.getContentType());
+                addEntityHeader(headers, request, entity.getContentEncoding());
+                PoolingByteArrayOutputStream buffer = new PoolingByteArrayOutputStream();
+                try {
+                    entity.writeTo(buffer);
+                    if (buffer.size() > MAX_BODY_SIZE) {
+                        throw new IllegalArgumentException("Request body is too large : "
+                                + buffer.size());
+                    }
+                    body = buffer.toByteArray();
+                } finally {
+                    buffer.release();
+                }
+            }
+        }
+        return new QueuedRequest(id, key, request.getMethod(), request.getURI().toString(),
+                headers.toArray(new String[headers.size()]), body);
+    }
+
+    private static void addEntityHeader(ArrayList<String> headers, HttpUriRequest request,
+            Header header) {
+        if (header != null && !request.containsHeader(header.getName())) {
+            headers.add(header.getName());
+            headers.add(header.getValue());
+        }
+    }
+
+    long getId() {
+        return mId;
+    }
+
+    /** 같은 Key의 이전 요청을 대체한다. (null이면 대체하지 않는다) */
+    String getKey() {
+        return mKey;
+    }
+
+    String getMethod() {
+        return mMethod;
+    }
+
+    String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 전송할 HttpUriRequest를 만든다. (BACKGROUND Traffic Class)
+     */
+    HttpUriRequest toRequest() {
+        HttpRequestBase request;
+        if (HttpPost.METHOD_NAME.equals(mMethod)) {
+            request = new HttpPost(mUrl);
+        } else if (HttpPut.METHOD_NAME.equals(mMethod)) {
+            request = new HttpPut(mUrl);
+        } else if (HttpDelete.METHOD_NAME.equals(mMethod)) {
+            request = new HttpDelete(mUrl);
+        } else {
+            throw new IllegalStateException("Unsupported method : " + mMethod);
+        }
+        String contentType = null;
+        String contentEncoding = null;
+        for (int i = 0; i < mHeaders.length; i += 2) {
+            if (HTTP.CONTENT_TYPE.equalsIgnoreCase(mHeaders[i])) {
+                contentType = mHeaders[i + 1];
+            } else if (HTTP.CONTENT_ENCODING.equalsIgnoreCase(mHeaders[i])) {
+                contentEncoding = mHeaders[i + 1];
+            } else {
+                request.addHeader(mHeaders[i], mHeaders[i + 1]);
+            }
+        }
+        if (mBody != null && request instanceof HttpEntityEnclosingRequestBase) {
+            ByteArrayEntity entity = new ByteArrayEntity(mBody);
+            entity.setContentType(contentType);
+            entity.setContentEncoding(contentEncoding);
+            ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+            request.getParams().setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
+        }
+        request.getParams().setParameter(RateLimiter.PARAM_TRAFFIC_CLASS,
+                TrafficClass.BACKGROUND);
+        return request;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(mId);
+        out.writeUTF(mKey != null ? mKey : "");
+        out.writeUTF(mMethod);
+        out.writeUTF(mUrl);
+        out.writeInt(mHeaders.length);
+        for (String value : mHeaders) {
+            out.writeUTF(value);
+        }
+        if (mBody == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(mBody.length);
+            out.write(mBody);
+        }
+    }
+
+    static QueuedRequest readFrom(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        String key = in.readUTF();
+        String method = in.readUTF();
+        String url = in.readUTF();
+        String[] headers = new String[in.readInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = in.readUTF();
+        }
+        int length = in.readInt();
+        byte[] body = null;
+        if (length >= 0) {
+            body = new byte[length];
+            in.readFully(body);
+        }
+        return new QueuedRequest(id, key.length() == 0 ? null : key, method, url, headers, body);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import com.keun.android.common.utils.Logger;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * {@link OfflineRequestQueue}의 요청을 기록하는 Append-Only Journal 파일. <br />
+ * 요청 추가(ADD)와 완료(DONE)를 Record로 기록하며, Record마다 길이와 CRC32를 함께 저장하여 기록 중에 Process가
+ * 종료된 경우 깨진 마지막 Record를 잘라낸다. 완료된 Record가 쌓이면 남은 요청만으로 파일을 다시 쓴다(compact).
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 19.
+ * @version 1.0
+ */
+final class RequestJournal {
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DONE = 2;
+
+    /** Record 하나의 최대 크기. (Body + Header) */
+    private static final int MAX_RECORD_SIZE = QueuedRequest.MAX_BODY_SIZE + 64 * 1024;
+
+    private final File mFile;
+    private FileOutputStream mOut;
+    /** 마지막 compact 이후 기록된 DONE Record 개수. */
+    private int mDoneCount;
+
+    RequestJournal(File file) {
+        this.mFile = file;
+    }
+
+    /**
+     * Journal을 읽어서 완료되지 않은 요청을 기록된 순서로 반환하고, 추가 기록을 위해 파일을 연다.
+     *
+     * @return 요청 ID와 요청.
+     * @throws IOException 파일을 열지 못한 경우.
+     */
+    LinkedHashMap<Long, QueuedRequest> load() throws IOException {
+        LinkedHashMap<Long, QueuedRequest> pending = new LinkedHashMap<Long, QueuedRequest>();
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + parent);
+        }
+        long valid = 0;
+        if (mFile.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(mFile)));
+            try {
+                for (;;) {
+                    byte[] payload = readRecord(in);
+                    if (payload == null) {
+                        break;
+                    }
+                    apply(payload, pending);
+                    valid += 8 + payload.length;
+                }
+            } finally {
+                in.close();
+            }
+            if (valid < mFile.length()) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Journal의 깨진 Record를 잘라냅니다. (" + valid + "/"
+                            + mFile.length() + ")");
+                }
+                RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+                try {
+                    file.setLength(valid);
+                } finally {
+                    file.close();
+                }
+            }
+        }
+        mDoneCount = 0;
+        mOut = new FileOutputStream(mFile, true);
+        return pending;
+    }
+
+    /**
+     * 요청 추가를 기록한다.
+     */
+    void append(QueuedRequest request) throws IOException {
+        PoolingByteArrayOutputStream buffer = new PoolingByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(OP_ADD);
+            request.writeTo(out);
+            out.flush();
+            writeRecord(buffer.toByteArray());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 요청 완료(또는 대체, 삭제)를 기록한다.
+     */
+    void remove(long id) throws IOException {
+        byte[] payload = new byte[9];
+        payload[0] = OP_DONE;
+        for (int i = 0; i < 8; i++) {
+            payload[1 + i] = (byte) (id >>> (56 - i * 8));
+        }
+        writeRecord(payload);
+        mDoneCount++;
+    }
+
+    int getDoneCount() {
+        return mDoneCount;
+    }
+
+    /**
+     * 남은 요청만으로 Journal을 다시 쓴다. 임시 파일에 기록한 후 이름을 바꾼다.
+     */
+    void compact(Collection<QueuedRequest> pending) throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        RequestJournal journal = new RequestJournal(temp);
+        journal.mOut = new FileOutputStream(temp);
+        try {
+            for (QueuedRequest request : pending) {
+                journal.append(request);
+            }
+        } finally {
+            journal.close();
+        }
+        close();
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            mOut = new FileOutputStream(mFile, true);
+            throw new IOException("Unable to rename " + temp);
+        }
+        mOut = new FileOutputStream(mFile, true);
+        mDoneCount = 0;
+    }
+
+    void close() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(getClass(), e.toString());
+                }
+            }
+            mOut = null;
+        }
+    }
+
+    /** 길이, CRC32, 내용을 한번에 기록하고 Disk에 동기화한다. */
+    private void writeRecord(byte[] payload) throws IOException {
+        if (mOut == null) {
+            throw new IOException("Journal is closed");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        byte[] record = new byte[8 + payload.length];
+        writeInt(record, 0, payload.length);
+        writeInt(record, 4, (int) crc.getValue());
+        System.arraycopy(payload, 0, record, 8, payload.length);
+        mOut.write(record);
+        mOut.flush();
+        mOut.getFD().sync();
+    }
+
+    /** @return Record 내용. (파일의 끝이거나 Record가 깨진 경우 null) */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crcValue = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == crcValue ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void apply(byte[] payload, LinkedHashMap<Long, QueuedRequest> pending)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        if (op == OP_ADD) {
+            QueuedRequest request = QueuedRequest.readFrom(in);
+            pending.put(request.getId(), request);
+        } else if (op == OP_DONE) {
+            pending.remove(in.readLong());
+        }
+    }
+
+    private static void writeInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+}
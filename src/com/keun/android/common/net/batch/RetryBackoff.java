@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.batch;
+
+import java.util.Random;
+
+/**
+ * {@link EventBatcher}와 {@link OfflineRequestQueue}가 공유하는 재전송 규칙. <br />
+ * 응답 상태 코드로 전송 결과(성공, 재전송, 버림)를 정하고, 연속으로 실패한 횟수에 따라 재전송 간격을 5초부터 두 배씩 최대
+ * 10분까지 늘린다. 재전송 횟수는 Worker Thread에서만 변경한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 19.
+ * @version 1.0
+ */
+final class RetryBackoff {
+
+    /** 같은 요청(Batch)을 전송하는 최대 횟수. 넘으면 버린다. */
+    static final int MAX_ATTEMPTS = 10;
+
+    /** 전송 결과. */
+    static final int RESULT_SUCCESS = 0;
+    static final int RESULT_RETRY = 1;
+    static final int RESULT_DROP = 2;
+
+    /** 재전송 간격. (5초부터 두 배씩 최대 10분) */
+    private static final long MIN_RETRY_DELAY = 5 * 1000;
+    private static final long MAX_RETRY_DELAY = 10 * 60 * 1000;
+
+    private final Random mRandom = new Random();
+    private int mRetryCount;
+
+    /**
+     * 응답 상태 코드로 전송 결과를 정한다.
+     *
+     * @return 2xx는 RESULT_SUCCESS, 요청 자체가 잘못된 4xx는 RESULT_DROP, 나머지는 RESULT_RETRY.
+     */
+    static int classify(int status) {
+        if (status >= 200 && status < 300) {
+            return RESULT_SUCCESS;
+        }
+        // 요청 자체가 잘못된 경우(4xx)는 재전송해도 실패하므로 버린다. (408, 429 제외)
+        if (status >= 400 && status < 500 && status != 408 && status != 429) {
+            return RESULT_DROP;
+        }
+        return RESULT_RETRY;
+    }
+
+    /**
+     * 다음 재전송까지 기다릴 시간을 가져오고 재전송 횟수를 늘린다.
+     */
+    long nextDelay() {
+        long delay = Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY << Math.min(mRetryCount, 16));
+        mRetryCount++;
+        // 여러 단말이 동시에 재전송하지 않도록 지연 시간을 50~100% 사이로 흩뜨린다.
+        return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    /**
+     * 0부터 max 사이의 임의의 시간을 가져온다.
+     */
+    long jitter(long max) {
+        return (long) (mRandom.nextDouble() * max);
+    }
+
+    /**
+     * 전송에 성공하면 재전송 간격을 처음으로 되돌린다.
+     */
+    void reset() {
+        mRetryCount = 0;
+    }
+}
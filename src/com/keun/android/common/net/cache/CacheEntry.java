@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.cache;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Cache에 저장된 GET 응답 하나. (Status, Header, Body와 유효 기간) <br />
+ * 유효 기간은 응답의 Cache-Control(max-age, no-cache, must-revalidate, stale-while-revalidate,
+ * stale-if-error)과 Expires Header로 계산한다. 객체는 변경할 수 없으며, 재검증(304) 결과는 새 객체로 만든다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 17.
+ * @version 1.0
+ */
+public final class CacheEntry {
+
+    /** 응답에 지정되지 않은 경우. (HttpResponseCache의 설정을 사용한다) */
+    public static final long UNSPECIFIED = -1;
+
+    private static final int MAGIC = 0x48524331; // "HRC1"
+
+    private final String mUrl;
+    private final int mStatusCode;
+    private final String mReasonPhrase;
+    private final Header[] mHeaders;
+    private final byte[] mBody;
+
+    /** 응답을 받은 시간. */
+    private final long mResponseTime;
+    /** 응답을 받은 후 신선한(fresh) 상태로 사용할 수 있는 시간(ms) */
+    private final long mFreshness;
+    private final long mStaleWhileRevalidate;
+    private final long mStaleIfError;
+    /** max-age 또는 Expires로 유효 기간을 지정한 응답이다. (지정하지 않은 응답은 기본 stale 시간을 쓰지 않는다) */
+    private final boolean mExplicitFreshness;
+    /** must-revalidate 또는 no-cache가 지정되어 만료 후에는 사용할 수 없다. */
+    private final boolean mMustRevalidate;
+
+    private CacheEntry(String url, int statusCode, String reasonPhrase, Header[] headers,
+            byte[] body, long responseTime) {
+        this.mUrl = url;
+        this.mStatusCode = statusCode;
+        this.mReasonPhrase = reasonPhrase;
+        this.mHeaders = headers;
+        this.mBody = body;
+        this.mResponseTime = responseTime;
+
+        long maxAge = UNSPECIFIED;
+        long swr = UNSPECIFIED;
+        long sie = UNSPECIFIED;
+        boolean mustRevalidate = false;
+        for (Header header : headers) {
+            if (!"Cache-Control".equalsIgnoreCase(header.getName())) {
+                continue;
+            }
+            for (HeaderElement element : header.getElements()) {
+                String name = element.getName();
+                if ("max-age".equalsIgnoreCase(name)) {
+                    maxAge = seconds(element.getValue());
+                } else if ("stale-while-revalidate".equalsIgnoreCase(name)) {
+                    swr = seconds(element.getValue());
+                } else if ("stale-if-error".equalsIgnoreCase(name)) {
+                    sie = seconds(element.getValue());
+                } else if ("no-cache".equalsIgnoreCase(name)) {
+                    maxAge = 0;
+                    mustRevalidate = true;
+                } else if ("must-revalidate".equalsIgnoreCase(name)) {
+                    mustRevalidate = true;
+                }
+            }
+        }
+        if (maxAge == UNSPECIFIED) {
+            maxAge = expiresLifetime();
+        }
+        this.mExplicitFreshness = maxAge != UNSPECIFIED;
+        this.mFreshness = Math.max(0, maxAge);
+        this.mStaleWhileRevalidate = swr;
+        this.mStaleIfError = sie;
+        this.mMustRevalidate = mustRevalidate;
+    }
+
+    /**
+     * 응답으로 CacheEntry를 만든다.
+     *
+     * @param url 요청 URL.
+     * @param response 응답. (Entity는 사용하지 않는다)
+     * @param body 응답 Body.
+     * @param responseTime 응답을 받은 시간.
+     * @return CacheEntry (저장할 수 없는 응답이면 null)
+     */
+    public static CacheEntry create(String url, HttpResponse response, byte[] body,
+            long responseTime) {
+        if (!isCacheable(response)) {
+            return null;
+        }
+        return new CacheEntry(url, response.getStatusLine().getStatusCode(), response
+                .getStatusLine().getReasonPhrase(), response.getAllHeaders(), body, responseTime);
+    }
+
+    /**
+     * 저장할 수 있는 응답인지 확인한다. (200, 203이면서 no-store가 아닌 경우)
+     */
+    public static boolean isCacheable(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_OK && status != HttpStatus.SC_NON_AUTHORITATIVE_INFORMATION) {
+            return false;
+        }
+        for (Header header : response.getHeaders("Cache-Control")) {
+            for (HeaderElement element : header.getElements()) {
+                if ("no-store".equalsIgnoreCase(element.getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 재검증(304 Not Modified) 응답의 Header로 갱신한 CacheEntry를 만든다.
+     *
+     * @param notModified 304 응답.
+     * @param responseTime 응답을 받은 시간.
+     * @return 갱신된 CacheEntry.
+     */
+    public CacheEntry revalidated(HttpResponse notModified, long responseTime) {
+        ArrayList<Header> headers = new ArrayList<Header>(mHeaders.length);
+        for (Header header : mHeaders) {
+            if (!notModified.containsHeader(header.getName())) {
+                headers.add(header);
+            }
+        }
+        for (Header header : notModified.getAllHeaders()) {
+            // 304 응답의 Entity 관련 Header는 저장된 Body와 맞지 않으므로 사용하지 않는다.
+            String name = header.getName();
+            if (!HTTP.CONTENT_LEN.equalsIgnoreCase(name)
+                    && !HTTP.CONTENT_ENCODING.equalsIgnoreCase(name)
+                    && !HTTP.TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                headers.add(header);
+            }
+        }
+        return new CacheEntry(mUrl, mStatusCode, mReasonPhrase,
+                headers.toArray(new Header[headers.size()]), mBody, responseTime);
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    public long getResponseTime() {
+        return mResponseTime;
+    }
+
+    /** 저장에 필요한 대략적인 메모리 크기. */
+    int getSize() {
+        int size = mBody.length + mUrl.length() * 2 + 64;
+        for (Header header : mHeaders) {
+            size += (header.getName().length() + header.getValue().length()) * 2 + 16;
+        }
+        return size;
+    }
+
+    public String getETag() {
+        return getHeader("ETag");
+    }
+
+    public String getLastModified() {
+        return getHeader("Last-Modified");
+    }
+
+    /**
+     * 아직 신선한(만료되지 않은) 응답인지 확인한다.
+     */
+    public boolean isFresh(long now) {
+        return now - mResponseTime < mFreshness;
+    }
+
+    /**
+     * 만료된 후 경과 시간이 window 이내인지 확인한다.
+     *
+     * @param now 현재 시간.
+     * @param defaultWindow 응답에 지정되지 않은 경우 사용할 시간(ms). 유효 기간(max-age, Expires)을 지정하지
+     *            않은 응답에는 사용하지 않는다.
+     * @param staleIfError stale-if-error 기준이면 true, stale-while-revalidate 기준이면 false.
+     */
+    public boolean isStaleUsable(long now, long defaultWindow, boolean staleIfError) {
+        if (mMustRevalidate) {
+            return false;
+        }
+        long window = staleIfError ? mStaleIfError : mStaleWhileRevalidate;
+        if (window == UNSPECIFIED) {
+            window = mExplicitFreshness ? defaultWindow : 0;
+        }
+        return now - mResponseTime < mFreshness + window;
+    }
+
+    /**
+     * 저장된 내용으로 HttpResponse를 만든다.
+     *
+     * @param warning Warning Header. (없으면 null)
+     * @return HttpResponse
+     */
+    public HttpResponse toResponse(String warning) {
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                HttpVersion.HTTP_1_1, mStatusCode, mReasonPhrase));
+        for (Header header : mHeaders) {
+            response.addHeader(header);
+        }
+        if (warning != null) {
+            response.addHeader("Warning", warning);
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(mBody);
+        entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+        response.setEntity(entity);
+        return response;
+    }
+
+    /* ====== Serialization ====== */
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeUTF(mUrl);
+        out.writeInt(mStatusCode);
+        out.writeUTF(mReasonPhrase != null ? mReasonPhrase : "");
+        out.writeLong(mResponseTime);
+        out.writeInt(mHeaders.length);
+        for (Header header : mHeaders) {
+            out.writeUTF(header.getName());
+            out.writeUTF(header.getValue());
+        }
+        out.writeInt(mBody.length);
+        out.write(mBody);
+    }
+
+    static CacheEntry readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid cache entry");
+        }
+        String url = in.readUTF();
+        int statusCode = in.readInt();
+        String reasonPhrase = in.readUTF();
+        long responseTime = in.readLong();
+        int count = in.readInt();
+        Header[] headers = new Header[count];
+        for (int i = 0; i < count; i++) {
+            headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CacheEntry(url, statusCode, reasonPhrase, headers, body, responseTime);
+    }
+
+    private String getHeader(String name) {
+        for (Header header : mHeaders) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /** Expires - Date로 유효 기간을 계산한다. */
+    private long expiresLifetime() {
+        String expires = getHeader("Expires");
+        if (expires == null) {
+            return UNSPECIFIED;
+        }
+        try {
+            Date expiresDate = DateUtils.parseDate(expires);
+            String date = getHeader("Date");
+            long base = date != null ? DateUtils.parseDate(date).getTime() : mResponseTime;
+            return expiresDate.getTime() - base;
+        } catch (DateParseException e) {
+            return 0; // 잘못된 Expires는 이미 만료된 것으로 처리한다.
+        }
+    }
+
+    private static long seconds(String value) {
+        if (value == null) {
+            return UNSPECIFIED;
+        }
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return UNSPECIFIED;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.cache;
+
+import com.keun.android.common.utils.Crc64Utils;
+import com.keun.android.common.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * GET 응답을 Memory(LRU)와 Disk에 저장한다. <br />
+ * Disk에는 URL의 CRC64 값을 이름으로 응답 하나당 파일 하나를 저장하며, 임시 파일에 기록한 후 이름을 바꾼다. Memory와
+ * Disk 모두 최대 용량을 넘으면 가장 오래 사용하지 않은 응답부터 삭제한다. <br />
+ * 만료된 응답을 사용할 수 있는 기본 시간(stale-while-revalidate, stale-if-error)은 응답이 max-age 또는
+ * Expires로 유효 기간을 지정했지만 Cache-Control에 stale 시간은 지정하지 않은 경우에 사용한다. Cache Header가 없는
+ * 응답은 만료된 후 사용하지 않는다. <br />
+ * 파일 읽기와 쓰기는 Lock 밖에서 실행하고, Memory와 Index만 Lock 안에서 갱신하므로 Background 갱신이 파일을 쓰는
+ * 동안에도 다른 요청의 조회는 기다리지 않는다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 17.
+ * @version 1.0
+ * @see com.keun.android.common.net.HttpClientManager#setResponseCache(HttpResponseCache)
+ */
+public class HttpResponseCache {
+
+    /** Memory에 보관할 기본 용량. (1 MByte) */
+    public static final int DEFAULT_MEMORY_SIZE = 1024 * 1024;
+
+    /** 저장할 응답 하나의 최대 크기. (512 KByte) */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 512 * 1024;
+
+    /** 만료 후 Background에서 갱신하는 동안 만료된 응답을 사용할 수 있는 기본 시간. (1일) */
+    public static final long DEFAULT_STALE_WHILE_REVALIDATE = 24 * 60 * 60 * 1000L;
+
+    /** 요청이 실패한 경우 만료된 응답을 사용할 수 있는 기본 시간. (7일) */
+    public static final long DEFAULT_STALE_IF_ERROR = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final String SUFFIX = ".http";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxDiskSize;
+    private final int mMaxMemorySize;
+
+    private volatile int mMaxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+    private volatile long mStaleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE;
+    private volatile long mStaleIfError = DEFAULT_STALE_IF_ERROR;
+
+    /** 접근 순서로 정렬된 Memory Cache. */
+    private final LinkedHashMap<String, CacheEntry> mMemory =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    private int mMemorySize;
+
+    /** 접근 순서로 정렬된 Disk 파일 크기. (처음 사용할 때 읽는다) */
+    private LinkedHashMap<String, Long> mDiskIndex;
+    private long mDiskSize;
+
+    private int mHitCount;
+    private int mStaleHitCount;
+    private int mMissCount;
+
+    /**
+     * @param directory 응답을 저장할 디렉토리.
+     * @param maxDiskSize Disk에 저장할 최대 용량.
+     */
+    public HttpResponseCache(File directory, long maxDiskSize) {
+        this(directory, maxDiskSize, DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * @param directory 응답을 저장할 디렉토리. (null이면 Memory에만 저장한다)
+     * @param maxDiskSize Disk에 저장할 최대 용량.
+     * @param maxMemorySize Memory에 보관할 최대 용량.
+     */
+    public HttpResponseCache(File directory, long maxDiskSize, int maxMemorySize) {
+        this.mDirectory = directory;
+        this.mMaxDiskSize = maxDiskSize;
+        this.mMaxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * 만료 후 Background에서 갱신하는 동안 만료된 응답을 사용할 수 있는 시간을 설정한다.
+     *
+     * @param window 시간(ms). 0이면 만료된 응답은 사용하지 않는다.
+     */
+    public void setStaleWhileRevalidate(long window) {
+        this.mStaleWhileRevalidate = window;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return mStaleWhileRevalidate;
+    }
+
+    /**
+     * 요청이 실패하거나 Host의 Circuit이 열린 경우 만료된 응답을 사용할 수 있는 시간을 설정한다.
+     *
+     * @param window 시간(ms). 0이면 만료된 응답은 사용하지 않는다.
+     */
+    public void setStaleIfError(long window) {
+        this.mStaleIfError = window;
+    }
+
+    public long getStaleIfError() {
+        return mStaleIfError;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.mMaxEntrySize = maxEntrySize;
+    }
+
+    public int getMaxEntrySize() {
+        return mMaxEntrySize;
+    }
+
+    /**
+     * 저장된 응답을 가져온다. Memory에 없으면 Disk에서 읽는다.
+     *
+     * @param url 요청 URL.
+     * @return CacheEntry (없으면 null)
+     */
+    public CacheEntry get(String url) {
+        String key = Crc64Utils.crc64(url);
+        synchronized (this) {
+            CacheEntry entry = mMemory.get(url);
+            if (entry != null) {
+                return entry;
+            }
+            if (mDirectory == null) {
+                return null;
+            }
+            loadIndex();
+            if (mDiskIndex.get(key) == null) {
+                return null;
+            }
+        }
+        File file = new File(mDirectory, key + SUFFIX);
+        CacheEntry entry;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            entry = CacheEntry.readFrom(in);
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Cache 파일을 읽지 못했습니다. " + file, e);
+            }
+            synchronized (this) {
+                removeFile(key);
+            }
+            return null;
+        } finally {
+            close(in);
+        }
+        if (!url.equals(entry.getUrl())) { // CRC64 충돌.
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            if (!mMemory.containsKey(url)) { // 읽는 동안 저장된 응답이 더 최신이다.
+                putMemory(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 응답을 저장한다.
+     *
+     * @param entry CacheEntry
+     */
+    public void put(CacheEntry entry) {
+        if (entry.getBody().length > mMaxEntrySize) {
+            return;
+        }
+        synchronized (this) {
+            putMemory(entry.getUrl(), entry);
+            if (mDirectory == null) {
+                return;
+            }
+            loadIndex();
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        // 임시 파일에 먼저 기록한다. (같은 URL을 동시에 저장해도 임시 파일은 겹치지 않는다)
+        String key = Crc64Utils.crc64(entry.getUrl());
+        File file = new File(mDirectory, key + SUFFIX);
+        File temp = null;
+        DataOutputStream out = null;
+        try {
+            temp = File.createTempFile(key + "-", TEMP_SUFFIX, mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            entry.writeTo(out);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            if (Logger.isWarnEnabled()) {
+                Logger.w(getClass(), "Cache 파일을 저장하지 못했습니다. " + file, e);
+            }
+            close(out);
+            if (temp != null) {
+                temp.delete();
+            }
+            return;
+        }
+        long length = temp.length();
+        synchronized (this) {
+            // 이름 변경과 Index 갱신을 함께 해야 trimDisk가 Index에 없는 파일을 남기지 않는다.
+            if (!temp.renameTo(file)) {
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(getClass(), "Unable to rename " + temp);
+                }
+                temp.delete();
+                return;
+            }
+            Long previous = mDiskIndex.put(key, length);
+            mDiskSize += length - (previous != null ? previous : 0);
+            trimDisk();
+        }
+    }
+
+    public synchronized void remove(String url) {
+        CacheEntry entry = mMemory.remove(url);
+        if (entry != null) {
+            mMemorySize -= entry.getSize();
+        }
+        if (mDirectory != null) {
+            loadIndex();
+            removeFile(Crc64Utils.crc64(url));
+        }
+    }
+
+    /**
+     * Memory와 Disk에 저장된 응답을 모두 삭제한다.
+     */
+    public synchronized void clear() {
+        mMemory.clear();
+        mMemorySize = 0;
+        if (mDirectory != null) {
+            loadIndex();
+            for (String key : new ArrayList<String>(mDiskIndex.keySet())) {
+                removeFile(key);
+            }
+        }
+    }
+
+    /* ====== Statistics ====== */
+
+    public synchronized void recordHit(boolean stale) {
+        if (stale) {
+            mStaleHitCount++;
+        } else {
+            mHitCount++;
+        }
+    }
+
+    public synchronized void recordMiss() {
+        mMissCount++;
+    }
+
+    public synchronized String getStats() {
+        return "HttpResponseCache [hit=" + mHitCount + ", staleHit=" + mStaleHitCount + ", miss="
+                + mMissCount + ", memory=" + mMemorySize + ", disk=" + mDiskSize + "]";
+    }
+
+    private void putMemory(String url, CacheEntry entry) {
+        CacheEntry previous = mMemory.put(url, entry);
+        mMemorySize += entry.getSize() - (previous != null ? previous.getSize() : 0);
+        Iterator<Map.Entry<String, CacheEntry>> it = mMemory.entrySet().iterator();
+        while (mMemorySize > mMaxMemorySize && it.hasNext()) {
+            mMemorySize -= it.next().getValue().getSize();
+            it.remove();
+        }
+    }
+
+    /** 디렉토리의 파일을 수정 시간 순으로 읽고, 기록 중이던 임시 파일은 삭제한다. */
+    private void loadIndex() {
+        if (mDiskIndex != null) {
+            return;
+        }
+        mDiskIndex = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        mDiskSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                long length = file.length();
+                mDiskIndex.put(name.substring(0, name.length() - SUFFIX.length()), length);
+                mDiskSize += length;
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> it = mDiskIndex.entrySet().iterator();
+        while (mDiskSize > mMaxDiskSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            mDiskSize -= eldest.getValue();
+            new File(mDirectory, eldest.getKey() + SUFFIX).delete();
+            it.remove();
+        }
+    }
+
+    private void removeFile(String key) {
+        Long length = mDiskIndex.remove(key);
+        if (length != null) {
+            mDiskSize -= length;
+        }
+        new File(mDirectory, key + SUFFIX).delete();
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                if (Logger.isVerboseEnabled()) {
+                    Logger.v(getClass(), e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * HTTP Content-Encoding 한 가지를 압축/해제한다. {@link ContentCodecRegistry}에 등록하여 사용한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public interface ContentCodec {
+
+    /**
+     * Content-Encoding 이름을 가져온다. (예: gzip, deflate)
+     *
+     * @return Content-Encoding 이름. (소문자)
+     */
+    public String getEncoding();
+
+    /**
+     * 압축된 데이터를 해제하는 InputStream을 생성한다.
+     *
+     * @param in 압축된 데이터.
+     * @return 압축이 해제된 데이터를 읽는 InputStream.
+     * @throws IOException
+     */
+    public InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * 데이터를 압축하여 기록하는 OutputStream을 생성한다. 반드시 close()를 호출해야 남은 데이터가 기록된다.
+     *
+     * @param out 압축된 데이터를 기록할 OutputStream.
+     * @return 압축하는 OutputStream.
+     * @throws IOException
+     */
+    public OutputStream encode(OutputStream out) throws IOException;
+}
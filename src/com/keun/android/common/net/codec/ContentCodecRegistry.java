@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Content-Encoding별 {@link ContentCodec}을 관리한다. <br />
+ * 등록된 순서대로 Accept-Encoding Header 값을 만들며, 응답의 Content-Encoding에 맞는 Codec을 찾아서 압축을
+ * 해제한다. 기본 Registry에는 gzip, deflate가 등록되어 있다.
+ *
+ * <pre>
+ * ContentCodecRegistry.getDefault().register(new CustomCodec());
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public final class ContentCodecRegistry {
+
+    private static final ContentCodecRegistry sDefault = new ContentCodecRegistry();
+
+    static {
+        sDefault.register(new GzipCodec());
+        sDefault.register(new DeflateCodec());
+    }
+
+    /** 등록/삭제 시에만 새로 만들고 조회 시에는 Lock을 사용하지 않는다. */
+    private volatile Map<String, ContentCodec> mCodecs = Collections.emptyMap();
+    private volatile String mAcceptEncoding;
+
+    /**
+     * 기본 Registry(gzip, deflate)를 가져온다.
+     */
+    public static ContentCodecRegistry getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Codec을 등록한다. 같은 Content-Encoding의 Codec이 있으면 교체한다.
+     *
+     * @param codec ContentCodec
+     */
+    public synchronized void register(ContentCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec may not be null");
+        }
+        Map<String, ContentCodec> codecs = new LinkedHashMap<String, ContentCodec>(mCodecs);
+        codecs.put(codec.getEncoding().toLowerCase(Locale.US), codec);
+        update(codecs);
+    }
+
+    /**
+     * Codec을 삭제한다.
+     *
+     * @param encoding Content-Encoding 이름.
+     */
+    public synchronized void unregister(String encoding) {
+        if (encoding == null) {
+            return;
+        }
+        Map<String, ContentCodec> codecs = new LinkedHashMap<String, ContentCodec>(mCodecs);
+        codecs.remove(encoding.toLowerCase(Locale.US));
+        update(codecs);
+    }
+
+    private void update(Map<String, ContentCodec> codecs) {
+        StringBuilder sb = new StringBuilder();
+        for (String encoding : codecs.keySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(encoding);
+        }
+        mAcceptEncoding = (sb.length() > 0 ? sb.toString() : null);
+        mCodecs = Collections.unmodifiableMap(codecs);
+    }
+
+    /**
+     * 요청 시 사용할 Accept-Encoding Header 값을 가져온다. (예: "gzip, deflate")
+     *
+     * @return Accept-Encoding 값. (등록된 Codec이 없으면 null)
+     */
+    public String getAcceptEncoding() {
+        return mAcceptEncoding;
+    }
+
+    /**
+     * Content-Encoding에 맞는 Codec을 가져온다. (x-gzip은 gzip으로 처리)
+     *
+     * @param encoding Content-Encoding 값.
+     * @return ContentCodec (없거나 identity이면 null)
+     */
+    public ContentCodec getCodec(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        String value = encoding.trim().toLowerCase(Locale.US);
+        if (value.startsWith("x-")) {
+            value = value.substring(2);
+        }
+        return mCodecs.get(value);
+    }
+
+    /**
+     * Content-Encoding Header에 맞는 Codec을 가져온다.
+     *
+     * @param header Content-Encoding Header.
+     * @return ContentCodec (없으면 null)
+     */
+    public ContentCodec getCodec(Header header) {
+        return header == null ? null : getCodec(header.getValue());
+    }
+
+    /**
+     * Response Entity의 InputStream을 가져온다. Content-Encoding에 맞는 Codec이 있으면 압축이 해제된
+     * InputStream을 돌려준다.
+     *
+     * @param entity the entity whose content should be read
+     * @return the input stream to read from
+     * @throws IOException
+     */
+    public InputStream getDecodedContent(HttpEntity entity) throws IOException {
+        InputStream responseStream = entity.getContent();
+        if (responseStream == null) {
+            return responseStream;
+        }
+        ContentCodec codec = getCodec(entity.getContentEncoding());
+        if (codec != null) {
+            responseStream = codec.decode(responseStream);
+        }
+        return responseStream;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+
+/**
+ * 응답의 Content-Encoding에 맞는 Codec이 있으면 Entity를 {@link DecompressingEntity}로 교체한다. <br />
+ * 교체 후에는 Content-Encoding, Content-Length Header를 삭제하므로 호출하는 쪽에서는 압축 여부를 신경 쓰지 않고
+ * entity.getContent()를 사용하면 된다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public class ContentDecodingInterceptor implements HttpResponseInterceptor {
+
+    private final ContentCodecRegistry mRegistry;
+
+    public ContentDecodingInterceptor() {
+        this(ContentCodecRegistry.getDefault());
+    }
+
+    public ContentDecodingInterceptor(ContentCodecRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry may not be null");
+        }
+        this.mRegistry = registry;
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws HttpException,
+            IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity instanceof DecompressingEntity) {
+            return;
+        }
+        ContentCodec codec = mRegistry.getCodec(entity.getContentEncoding());
+        if (codec != null) {
+            response.setEntity(new DecompressingEntity(entity, codec));
+            response.removeHeaders(HTTP.CONTENT_LEN);
+            response.removeHeaders(HTTP.CONTENT_ENCODING);
+        }
+    }
+}
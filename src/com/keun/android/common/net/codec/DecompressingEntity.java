@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import com.keun.android.common.utils.BufferPool;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 압축된 Response Entity를 감싸서 압축이 해제된 데이터를 제공한다. <br />
+ * Content-Encoding은 null, Content-Length는 알 수 없음(-1)으로 처리한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public class DecompressingEntity extends HttpEntityWrapper {
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final ContentCodec mCodec;
+    private InputStream mContent;
+
+    public DecompressingEntity(HttpEntity entity, ContentCodec codec) {
+        super(entity);
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec may not be null");
+        }
+        this.mCodec = codec;
+    }
+
+    /**
+     * 원본 Entity의 Content-Encoding을 가져온다.
+     */
+    public ContentCodec getCodec() {
+        return mCodec;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (wrappedEntity.isStreaming()) {
+            // Streaming Entity는 한 번만 읽을 수 있으므로 같은 InputStream을 돌려준다.
+            if (mContent == null) {
+                mContent = mCodec.decode(wrappedEntity.getContent());
+            }
+            return mContent;
+        }
+        return mCodec.decode(wrappedEntity.getContent());
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        if (outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        InputStream in = getContent();
+        try {
+            byte[] buffer = BufferPool.acquire(BUFFER_SIZE);
+            try {
+                int l;
+                while ((l = in.read(buffer)) != -1) {
+                    outstream.write(buffer, 0, l);
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void consumeContent() throws IOException {
+        try {
+            if (mContent != null) {
+                mContent.close(); // Inflater를 Pool에 반환한다.
+                mContent = null;
+            }
+        } finally {
+            wrappedEntity.consumeContent();
+        }
+    }
+}
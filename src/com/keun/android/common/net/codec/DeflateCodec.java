@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * deflate Content-Encoding을 처리한다. <br />
+ * RFC 2616의 deflate는 zlib 형식이지만 raw deflate로 응답하는 서버가 있으므로 첫 2 byte의 zlib Header를
+ * 확인하여 형식을 결정한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public class DeflateCodec implements ContentCodec {
+
+    public static final String ENCODING = "deflate";
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int count = 0;
+        while (count < 2) {
+            int n = pin.read(header, count, 2 - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+        if (count > 0) {
+            pin.unread(header, 0, count);
+        }
+        return new InflatingInputStream(pin, false, !(count == 2 && isZlibHeader(header)));
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) throws IOException {
+        return new DeflatingOutputStream(out, false);
+    }
+
+    /** CMF(method 8)와 FLG의 Check bit로 zlib Header인지 확인한다. */
+    private static boolean isZlibHeader(byte[] header) {
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.codec;
+
+import com.keun.android.common.utils.BufferPool;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Pool에서 가져온 Deflater로 데이터를 gzip/deflate 형식으로 압축한다. <br />
+ * finish() 또는 close()를 호출하면 남은 데이터를 모두 기록한 후 Deflater를 {@link ZlibPool}에, 출력 Buffer를
+ * {@link BufferPool}에 반환한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+class DeflatingOutputStream extends FilterOutputStream {
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, // Magic number
+            8, // Compression method (CM) - deflate
+            0, // Flags (FLG)
+            0, 0, 0, 0, // Modification time (MTIME)
+            0, // Extra flags (XFL)
+            0 // Operating system (OS)
+    };
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final boolean mIsGzip;
+    private final boolean mNowrap;
+    private final CRC32 mCrc;
+    private byte[] mBuffer;
+
+    private Deflater mDeflater;
+    private boolean mFinished;
+
+    /**
+     * @param out 압축된 데이터를 기록할 OutputStream.
+     * @param gzip gzip 형식이면 true, deflate(zlib) 형식이면 false.
+     * @throws IOException
+     */
+    DeflatingOutputStream(OutputStream out, boolean gzip) throws IOException {
+        super(out);
+        this.mIsGzip = gzip;
+        this.mNowrap = gzip;
+        this.mCrc = gzip ? new CRC32() : null;
+        if (gzip) {
+            out.write(GZIP_HEADER);
+        }
+        this.mDeflater = ZlibPool.acquireDeflater(mNowrap);
+        this.mBuffer = BufferPool.acquire(BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {
+                (byte) b
+        }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("write beyond end of stream");
+        }
+        if (len == 0) {
+            return;
+        }
+        if (mCrc != null) {
+            mCrc.update(b, off, len);
+        }
+        mDeflater.setInput(b, off, len);
+        while (!mDeflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * 남은 데이터를 모두 압축하여 기록한다. 하위 OutputStream은 닫지 않는다.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        try {
+            mDeflater.finish();
+            while (!mDeflater.finished()) {
+                deflate();
+            }
+            if (mIsGzip) {
+                writeTrailer();
+            }
+        } finally {
+            ZlibPool.releaseDeflater(mDeflater, mNowrap);
+            mDeflater = null;
+            BufferPool.release(mBuffer);
+            mBuffer = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int n = mDeflater.deflate(mBuffer, 0, mBuffer.length);
+        if (n > 0) {
+            out.write(mBuffer, 0, n);
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        byte[] trailer = new byte[8];
+        writeInt((int) mCrc.getValue(), trailer, 0);
+        writeInt(mDeflater.getTotalIn(), trailer, 4);
+        out.write(trailer);
+    }
+
+    private static void writeInt(int v, byte[] b, int off) {
+        b[off] = (byte) (v & 0xff);
+        b[off + 1] = (byte) ((v >> 8) & 0xff);
+        b[off + 2] = (byte) ((v >> 16) & 0xff);
+        b[off + 3] = (byte) ((v >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.keun.android.common.net.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * gzip Content-Encoding을 처리한다. Inflater/Deflater는 {@link ZlibPool}에서 가져와 재사용한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public class GzipCodec implements ContentCodec {
+
+    public static final String ENCODING = "gzip";
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+        return new InflatingInputStream(in, true, true);
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) throws IOException {
+        return new DeflatingOutputStream(out, true);
+    }
+}
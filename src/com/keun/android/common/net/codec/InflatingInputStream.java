@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.codec;
+
+import com.keun.android.common.utils.BufferPool;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Pool에서 가져온 Inflater로 gzip/deflate 데이터를 해제한다. <br />
+ * GZIPInputStream과 달리 Inflater를 직접 생성하지 않으며, 데이터를 끝까지 읽거나 close()하면 Inflater를
+ * {@link ZlibPool}에, 입력 Buffer를 {@link BufferPool}에 반환한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+class InflatingInputStream extends FilterInputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int FHCRC = 2; // Header CRC
+    private static final int FEXTRA = 4; // Extra field
+    private static final int FNAME = 8; // File name
+    private static final int FCOMMENT = 16; // File comment
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final boolean mIsGzip;
+    private final boolean mNowrap;
+    private final CRC32 mCrc;
+    private byte[] mBuffer;
+    private final byte[] mSingleByte = new byte[1];
+    private int mLength;
+
+    private Inflater mInflater;
+    private boolean mEof;
+    private boolean mClosed;
+
+    /**
+     * @param in 압축된 데이터.
+     * @param gzip gzip 형식이면 true.
+     * @param nowrap zlib Header가 없는 raw deflate 형식이면 true. (gzip이면 무시)
+     * @throws IOException gzip Header가 잘못된 경우.
+     */
+    InflatingInputStream(InputStream in, boolean gzip, boolean nowrap) throws IOException {
+        super(in);
+        this.mIsGzip = gzip;
+        this.mNowrap = gzip || nowrap;
+        this.mCrc = gzip ? new CRC32() : null;
+        if (gzip) {
+            readHeader();
+        }
+        this.mInflater = ZlibPool.acquireInflater(mNowrap);
+        this.mBuffer = BufferPool.acquire(BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(mSingleByte, 0, 1) == -1 ? -1 : mSingleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (mEof) {
+            return -1;
+        }
+        try {
+            for (;;) {
+                int n = mInflater.inflate(b, off, len);
+                if (n > 0) {
+                    if (mCrc != null) {
+                        mCrc.update(b, off, n);
+                    }
+                    return n;
+                }
+                if (mInflater.finished() || mInflater.needsDictionary()) {
+                    finish();
+                    return -1;
+                }
+                if (mInflater.needsInput()) {
+                    fill();
+                }
+            }
+        } catch (DataFormatException e) {
+            String s = e.getMessage();
+            throw new ZipException(s != null ? s : "Invalid ZLIB data format");
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        return mEof ? 0 : 1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] b = new byte[(int) Math.min(n, 512)];
+        long total = 0;
+        while (total < n) {
+            int read = read(b, 0, (int) Math.min(n - total, b.length));
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            release();
+            in.close();
+        }
+    }
+
+    private void fill() throws IOException {
+        mLength = in.read(mBuffer, 0, mBuffer.length);
+        if (mLength == -1) {
+            throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        mInflater.setInput(mBuffer, 0, mLength);
+    }
+
+    /** 압축 해제가 끝나면 gzip Trailer를 검사하고 Inflater를 반환한다. */
+    private void finish() throws IOException {
+        mEof = true;
+        try {
+            if (mIsGzip) {
+                readTrailer();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (mInflater != null) {
+            ZlibPool.releaseInflater(mInflater, mNowrap);
+            mInflater = null;
+        }
+        if (mBuffer != null) {
+            BufferPool.release(mBuffer);
+            mBuffer = null;
+        }
+    }
+
+    private void readHeader() throws IOException {
+        CRC32 crc = new CRC32();
+        if (readUShort(crc) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUByte(crc) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readUByte(crc);
+        skipBytes(crc, 6); // MTIME, XFL, OS
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(crc, readUShort(crc));
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readUByte(crc) != 0) {
+                // 파일 이름은 사용하지 않는다.
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte(crc) != 0) {
+                // Comment는 사용하지 않는다.
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            int v = (int) crc.getValue() & 0xffff;
+            if (readUShort(null) != v) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        // Inflater가 사용하지 않은 데이터부터 Trailer(CRC32, ISIZE 8 byte)를 읽는다.
+        byte[] trailer = new byte[8];
+        int remaining = mInflater.getRemaining();
+        int count = Math.min(remaining, 8);
+        System.arraycopy(mBuffer, mLength - remaining, trailer, 0, count);
+        while (count < 8) {
+            int n = in.read(trailer, count, 8 - count);
+            if (n == -1) {
+                throw new EOFException("Unexpected end of GZIP trailer");
+            }
+            count += n;
+        }
+        long crc = toUInt(trailer, 0);
+        long size = toUInt(trailer, 4);
+        if (crc != mCrc.getValue() || size != (mInflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private static long toUInt(byte[] b, int off) {
+        return ((b[off] & 0xffL)) | ((b[off + 1] & 0xffL) << 8) | ((b[off + 2] & 0xffL) << 16)
+                | ((b[off + 3] & 0xffL) << 24);
+    }
+
+    private int readUByte(CRC32 crc) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        if (crc != null) {
+            crc.update(b);
+        }
+        return b;
+    }
+
+    private int readUShort(CRC32 crc) throws IOException {
+        int b = readUByte(crc);
+        return (readUByte(crc) << 8) | b;
+    }
+
+    private void skipBytes(CRC32 crc, int n) throws IOException {
+        while (n-- > 0) {
+            readUByte(crc);
+        }
+    }
+}
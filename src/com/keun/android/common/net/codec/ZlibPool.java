@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.net.codec;
+
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Inflater/Deflater를 재사용한다. <br />
+ * Inflater/Deflater는 생성할 때마다 Native zlib 영역을 할당하므로 사용이 끝난 객체를 reset()한 후 Pool에
+ * 보관하였다가 다시 사용한다. Pool에 보관할 수 있는 개수를 넘으면 end()를 호출하여 Native 영역을 바로 해제한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 8.
+ * @version 1.0
+ */
+public final class ZlibPool {
+
+    /** 종류별로 보관할 최대 개수. */
+    private static final int MAX_POOL_SIZE = 4;
+
+    /** zlib Header를 사용하지 않는(nowrap) Inflater - gzip, raw deflate. */
+    private static final ArrayList<Inflater> sRawInflaters = new ArrayList<Inflater>(MAX_POOL_SIZE);
+    /** zlib Header를 사용하는 Inflater - deflate. */
+    private static final ArrayList<Inflater> sZlibInflaters = new ArrayList<Inflater>(MAX_POOL_SIZE);
+    private static final ArrayList<Deflater> sRawDeflaters = new ArrayList<Deflater>(MAX_POOL_SIZE);
+    private static final ArrayList<Deflater> sZlibDeflaters = new ArrayList<Deflater>(MAX_POOL_SIZE);
+
+    private ZlibPool() {
+    }
+
+    /**
+     * Pool에서 Inflater를 가져온다. Pool이 비어있으면 새로 생성한다.
+     *
+     * @param nowrap zlib Header/Checksum을 사용하지 않으면 true. (gzip은 true)
+     * @return Inflater
+     */
+    public static Inflater acquireInflater(boolean nowrap) {
+        ArrayList<Inflater> pool = nowrap ? sRawInflaters : sZlibInflaters;
+        synchronized (pool) {
+            int size = pool.size();
+            if (size > 0) {
+                return pool.remove(size - 1);
+            }
+        }
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * 사용이 끝난 Inflater를 Pool에 반환한다.
+     *
+     * @param inflater 반환할 Inflater.
+     * @param nowrap acquireInflater() 호출 시 사용한 값.
+     */
+    public static void releaseInflater(Inflater inflater, boolean nowrap) {
+        if (inflater == null) {
+            return;
+        }
+        inflater.reset();
+        ArrayList<Inflater> pool = nowrap ? sRawInflaters : sZlibInflaters;
+        synchronized (pool) {
+            if (pool.size() < MAX_POOL_SIZE) {
+                pool.add(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    /**
+     * Pool에서 Deflater를 가져온다. Pool이 비어있으면 새로 생성한다.
+     *
+     * @param nowrap zlib Header/Checksum을 사용하지 않으면 true. (gzip은 true)
+     * @return Deflater (Deflater.DEFAULT_COMPRESSION)
+     */
+    public static Deflater acquireDeflater(boolean nowrap) {
+        ArrayList<Deflater> pool = nowrap ? sRawDeflaters : sZlibDeflaters;
+        synchronized (pool) {
+            int size = pool.size();
+            if (size > 0) {
+                return pool.remove(size - 1);
+            }
+        }
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+    }
+
+    /**
+     * 사용이 끝난 Deflater를 Pool에 반환한다.
+     *
+     * @param deflater 반환할 Deflater.
+     * @param nowrap acquireDeflater() 호출 시 사용한 값.
+     */
+    public static void releaseDeflater(Deflater deflater, boolean nowrap) {
+        if (deflater == null) {
+            return;
+        }
+        deflater.reset();
+        ArrayList<Deflater> pool = nowrap ? sRawDeflaters : sZlibDeflaters;
+        synchronized (pool) {
+            if (pool.size() < MAX_POOL_SIZE) {
+                pool.add(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * Pool에 보관된 Inflater/Deflater의 Native 영역을 모두 해제한다.
+     */
+    public static void clear() {
+        synchronized (sRawInflaters) {
+            for (Inflater inflater : sRawInflaters) {
+                inflater.end();
+            }
+            sRawInflaters.clear();
+        }
+        synchronized (sZlibInflaters) {
+            for (Inflater inflater : sZlibInflaters) {
+                inflater.end();
+            }
+            sZlibInflaters.clear();
+        }
+        synchronized (sRawDeflaters) {
+            for (Deflater deflater : sRawDeflaters) {
+                deflater.end();
+            }
+            sRawDeflaters.clear();
+        }
+        synchronized (sZlibDeflaters) {
+            for (Deflater deflater : sZlibDeflaters) {
+                deflater.end();
+            }
+            sZlibDeflaters.clear();
+        }
+    }
+}
@@ -21,6 +21,11 @@ import android.content.Context;
 import android.os.Looper;
 import android.util.Log;
 
+import com.keun.android.common.net.codec.ContentCodecRegistry;
+import com.keun.android.common.net.codec.ContentDecodingInterceptor;
+import com.keun.android.common.net.codec.GzipCodec;
+import com.keun.android.common.utils.PoolingByteArrayOutputStream;
+
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
@@ -58,8 +63,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Subclass of the Apache {@link DefaultHttpClient} that is configured with
@@ -96,6 +99,10 @@ public final class AndroidHttpClient implements HttpClient {
         }
     };
 
+    /** Interceptor decodes gzip/deflate responses with pooled inflaters */
+    private static final ContentDecodingInterceptor sContentDecodingInterceptor =
+            new ContentDecodingInterceptor();
+
     /**
      * Create a new HttpClient with reasonable defaults (which you can update).
      * 
@@ -157,6 +164,7 @@ public final class AndroidHttpClient implements HttpClient {
                 BasicHttpProcessor processor = super.createHttpProcessor();
                 processor.addRequestInterceptor(sThreadCheckInterceptor);
                 processor.addRequestInterceptor(new CurlLogger());
+                processor.addResponseInterceptor(sContentDecodingInterceptor);
 
                 return processor;
             }
@@ -204,18 +212,7 @@ public final class AndroidHttpClient implements HttpClient {
      */
     public static InputStream getUngzippedContent(HttpEntity entity)
             throws IOException {
-        InputStream responseStream = entity.getContent();
-        if (responseStream == null)
-            return responseStream;
-        Header header = entity.getContentEncoding();
-        if (header == null)
-            return responseStream;
-        String contentEncoding = header.getValue();
-        if (contentEncoding == null)
-            return responseStream;
-        if (contentEncoding.contains("gzip"))
-            responseStream = new GZIPInputStream(responseStream);
-        return responseStream;
+        return ContentCodecRegistry.getDefault().getDecodedContent(entity);
     }
 
     /**
@@ -280,6 +277,9 @@ public final class AndroidHttpClient implements HttpClient {
         return delegate.execute(target, request, responseHandler, context);
     }
 
+    /** Compresses request data with a pooled deflater */
+    private static final GzipCodec sGzipCodec = new GzipCodec();
+
     /**
      * Compress data to send to server. Creates a Http Entity holding the
      * gzipped data. The data will not be compressed if it is too short.
@@ -293,12 +293,16 @@ public final class AndroidHttpClient implements HttpClient {
         if (data.length < getMinGzipSize(resolver)) {
             entity = new ByteArrayEntity(data);
         } else {
-            ByteArrayOutputStream arr = new ByteArrayOutputStream();
-            OutputStream zipper = new GZIPOutputStream(arr);
-            zipper.write(data);
-            zipper.close();
-            entity = new ByteArrayEntity(arr.toByteArray());
-            entity.setContentEncoding("gzip");
+            PoolingByteArrayOutputStream arr = new PoolingByteArrayOutputStream();
+            try {
+                OutputStream zipper = sGzipCodec.encode(arr);
+                zipper.write(data);
+                zipper.close();
+                entity = new ByteArrayEntity(arr.toByteArray());
+            } finally {
+                arr.release();
+            }
+            entity.setContentEncoding(GzipCodec.ENCODING);
         }
         return entity;
     }
@@ -59,13 +59,13 @@ public class Base64InputStream extends FilterInputStream {
     public Base64InputStream(InputStream in, int flags, boolean encode) {
         super(in);
         eof = false;
-        inputBuffer = new byte[BUFFER_SIZE];
+        inputBuffer = BufferPool.acquire(BUFFER_SIZE);
         if (encode) {
             coder = new Base64.Encoder(flags, null);
         } else {
             coder = new Base64.Decoder(flags, null);
         }
-        coder.output = new byte[coder.maxOutputSize(BUFFER_SIZE)];
+        coder.output = BufferPool.acquire(coder.maxOutputSize(BUFFER_SIZE));
         outputStart = 0;
         outputEnd = 0;
     }
@@ -84,7 +84,10 @@ public class Base64InputStream extends FilterInputStream {
 
     public void close() throws IOException {
         in.close();
+        BufferPool.release(inputBuffer);
         inputBuffer = null;
+        BufferPool.release(coder.output);
+        coder.output = null;
     }
 
     public int available() {
@@ -135,7 +138,8 @@ public class Base64InputStream extends FilterInputStream {
     private void refill() throws IOException {
         if (eof)
             return;
-        int bytesRead = in.read(inputBuffer);
+        // Pool Buffer는 요청한 크기보다 클 수 있으므로 BUFFER_SIZE 만큼만 읽는다.
+        int bytesRead = in.read(inputBuffer, 0, BUFFER_SIZE);
         boolean success;
         if (bytesRead == -1) {
             eof = true;
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * I/O 작업에 사용하는 byte 배열을 크기별(4K ~ 64K)로 재사용한다. <br />
+ * Thread마다 크기별로 1개씩 보관하는 Thread Local Cache를 먼저 확인하고, 없으면 공용 Pool에서 가져온다. 사용이
+ * 끝난 배열은 반드시 {@link #release(byte[])}로 반환해야 한다. <br />
+ * DEBUG 로그가 활성화된 경우에는 반환하지 않고 GC된 배열을 찾아서 할당 위치와 함께 로그로 기록한다.
+ *
+ * <pre>
+ * byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+ * try {
+ *     int read;
+ *     while ((read = in.read(buffer)) != -1) {
+ *         out.write(buffer, 0, read);
+ *     }
+ * } finally {
+ *     BufferPool.release(buffer);
+ * }
+ * </pre>
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 10.
+ * @version 1.0
+ */
+public final class BufferPool {
+
+    /** 기본 I/O Buffer 크기. (4 KByte) */
+    public static final int DEFAULT_SIZE = 4 * 1024;
+
+    /** Pool에서 관리하는 최대 Buffer 크기. 이보다 크면 Pool을 사용하지 않는다. (64 KByte) */
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /** 크기별 공용 Pool에 보관할 수 있는 최대 용량. (크기별 256 KByte) */
+    private static final int MAX_POOL_BYTES_PER_CLASS = 256 * 1024;
+
+    /** 4K, 8K, 16K, 32K, 64K */
+    private static final int[] SIZE_CLASSES = {
+            4 * 1024, 8 * 1024, 16 * 1024, 32 * 1024, 64 * 1024
+    };
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayList<byte[]>[] sPools = new ArrayList[SIZE_CLASSES.length];
+
+    static {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            sPools[i] = new ArrayList<byte[]>(MAX_POOL_BYTES_PER_CLASS / SIZE_CLASSES[i]);
+        }
+    }
+
+    /** Thread마다 크기별로 1개의 Buffer를 보관한다. */
+    private static final ThreadLocal<byte[][]> sThreadCache = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[SIZE_CLASSES.length][];
+        }
+    };
+
+    /* 사용 통계. */
+    private static final AtomicLong sAcquires = new AtomicLong();
+    private static final AtomicLong sThreadHits = new AtomicLong();
+    private static final AtomicLong sPoolHits = new AtomicLong();
+    private static final AtomicLong sAllocations = new AtomicLong();
+    private static final AtomicLong sReleases = new AtomicLong();
+    private static final AtomicLong sDiscards = new AtomicLong();
+    private static final AtomicLong sLeaks = new AtomicLong();
+    private static final AtomicLong sDoubleReleases = new AtomicLong();
+
+    /* DEBUG 모드의 누수 검사. */
+    private static final ReferenceQueue<byte[]> sLeakQueue = new ReferenceQueue<byte[]>();
+    private static final ArrayList<LeakTracker> sTrackers = new ArrayList<LeakTracker>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * size 이상의 byte 배열을 가져온다. 돌려받은 배열의 길이는 size보다 클 수 있다.
+     *
+     * @param size 필요한 최소 크기.
+     * @return byte 배열.
+     */
+    public static byte[] acquire(int size) {
+        sAcquires.incrementAndGet();
+        int index = indexOf(size);
+        if (index < 0) { // Pool에서 관리하지 않는 크기.
+            sAllocations.incrementAndGet();
+            return new byte[size];
+        }
+
+        byte[] buffer = null;
+        byte[][] cache = sThreadCache.get();
+        if (cache[index] != null) {
+            buffer = cache[index];
+            cache[index] = null;
+            sThreadHits.incrementAndGet();
+        } else {
+            ArrayList<byte[]> pool = sPools[index];
+            synchronized (pool) {
+                int count = pool.size();
+                if (count > 0) {
+                    buffer = pool.remove(count - 1);
+                }
+            }
+            if (buffer != null) {
+                sPoolHits.incrementAndGet();
+            } else {
+                buffer = new byte[SIZE_CLASSES[index]];
+                sAllocations.incrementAndGet();
+            }
+        }
+
+        if (Logger.isDebugEnabled()) {
+            track(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * 사용이 끝난 byte 배열을 반환한다. 반환한 후에는 배열을 사용하면 안된다. <br />
+     * 배열은 한번만 반환해야 한다. 같은 배열이 현재 Thread의 Cache나 공용 Pool에 이미 있으면 다시 넣지 않고 무시한다.
+     * (다른 Thread의 Cache에 있는 배열은 확인하지 않는다)
+     *
+     * @param buffer {@link #acquire(int)}로 가져온 배열. (null이면 무시)
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        sReleases.incrementAndGet();
+        untrack(buffer);
+
+        int index = indexOf(buffer.length);
+        if (index < 0 || SIZE_CLASSES[index] != buffer.length) {
+            sDiscards.incrementAndGet();
+            return;
+        }
+        byte[][] cache = sThreadCache.get();
+        if (cache[index] == buffer) {
+            doubleRelease(buffer);
+            return;
+        }
+        if (cache[index] == null) {
+            cache[index] = buffer;
+            return;
+        }
+        ArrayList<byte[]> pool = sPools[index];
+        synchronized (pool) {
+            // 크기별 Pool은 최대 64개이므로 Identity 비교 비용이 작다.
+            for (int i = pool.size() - 1; i >= 0; i--) {
+                if (pool.get(i) == buffer) {
+                    doubleRelease(buffer);
+                    return;
+                }
+            }
+            if ((pool.size() + 1) * buffer.length <= MAX_POOL_BYTES_PER_CLASS) {
+                pool.add(buffer);
+                return;
+            }
+        }
+        sDiscards.incrementAndGet();
+    }
+
+    /** 이미 반환한 배열을 다시 반환한 경우. 두 사용자가 같은 배열을 공유하지 않도록 무시한다. */
+    private static void doubleRelease(byte[] buffer) {
+        sDoubleReleases.incrementAndGet();
+        if (Logger.isDebugEnabled()) {
+            Logger.w(BufferPool.class, "Buffer(" + buffer.length + " byte)를 두 번 반환했습니다.",
+                    new Throwable("BufferPool.release(" + buffer.length + ")"));
+        }
+    }
+
+    /**
+     * 공용 Pool에 보관된 배열을 모두 버린다. (Thread Local Cache는 Thread 종료 시 정리된다.)
+     */
+    public static void clear() {
+        for (ArrayList<byte[]> pool : sPools) {
+            synchronized (pool) {
+                pool.clear();
+            }
+        }
+    }
+
+    /**
+     * 사용 통계를 가져온다.
+     *
+     * @return 요청, Thread Cache/Pool 재사용, 신규 할당, 반환, 폐기, 누수, 중복 반환 횟수.
+     */
+    public static String getStats() {
+        long acquires = sAcquires.get();
+        long hits = sThreadHits.get() + sPoolHits.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("BufferPool [acquire=").append(acquires);
+        sb.append(", threadHit=").append(sThreadHits.get());
+        sb.append(", poolHit=").append(sPoolHits.get());
+        sb.append(", allocate=").append(sAllocations.get());
+        sb.append(", release=").append(sReleases.get());
+        sb.append(", discard=").append(sDiscards.get());
+        sb.append(", leak=").append(sLeaks.get());
+        sb.append(", doubleRelease=").append(sDoubleReleases.get());
+        sb.append(", hitRate=").append(acquires > 0 ? (hits * 100 / acquires) : 0).append("%]");
+        return sb.toString();
+    }
+
+    public static long getAllocationCount() {
+        return sAllocations.get();
+    }
+
+    public static long getLeakCount() {
+        return sLeaks.get();
+    }
+
+    public static long getDoubleReleaseCount() {
+        return sDoubleReleases.get();
+    }
+
+    /** size를 담을 수 있는 가장 작은 크기 등급을 찾는다. */
+    private static int indexOf(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /* ====== Leak Detection (DEBUG) ====== */
+
+    private static void track(byte[] buffer) {
+        synchronized (sTrackers) {
+            reportLeaks();
+            sTrackers.add(new LeakTracker(buffer, sLeakQueue));
+        }
+    }
+
+    private static void untrack(byte[] buffer) {
+        synchronized (sTrackers) {
+            if (sTrackers.isEmpty()) {
+                return;
+            }
+            for (Iterator<LeakTracker> it = sTrackers.iterator(); it.hasNext();) {
+                LeakTracker tracker = it.next();
+                if (tracker.get() == buffer) {
+                    tracker.clear();
+                    it.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** 반환되지 않고 GC된 Buffer를 로그로 기록한다. */
+    private static void reportLeaks() {
+        LeakTracker tracker;
+        while ((tracker = (LeakTracker) sLeakQueue.poll()) != null) {
+            if (sTrackers.remove(tracker)) {
+                sLeaks.incrementAndGet();
+                if (Logger.isWarnEnabled()) {
+                    Logger.w(BufferPool.class, "Buffer(" + tracker.mSize
+                            + " byte)를 반환하지 않았습니다. 할당 위치:", tracker.mAllocationSite);
+                }
+            }
+        }
+    }
+
+    private static final class LeakTracker extends WeakReference<byte[]> {
+        private final int mSize;
+        private final Throwable mAllocationSite;
+
+        LeakTracker(byte[] buffer, ReferenceQueue<byte[]> queue) {
+            super(buffer, queue);
+            this.mSize = buffer.length;
+            this.mAllocationSite = new Throwable("BufferPool.acquire(" + buffer.length + ")");
+        }
+    }
+}
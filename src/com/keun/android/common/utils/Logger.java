@@ -23,7 +23,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -487,6 +492,7 @@ public class Logger {
         public void run() {
             FileChannel out = null;
             FileOutputStream fos = null;
+            byte[] buffer = null;
             try {
                 // 외부 메모리가 있는지 확인한다.
                 File filePath = Environment.getExternalStorageDirectory().getAbsoluteFile();
@@ -546,18 +552,34 @@ public class Logger {
                 }
 
                 sb.append("\n\n");
-                byte[] b = (sb.toString()).getBytes();
-                ByteBuffer buf = ByteBuffer.allocate(b.length);
 
-                // 바이트배열을 버퍼에 넣는다.
-                buf.put(b);
-
-                // 버퍼의 위치(position)는 0으로 Limit와 Capacity값과 같게 설정한다.
-                buf.clear();
-                out.write(buf);
+                // 문자열을 byte 배열로 변환하지 않고 Pool Buffer에 나누어 Encoding 한다.
+                buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+                ByteBuffer buf = ByteBuffer.wrap(buffer);
+                CharBuffer chars = CharBuffer.wrap(sb);
+                CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                boolean flushed = false;
+                for (;;) {
+                    CoderResult result = flushed ? encoder.flush(buf) : encoder.encode(chars,
+                            buf, true);
+                    buf.flip();
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    buf.clear();
+                    if (result.isUnderflow()) {
+                        if (flushed) {
+                            break;
+                        }
+                        flushed = true;
+                    }
+                }
             } catch (Exception e) {
                 Log.d(TAG, e.toString());
             } finally {
+                BufferPool.release(buffer);
                 if (out != null) {
                     try {
                         out.close();
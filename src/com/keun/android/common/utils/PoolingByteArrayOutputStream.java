@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2011 The Common Platform Team, KTH, Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.keun.android.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * {@link BufferPool}에서 가져온 Buffer를 이어 붙여서 데이터를 보관하는 OutputStream. <br />
+ * ByteArrayOutputStream과 달리 용량이 부족해도 기존 데이터를 복사하지 않고 Buffer를 하나 더 가져온다. <br />
+ * close()를 호출해도 기록된 데이터는 유지되므로, 사용이 끝나면 반드시 {@link #release()}를 호출하여 Buffer를
+ * 반환해야 한다.
+ *
+ * @author Keun-yang Son
+ * @since 2012. 2. 10.
+ * @version 1.0
+ */
+public class PoolingByteArrayOutputStream extends OutputStream {
+
+    private final int mChunkSize;
+    private final ArrayList<byte[]> mChunks = new ArrayList<byte[]>();
+
+    /** 마지막 Buffer에 기록된 크기. */
+    private int mPosition;
+    private int mCount;
+    private boolean mReleased;
+
+    public PoolingByteArrayOutputStream() {
+        this(BufferPool.DEFAULT_SIZE);
+    }
+
+    /**
+     * @param chunkSize Pool에서 한번에 가져올 Buffer 크기. (최대 {@link BufferPool#MAX_SIZE})
+     */
+    public PoolingByteArrayOutputStream(int chunkSize) {
+        this.mChunkSize = Math.max(1, Math.min(chunkSize, BufferPool.MAX_SIZE));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        byte[] chunk = current();
+        chunk[mPosition++] = (byte) b;
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            byte[] chunk = current();
+            int n = Math.min(len, chunk.length - mPosition);
+            System.arraycopy(b, off, chunk, mPosition, n);
+            mPosition += n;
+            mCount += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * InputStream의 데이터를 모두 읽어서 기록한다. 중간 Buffer 없이 Pool Buffer에 바로 읽어 들인다.
+     *
+     * @param in 읽을 InputStream. (닫지 않는다)
+     * @return 읽은 크기.
+     * @throws IOException
+     */
+    public long readFrom(InputStream in) throws IOException {
+        long total = 0;
+        for (;;) {
+            byte[] chunk = current();
+            int read = in.read(chunk, mPosition, chunk.length - mPosition);
+            if (read == -1) {
+                return total;
+            }
+            mPosition += read;
+            mCount += read;
+            total += read;
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * 기록된 데이터를 하나의 배열로 복사한다.
+     *
+     * @return 기록된 데이터.
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[mCount];
+        int offset = 0;
+        int last = mChunks.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            byte[] chunk = mChunks.get(i);
+            int n = (i == last) ? mPosition : chunk.length;
+            System.arraycopy(chunk, 0, result, offset, n);
+            offset += n;
+        }
+        return result;
+    }
+
+    /**
+     * 기록된 데이터를 복사하지 않고 OutputStream에 기록한다.
+     *
+     * @param out 데이터를 기록할 OutputStream.
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        int last = mChunks.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            byte[] chunk = mChunks.get(i);
+            out.write(chunk, 0, (i == last) ? mPosition : chunk.length);
+        }
+    }
+
+    /**
+     * 기록된 데이터를 지우고 Buffer를 Pool에 반환한다. 이후에도 계속 사용할 수 있다.
+     */
+    public void reset() {
+        for (byte[] chunk : mChunks) {
+            BufferPool.release(chunk);
+        }
+        mChunks.clear();
+        mPosition = 0;
+        mCount = 0;
+    }
+
+    /**
+     * Buffer를 Pool에 반환한다. 반환한 후에는 사용할 수 없다.
+     */
+    public void release() {
+        if (!mReleased) {
+            mReleased = true;
+            reset();
+        }
+    }
+
+    /** 기록할 공간이 남아있는 Buffer를 가져온다. */
+    private byte[] current() throws IOException {
+        if (mReleased) {
+            throw new IOException("Stream released");
+        }
+        int size = mChunks.size();
+        if (size > 0) {
+            byte[] chunk = mChunks.get(size - 1);
+            if (mPosition < chunk.length) {
+                return chunk;
+            }
+        }
+        byte[] chunk = BufferPool.acquire(mChunkSize);
+        mChunks.add(chunk);
+        mPosition = 0;
+        return chunk;
+    }
+}
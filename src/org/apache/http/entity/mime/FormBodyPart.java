@@ -29,6 +29,8 @@ package org.apache.http.entity.mime;
 
 import org.apache.http.entity.mime.content.ContentBody;
 
+import java.nio.charset.Charset;
+
 /**
  * FormBodyPart class represents a content body that can be used as a part of
  * multipart encoded entities. This class automatically populates the header
@@ -43,6 +45,11 @@ public class FormBodyPart {
 
     private final ContentBody body;
 
+    // cached header bytes, encoded on first use and reset by addField
+    private byte[] encodedHeader;
+    private HttpMultipartMode encodedMode;
+    private Charset encodedCharset;
+
     public FormBodyPart(final String name, final ContentBody body) {
         super();
         if (name == null) {
@@ -76,7 +83,30 @@ public class FormBodyPart {
         if (name == null) {
             throw new IllegalArgumentException("Field name may not be null");
         }
-        this.header.addField(new MinimalField(name, value));
+        synchronized (this) {
+            this.header.addField(new MinimalField(name, value));
+            this.encodedHeader = null;
+        }
+    }
+
+    /**
+     * Returns the header fields encoded for the given mode and charset,
+     * followed by the empty line that ends the header. The bytes are encoded
+     * once and reused for the content length and every subsequent write.
+     * Fields added directly to {@link #getHeader()} after the first call are
+     * not reflected.
+     */
+    synchronized byte[] getEncodedHeader(
+            final HttpMultipartMode mode,
+            final Charset charset) {
+        if (this.encodedHeader == null
+                || this.encodedMode != mode
+                || !charset.equals(this.encodedCharset)) {
+            this.encodedHeader = HttpMultipart.encodeHeader(this, mode, charset);
+            this.encodedMode = mode;
+            this.encodedCharset = charset;
+        }
+        return this.encodedHeader;
     }
 
     protected void generateContentDisp(final ContentBody body) {
@@ -101,6 +101,11 @@ public class HttpMultipart {
 
     private final HttpMultipartMode mode;
 
+    /** "--" boundary CRLF, encoded once */
+    private final byte[] delimiter;
+    /** "--" boundary "--" CRLF, encoded once */
+    private final byte[] closeDelimiter;
+
     /**
      * Creates an instance with the specified settings.
      * 
@@ -125,6 +130,23 @@ public class HttpMultipart {
         this.boundary = boundary;
         this.parts = new ArrayList<FormBodyPart>();
         this.mode = mode;
+        ByteArrayBuffer encodedBoundary = encode(this.charset, boundary);
+        this.delimiter = concat(TWO_DASHES, encodedBoundary, CR_LF);
+        ByteArrayBuffer close = new ByteArrayBuffer(this.delimiter.length + 2);
+        close.append(TWO_DASHES.buffer(), 0, TWO_DASHES.length());
+        close.append(encodedBoundary.buffer(), 0, encodedBoundary.length());
+        close.append(TWO_DASHES.buffer(), 0, TWO_DASHES.length());
+        close.append(CR_LF.buffer(), 0, CR_LF.length());
+        this.closeDelimiter = close.toByteArray();
+    }
+
+    private static byte[] concat(
+            final ByteArrayBuffer a, final ByteArrayBuffer b, final ByteArrayBuffer c) {
+        ByteArrayBuffer bab = new ByteArrayBuffer(a.length() + b.length() + c.length());
+        bab.append(a.buffer(), 0, a.length());
+        bab.append(b.buffer(), 0, b.length());
+        bab.append(c.buffer(), 0, c.length());
+        return bab.toByteArray();
     }
 
     /**
@@ -172,22 +194,21 @@ public class HttpMultipart {
         return this.boundary;
     }
 
-    private void doWriteTo(
+    /**
+     * Encodes the header fields of the given part followed by the empty line
+     * that separates them from the content.
+     * 
+     * @see FormBodyPart#getEncodedHeader(HttpMultipartMode, Charset)
+     */
+    static byte[] encodeHeader(
+            final FormBodyPart part,
             final HttpMultipartMode mode,
-            final OutputStream out,
-            boolean writeContent) throws IOException {
-
-        ByteArrayBuffer boundary = encode(this.charset, getBoundary());
-        for (FormBodyPart part : this.parts) {
-            writeBytes(TWO_DASHES, out);
-            writeBytes(boundary, out);
-            writeBytes(CR_LF, out);
-
-            Header header = part.getHeader();
-
+            final Charset charset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
             switch (mode) {
                 case STRICT:
-                    for (MinimalField field : header) {
+                    for (MinimalField field : part.getHeader()) {
                         writeField(field, out);
                     }
                     break;
@@ -195,25 +216,20 @@ public class HttpMultipart {
                     // Only write Content-Disposition
                     // Use content charset
                     MinimalField cd = part.getHeader().getField(MIME.CONTENT_DISPOSITION);
-                    writeField(cd, this.charset, out);
+                    writeField(cd, charset, out);
                     String filename = part.getBody().getFilename();
                     if (filename != null) {
                         MinimalField ct = part.getHeader().getField(MIME.CONTENT_TYPE);
-                        writeField(ct, this.charset, out);
+                        writeField(ct, charset, out);
                     }
                     break;
             }
             writeBytes(CR_LF, out);
-
-            if (writeContent) {
-                part.getBody().writeTo(out);
-            }
-            writeBytes(CR_LF, out);
+        } catch (IOException ex) {
+            // Should never happen
+            throw new IllegalStateException(ex.toString());
         }
-        writeBytes(TWO_DASHES, out);
-        writeBytes(boundary, out);
-        writeBytes(TWO_DASHES, out);
-        writeBytes(CR_LF, out);
+        return out.toByteArray();
     }
 
     /**
@@ -224,7 +240,13 @@ public class HttpMultipart {
      * @see #getMode()
      */
     public void writeTo(final OutputStream out) throws IOException {
-        doWriteTo(this.mode, out, true);
+        for (FormBodyPart part : this.parts) {
+            out.write(this.delimiter);
+            out.write(part.getEncodedHeader(this.mode, this.charset));
+            part.getBody().writeTo(out);
+            writeBytes(CR_LF, out);
+        }
+        out.write(this.closeDelimiter);
     }
 
     /**
@@ -234,9 +256,9 @@ public class HttpMultipart {
      * this object is of a streaming entity of unknown length the total length
      * is also unknown.
      * <p/>
-     * This method buffers only a small amount of data in order to determine the
-     * total length of the entire entity. The content of individual parts is not
-     * buffered.
+     * The part headers are encoded once and cached by their
+     * {@link FormBodyPart}s, so the length is computed without rendering the
+     * multipart content.
      * 
      * @return total length of the multipart entity if known, <code>-1</code>
      *         otherwise.
@@ -252,15 +274,12 @@ public class HttpMultipart {
                 return -1;
             }
         }
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            doWriteTo(this.mode, out, false);
-            byte[] extra = out.toByteArray();
-            return contentLen + extra.length;
-        } catch (IOException ex) {
-            // Should never happen
-            return -1;
+        for (FormBodyPart part : this.parts) {
+            contentLen += this.delimiter.length
+                    + part.getEncodedHeader(this.mode, this.charset).length
+                    + CR_LF.length();
         }
+        return contentLen + this.closeDelimiter.length;
     }
 
 }
@@ -75,6 +75,25 @@ public class MultipartEntity implements HttpEntity {
             HttpMultipartMode mode,
             String boundary,
             Charset charset) {
+        this("form-data", mode, boundary, charset);
+    }
+
+    /**
+     * Creates an instance of the given multipart subtype (e.g. "mixed").
+     * 
+     * @param subType the multipart subtype - must not be {@code null}
+     * @param mode the mode to use, may be {@code null}, in which case
+     *            {@link HttpMultipartMode#STRICT} is used
+     * @param boundary the boundary string, may be {@code null}, in which case
+     *            {@link #generateBoundary()} is invoked to create the string
+     * @param charset the character set to use, may be {@code null}, in which
+     *            case {@link MIME#DEFAULT_CHARSET} - i.e. US-ASCII - is used.
+     */
+    public MultipartEntity(
+            String subType,
+            HttpMultipartMode mode,
+            String boundary,
+            Charset charset) {
         super();
         if (boundary == null) {
             boundary = generateBoundary();
@@ -82,7 +101,7 @@ public class MultipartEntity implements HttpEntity {
         if (mode == null) {
             mode = HttpMultipartMode.STRICT;
         }
-        this.multipart = new HttpMultipart("form-data", charset, boundary, mode);
+        this.multipart = new HttpMultipart(subType, charset, boundary, mode);
         this.contentType = new BasicHeader(
                 HTTP.CONTENT_TYPE,
                 generateContentType(boundary, charset));
@@ -110,7 +129,9 @@ public class MultipartEntity implements HttpEntity {
             final String boundary,
             final Charset charset) {
         StringBuilder buffer = new StringBuilder();
-        buffer.append("multipart/form-data; boundary=");
+        buffer.append("multipart/");
+        buffer.append(this.multipart.getSubType());
+        buffer.append("; boundary=");
         buffer.append(boundary);
         if (charset != null) {
             buffer.append("; charset=");
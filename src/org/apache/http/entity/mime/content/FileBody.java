@@ -27,19 +27,27 @@
 
 package org.apache.http.entity.mime.content;
 
+import com.keun.android.common.utils.BufferPool;
+
 import org.apache.http.entity.mime.MIME;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @since 4.0
  */
 public class FileBody extends AbstractContentBody {
 
+    /** size of the chunks written to streams that are not file channels */
+    private static final int TRANSFER_SIZE = BufferPool.MAX_SIZE;
+
     private final File file;
     private final String filename;
     private final String charset;
@@ -92,23 +100,67 @@ public class FileBody extends AbstractContentBody {
         writeTo(out);
     }
 
+    /**
+     * Writes the file through its {@link FileChannel}. If the destination is a
+     * {@link FileOutputStream} the bytes are moved with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * without passing through the heap; otherwise they are written in
+     * {@link #TRANSFER_SIZE} chunks, so wrapping streams (e.g. for progress
+     * reporting) still see every byte.
+     */
     public void writeTo(final OutputStream out) throws IOException {
         if (out == null) {
             throw new IllegalArgumentException("Output stream may not be null");
         }
-        InputStream in = new FileInputStream(this.file);
+        FileInputStream in = new FileInputStream(this.file);
         try {
-            byte[] tmp = new byte[4096];
-            int l;
-            while ((l = in.read(tmp)) != -1) {
-                out.write(tmp, 0, l);
+            FileChannel channel = in.getChannel();
+            long position = 0;
+            if (out instanceof FileOutputStream) {
+                out.flush();
+                position = transfer(channel, ((FileOutputStream) out).getChannel());
             }
+            copy(channel, position, out);
             out.flush();
         } finally {
             in.close();
         }
     }
 
+    /**
+     * @return the number of bytes transferred, which may be less than the
+     *         file size if the channel stops accepting bytes
+     */
+    private static long transfer(final FileChannel src, final FileChannel dst)
+            throws IOException {
+        long size = src.size();
+        long position = 0;
+        while (position < size) {
+            long count = src.transferTo(position, size - position, dst);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+        }
+        return position;
+    }
+
+    private static void copy(final FileChannel src, final long position, final OutputStream out)
+            throws IOException {
+        src.position(position);
+        byte[] tmp = BufferPool.acquire(TRANSFER_SIZE);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(tmp);
+            int l;
+            while ((l = src.read(buffer)) != -1) {
+                out.write(tmp, 0, l);
+                buffer.clear();
+            }
+        } finally {
+            BufferPool.release(tmp);
+        }
+    }
+
     public String getTransferEncoding() {
         return MIME.ENC_BINARY;
     }
@@ -27,6 +27,8 @@
 
 package org.apache.http.entity.mime.content;
 
+import com.keun.android.common.utils.BufferPool;
+
 import org.apache.http.entity.mime.MIME;
 
 import java.io.IOException;
@@ -71,10 +73,14 @@ public class InputStreamBody extends AbstractContentBody {
             throw new IllegalArgumentException("Output stream may not be null");
         }
         try {
-            byte[] tmp = new byte[4096];
-            int l;
-            while ((l = this.in.read(tmp)) != -1) {
-                out.write(tmp, 0, l);
+            byte[] tmp = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+            try {
+                int l;
+                while ((l = this.in.read(tmp)) != -1) {
+                    out.write(tmp, 0, l);
+                }
+            } finally {
+                BufferPool.release(tmp);
             }
             out.flush();
         } finally {
@@ -31,7 +31,6 @@ import org.apache.http.entity.mime.MIME;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
@@ -144,12 +143,7 @@ public class StringBody extends AbstractContentBody {
         if (out == null) {
             throw new IllegalArgumentException("Output stream may not be null");
         }
-        InputStream in = new ByteArrayInputStream(this.content);
-        byte[] tmp = new byte[4096];
-        int l;
-        while ((l = in.read(tmp)) != -1) {
-            out.write(tmp, 0, l);
-        }
+        out.write(this.content);
         out.flush();
     }
 